@@ -45,6 +45,7 @@ import io.odilon.net.ODHttpStatus;
 import io.odilon.service.ObjectStorageService;
 import io.odilon.traffic.TrafficControlService;
 import io.odilon.traffic.TrafficPass;
+import io.odilon.traffic.TrafficType;
 import io.odilon.virtualFileSystem.model.ServerBucket;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
 
@@ -87,7 +88,7 @@ public class BucketController extends BaseApiController {
         TrafficPass pass = null;
 
         try {
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.LIST);
             List<Bucket> list = new ArrayList<Bucket>();
             getObjectStorageService().findAllBuckets().forEach(item -> list.add(new Bucket(item.getName(), item.getId(),
                     item.getCreationDate(), item.getLastModifiedDate(), item.getStatus())));
@@ -118,7 +119,7 @@ public class BucketController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.LIST);
 
             DataList<Item<ObjectMetadata>> result = getObjectStorageService().listObjects(bucketName, offset, pageSize, prefix,
                     serverAgentId);
@@ -239,7 +240,7 @@ public class BucketController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (getObjectStorageService().existsBucket(name))
                 throw new OdilonServerAPIException(ODHttpStatus.CONFLICT, ErrorCode.OBJECT_ALREADY_EXIST,
@@ -269,7 +270,7 @@ public class BucketController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             ServerBucket bucket = getObjectStorageService().findBucketName(name);
 
@@ -305,7 +306,7 @@ public class BucketController extends BaseApiController {
         TrafficPass pass = null;
 
         try {
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (getObjectStorageService().existsBucket(name)) {
                 if (getObjectStorageService().isEmptyBucket(name)) {
@@ -333,7 +334,7 @@ public class BucketController extends BaseApiController {
         TrafficPass pass = null;
 
         try {
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (getObjectStorageService().existsBucket(name)) {
                 getObjectStorageService().deleteBucketByName(name);
@@ -358,7 +359,7 @@ public class BucketController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (!this.getVirtualFileSystemService().getServerSettings().isVersionControl())
                 throw new OdilonServerAPIException(ODHttpStatus.METHOD_NOT_ALLOWED, ErrorCode.API_NOT_ENABLED,
@@ -0,0 +1,99 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * Request body of a streaming upload. If the client sent {@code Content-Length}
+ * the stream fails with an {@link IOException} when the body ends before (or
+ * continues after) the declared length, so that the RAID handler rolls back the
+ * operation instead of committing a truncated Object.
+ * </p>
+ * <p>
+ * The servlet stream is consumed directly by the RAID handler, every read blocks
+ * until the previous buffer was written to the drives (ie. the client can not
+ * send faster than the drives can write)
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class ContentLengthInputStream extends FilterInputStream {
+
+    private final long contentLength;
+    private long bytesRead = 0;
+
+    /**
+     * @param contentLength declared length or -1 if unknown (chunked transfer
+     *                      encoding)
+     */
+    ContentLengthInputStream(InputStream in, long contentLength) {
+        super(in);
+        this.contentLength = contentLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1)
+            checkEnd();
+        else
+            count(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n == -1)
+            checkEnd();
+        else
+            count(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    private void count(long n) throws IOException {
+        this.bytesRead += n;
+        if ((this.contentLength >= 0) && (this.bytesRead > this.contentLength))
+            throw new IOException("request body is longer than Content-Length -> " + String.valueOf(this.contentLength));
+    }
+
+    private void checkEnd() throws IOException {
+        if ((this.contentLength >= 0) && (this.bytesRead < this.contentLength))
+            throw new IOException("incomplete request body -> received: " + String.valueOf(this.bytesRead)
+                    + " | Content-Length: " + String.valueOf(this.contentLength));
+    }
+}
@@ -17,6 +17,7 @@
 package io.odilon.api;
 
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -47,6 +48,9 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * <li>/metricsinformal</li>
  * <li>/status</li>
  * <li>/systeminfo</li>
+ * <li>/traffic</li>
+ * <li>/locks</li>
+ * <li>/buffers</li>
  * </ul>
  * 
  * 
@@ -142,6 +146,15 @@ public class MetricsController extends BaseApiController {
 
             map.forEach((k, v) -> str.append("    " + k + " -> " + v + "\n\n"));
 
+            new TreeMap<String, Object>(getSystemMonitorService().getTrafficMetrics())
+                    .forEach((k, v) -> str.append("    " + k + " -> " + v + "\n\n"));
+
+            new TreeMap<String, Object>(getVirtualFileSystemService().getLockService().getLockMetrics())
+                    .forEach((k, v) -> str.append("    " + k + " -> " + v + "\n\n"));
+
+            new TreeMap<String, Object>(getVirtualFileSystemService().getBufferService().getMetrics())
+                    .forEach((k, v) -> str.append("    " + k + " -> " + v + "\n\n"));
+
             str.append("\n");
             str.append("\n");
 
@@ -173,4 +186,59 @@ public class MetricsController extends BaseApiController {
             mark();
         }
     }
+
+    /**
+     * <p>
+     * current limit, queue depth and wait time of each traffic pool, in JSON
+     * format
+     * </p>
+     */
+    @RequestMapping(value = "/traffic", produces = "application/json", method = RequestMethod.GET)
+    public Map<String, Object> getTraffic() {
+        TrafficPass pass = null;
+        try {
+            pass = getTrafficControlService().getPass();
+            return getSystemMonitorService().getTrafficMetrics();
+        } finally {
+            getTrafficControlService().release(pass);
+            mark();
+        }
+    }
+
+    /**
+     * <p>
+     * wait time and hold time (mean, p95, p99, max microseconds) of the server,
+     * bucket, object and file cache locks, and the most contended stripes, in JSON
+     * format
+     * </p>
+     */
+    @RequestMapping(value = "/locks", produces = "application/json", method = RequestMethod.GET)
+    public Map<String, Object> getLocks() {
+        TrafficPass pass = null;
+        try {
+            pass = getTrafficControlService().getPass();
+            return getVirtualFileSystemService().getLockService().getLockMetrics();
+        } finally {
+            getTrafficControlService().release(pass);
+            mark();
+        }
+    }
+
+    /**
+     * <p>
+     * RAID 6 buffer pool: buffers acquired, allocated, in use, pooled and leaked,
+     * in JSON format
+     * </p>
+     */
+    @RequestMapping(value = "/buffers", produces = "application/json", method = RequestMethod.GET)
+    public Map<String, Object> getBuffers() {
+        TrafficPass pass = null;
+        try {
+            pass = getTrafficControlService().getPass();
+            return getVirtualFileSystemService().getBufferService().getMetrics();
+        } finally {
+            getTrafficControlService().release(pass);
+            mark();
+        }
+    }
 }
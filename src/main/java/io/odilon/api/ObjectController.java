@@ -20,18 +20,23 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -54,6 +59,8 @@ import io.odilon.security.TokenService;
 import io.odilon.service.ObjectStorageService;
 import io.odilon.traffic.TrafficControlService;
 import io.odilon.traffic.TrafficPass;
+import io.odilon.traffic.TrafficType;
+import io.odilon.virtualFileSystem.model.VirtualFileSystemObject;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
 
 /**
@@ -67,6 +74,7 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * <li>/object/deleteallpreviousversion/{bucketName}/{objectName}</li>
  * <li>/object/exists/{bucketName}/{objectName}</li>
  * <li>/object/get/{bucketName}/{objectName}</li>
+ * <li>/object/get/{bucketName}/{objectName} (HEAD)</li>
  * <li>/object/getmetadata/{bucketName}/{objectName}</li>
  * <li>/object/getmetadatapreviousversion/{bucketName}/{objectName}</li>
  * <li>/object/getmetadatapreviousversionall/{bucketName}/{objectName}</li>
@@ -74,6 +82,7 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * <li>/object/getpreviousversion/{bucketName}/{objectName}</li>
  * <li>/object/hasversions/{bucketName}/{objectName}</li>
  * <li>/object/upload/{bucketName}/{objectName}</li>
+ * <li>/object/upload/{bucketName}/{objectName} (PUT, application/octet-stream)</li>
  * </ul>
  * 
  * @author atolomei@novamens.com (Alejandro Tolomei)
@@ -163,7 +172,11 @@ public class ObjectController extends BaseApiController {
     @RequestMapping(path = "/get/{bucketName}/{objectName}", method = RequestMethod.GET)
     @ResponseBody
     public ResponseEntity<InputStreamResource> getObjectStream(@PathVariable("bucketName") String bucketName,
-            @PathVariable("objectName") String objectName) {
+            @PathVariable("objectName") String objectName,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) Optional<String> range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) Optional<String> ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) Optional<String> ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) Optional<String> ifModifiedSince) {
 
         TrafficPass pass = null;
 
@@ -171,6 +184,40 @@ public class ObjectController extends BaseApiController {
 
             pass = getTrafficControlService().getPass();
 
+            MediaType contentType = MediaType.APPLICATION_OCTET_STREAM;
+
+            /** conditional GET is resolved with the metadata only, the data is not opened */
+            if (ifNoneMatch.isPresent() || ifModifiedSince.isPresent()) {
+                ObjectMetadata meta = getObjectStorageService().statObject(bucketName, objectName);
+
+                if (meta == null || meta.status == ObjectStatus.DELETED || meta.status == ObjectStatus.DRAFT)
+                    throw new OdilonObjectNotFoundException(String.format("object not found -> b: %s | o:%s",
+                            Optional.ofNullable(bucketName).orElse("null"), Optional.ofNullable(objectName).orElse("null")));
+
+                if (ObjectHeaders.isNotModified(ifNoneMatch, ifModifiedSince, meta)) {
+                    getSystemMonitorService().getGetObjectMeter().mark();
+                    return notModified(meta);
+                }
+            }
+
+            if (range.isEmpty()) {
+                /** metadata and stream are resolved with one lookup */
+                VirtualFileSystemObject object = getObjectStorageService().openObject(bucketName, objectName);
+                InputStream in = object.getInputStream();
+                ObjectMetadata meta = object.getObjectMetadata();
+
+                if (meta == null || meta.status == ObjectStatus.DELETED || meta.status == ObjectStatus.DRAFT) {
+                    in.close();
+                    throw new OdilonObjectNotFoundException(String.format("object not found -> b: %s | o:%s",
+                            Optional.ofNullable(bucketName).orElse("null"), Optional.ofNullable(objectName).orElse("null")));
+                }
+
+                getTrafficControlService().markStorageDone(pass, meta.length);
+                getSystemMonitorService().getGetObjectMeter().mark();
+
+                return objectResponse(meta, null, contentType, in);
+            }
+
             if (!getObjectStorageService().existsObject(bucketName, objectName))
                 throw new OdilonObjectNotFoundException(String.format("object not found -> b: %s | o:%s",
                         Optional.ofNullable(bucketName).orElse("null"), Optional.ofNullable(objectName).orElse("null")));
@@ -181,13 +228,19 @@ public class ObjectController extends BaseApiController {
                 throw new OdilonObjectNotFoundException(String.format("object not found -> b: %s | o:%s",
                         Optional.ofNullable(bucketName).orElse("null"), Optional.ofNullable(objectName).orElse("null")));
 
-            MediaType contentType = MediaType.APPLICATION_OCTET_STREAM;
+            ObjectRange objectRange = ObjectRange.resolve(range, ifRange, meta);
 
-            InputStream in = getObjectStorageService().getObjectStream(bucketName, objectName);
+            if (objectRange != null && !objectRange.isSatisfiable())
+                return rangeNotSatisfiable(objectRange);
 
+            InputStream in = (objectRange == null) ? getObjectStorageService().getObjectStream(bucketName, objectName)
+                    : getObjectStorageService().getObjectStream(bucketName, objectName, objectRange.getOffset(),
+                            objectRange.getLength());
+
+            getTrafficControlService().markStorageDone(pass, (objectRange == null) ? meta.length : objectRange.getLength());
             getSystemMonitorService().getGetObjectMeter().mark();
 
-            return ResponseEntity.ok().contentType(contentType).body(new InputStreamResource(in));
+            return objectResponse(meta, objectRange, contentType, in);
 
         } catch (OdilonServerAPIException e1) {
             throw e1;
@@ -200,6 +253,65 @@ public class ObjectController extends BaseApiController {
         }
     }
 
+    /**
+     * <p>
+     * Object metadata as HTTP headers ({@code ETag}, {@code Last-Modified},
+     * {@code Content-Length}, ...). Supports {@code If-None-Match} and
+     * {@code If-Modified-Since}.
+     * </p>
+     * <p>
+     * It is resolved from the ObjectMetadata (cached by the
+     * {@link io.odilon.cache.ObjectMetadataCacheService}), the data file is not
+     * opened and RAID 6 objects are not decoded
+     * </p>
+     * 
+     * @param bucketName
+     * @param objectName
+     * @return
+     */
+    @RequestMapping(path = "/get/{bucketName}/{objectName}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> headObject(@PathVariable("bucketName") String bucketName,
+            @PathVariable("objectName") String objectName,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) Optional<String> ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) Optional<String> ifModifiedSince) {
+
+        TrafficPass pass = null;
+
+        try {
+
+            pass = getTrafficControlService().getPass();
+
+            ObjectMetadata meta = getObjectStorageService().statObject(bucketName, objectName);
+
+            if (meta == null || meta.status == ObjectStatus.DELETED || meta.status == ObjectStatus.DRAFT)
+                throw new OdilonObjectNotFoundException(String.format("object not found -> b: %s | o:%s",
+                        Optional.ofNullable(bucketName).orElse("null"), Optional.ofNullable(objectName).orElse("null")));
+
+            getSystemMonitorService().getGetObjectMeter().mark();
+
+            if (ObjectHeaders.isNotModified(ifNoneMatch, ifModifiedSince, meta))
+                return notModified(meta);
+
+            HttpHeaders responseHeaders = ObjectHeaders.getValidators(meta);
+            responseHeaders.set(ObjectHeaders.ODILON_VERSION, String.valueOf(meta.version));
+
+            /** the length of encrypted objects is the length of the encrypted file */
+            if (!meta.isEncrypt())
+                responseHeaders.setContentLength(meta.length);
+
+            return ResponseEntity.ok().headers(responseHeaders).contentType(MediaType.APPLICATION_OCTET_STREAM).build();
+
+        } catch (OdilonServerAPIException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new OdilonServerAPIException(ODHttpStatus.INTERNAL_SERVER_ERROR, ErrorCode.INTERNAL_ERROR, getMessage(e));
+
+        } finally {
+            getTrafficControlService().release(pass);
+            mark();
+        }
+    }
+
     /**
      * <p>
      * Returns {@link InputStream} of the version passed as parameter.
@@ -219,7 +331,9 @@ public class ObjectController extends BaseApiController {
     @RequestMapping(path = "/getversion/{bucketName}/{objectName}", method = RequestMethod.GET)
     @ResponseBody
     public ResponseEntity<InputStreamResource> getObjectVersionStream(@PathVariable("bucketName") String bucketName,
-            @PathVariable("objectName") String objectName, @RequestParam("version") Optional<Integer> version) {
+            @PathVariable("objectName") String objectName, @RequestParam("version") Optional<Integer> version,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) Optional<String> range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) Optional<String> ifRange) {
         TrafficPass pass = null;
 
         try {
@@ -247,12 +361,26 @@ public class ObjectController extends BaseApiController {
                 throw new IllegalArgumentException("version must be 0 or greater");
 
             MediaType contentType = MediaType.APPLICATION_OCTET_STREAM;
-            InputStream in = getObjectStorageService().getObjectPreviousVersionStream(bucketName, objectName,
-                    version.get().intValue());
 
+            /** Range refers to the version requested, not to the head version */
+            ObjectMetadata versionMeta = (range.isPresent())
+                    ? getObjectStorageService().getObjectMetadataPreviousVersion(bucketName, objectName, version.get().intValue())
+                    : null;
+
+            ObjectRange objectRange = (versionMeta != null) ? ObjectRange.resolve(range, ifRange, versionMeta) : null;
+
+            if (objectRange != null && !objectRange.isSatisfiable())
+                return rangeNotSatisfiable(objectRange);
+
+            InputStream in = (objectRange == null)
+                    ? getObjectStorageService().getObjectPreviousVersionStream(bucketName, objectName, version.get().intValue())
+                    : getObjectStorageService().getObjectPreviousVersionStream(bucketName, objectName, version.get().intValue(),
+                            objectRange.getOffset(), objectRange.getLength());
+
+            getTrafficControlService().markStorageDone(pass, (objectRange == null) ? -1 : objectRange.getLength());
             getSystemMonitorService().getGetObjectMeter().mark();
 
-            return ResponseEntity.ok().contentType(contentType).body(new InputStreamResource(in));
+            return objectResponse(versionMeta, objectRange, contentType, in);
 
         } catch (OdilonServerAPIException e) {
             throw e;
@@ -309,6 +437,8 @@ public class ObjectController extends BaseApiController {
             InputStream in = getObjectStorageService().getObjectPreviousVersionStream(bucketName, objectName,
                     list.get(list.size() - 1).version);
 
+            getTrafficControlService().markStorageDone(pass, list.get(list.size() - 1).length);
+
             return ResponseEntity.ok().contentType(contentType).body(new InputStreamResource(in));
 
         } catch (OdilonServerAPIException e1) {
@@ -505,7 +635,7 @@ public class ObjectController extends BaseApiController {
         TrafficPass pass = null;
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (!getObjectStorageService().existsObject(bucketName, objectName))
                 throw new OdilonObjectNotFoundException(String.format("object not found -> b: %s | o:%s",
@@ -535,7 +665,7 @@ public class ObjectController extends BaseApiController {
         TrafficPass pass = null;
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (!this.getVirtualFileSystemService().getServerSettings().isVersionControl())
                 throw new OdilonServerAPIException(ODHttpStatus.METHOD_NOT_ALLOWED, ErrorCode.API_NOT_ENABLED,
@@ -573,7 +703,7 @@ public class ObjectController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (!this.getVirtualFileSystemService().getServerSettings().isVersionControl())
                 throw new OdilonServerAPIException(ODHttpStatus.METHOD_NOT_ALLOWED, ErrorCode.API_NOT_ENABLED,
@@ -630,23 +760,13 @@ public class ObjectController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             String fileName = Optional.ofNullable(oFileName.get()).orElseGet(() -> objectName);
 
             ObjectMetadata meta;
 
-            Optional<List<String>> o_list;
-
-            if (customTags.isPresent()) {
-
-                List<String> tags = new ArrayList<String>();
-                String arr[] = customTags.get().split("||");
-                for (String s : arr)
-                    tags.add(s);
-                o_list = Optional.ofNullable(tags);
-            } else
-                o_list = Optional.empty();
+            Optional<List<String>> o_list = getCustomTags(customTags);
 
             if (version.isEmpty()) {
                 getObjectStorageService().putObject(bucketName, objectName, file.getInputStream(), fileName, contentType, o_list);
@@ -660,6 +780,66 @@ public class ObjectController extends BaseApiController {
                 }
             }
 
+            getTrafficControlService().markStorageDone(pass, (meta != null) ? meta.length : -1);
+            getSystemMonitorService().getPutObjectMeter().mark();
+
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(meta);
+
+        } catch (IllegalStateException e) {
+            throw new OdilonServerAPIException(ODHttpStatus.METHOD_NOT_ALLOWED, ErrorCode.DATA_STORAGE_MODE_OPERATION_NOT_ALLOWED,
+                    getMessage(e));
+
+        } catch (OdilonServerAPIException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new OdilonServerAPIException(ODHttpStatus.INTERNAL_SERVER_ERROR, ErrorCode.INTERNAL_ERROR, getMessage(e));
+
+        } finally {
+            getTrafficControlService().release(pass);
+            mark();
+        }
+    }
+
+    /**
+     * <p>
+     * Streaming upload. The request body is the binary data of the Object
+     * ({@code application/octet-stream}), it is not parsed as multipart therefore
+     * it is not spooled to a temp file before being written to the drives. The
+     * servlet {@link InputStream} is passed directly to the RAID handler.
+     * </p>
+     * <p>
+     * If the request has {@code Content-Length}, uploads that end before the
+     * declared length are rolled back
+     * </p>
+     * 
+     * @param bucketName
+     * @param objectName
+     * @param request
+     * @return
+     */
+    @PutMapping(path = "/upload/{bucketName}/{objectName}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<ObjectMetadata> putObjectStream(@PathVariable("bucketName") String bucketName,
+            @PathVariable("objectName") String objectName, HttpServletRequest request,
+            @RequestParam("fileName") Optional<String> oFileName, @RequestParam("Content-Type") Optional<String> contentType,
+            @RequestParam("customTags") Optional<String> customTags) {
+
+        TrafficPass pass = null;
+
+        try {
+
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
+
+            String fileName = oFileName.orElse(objectName);
+
+            InputStream stream = new ContentLengthInputStream(request.getInputStream(), request.getContentLengthLong());
+
+            getObjectStorageService().putObject(bucketName, objectName, stream, fileName,
+                    contentType.orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE), getCustomTags(customTags));
+
+            ObjectMetadata meta = getObjectStorageService().getObjectMetadata(bucketName, objectName);
+
+            getTrafficControlService().markStorageDone(pass, (meta != null) ? meta.length : -1);
             getSystemMonitorService().getPutObjectMeter().mark();
 
             return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(meta);
@@ -683,4 +863,47 @@ public class ObjectController extends BaseApiController {
     public void init() {
     }
 
+    /**
+     * <p>
+     * customTags are sent as a single parameter, separated by "||"
+     * </p>
+     */
+    private Optional<List<String>> getCustomTags(Optional<String> customTags) {
+
+        if (customTags.isEmpty())
+            return Optional.empty();
+
+        List<String> tags = new ArrayList<String>();
+        for (String s : customTags.get().split(Pattern.quote("||")))
+            tags.add(s);
+        return Optional.of(tags);
+    }
+
+    /**
+     * <p>
+     * 206 if there is a satisfiable range, 200 with the whole Object otherwise
+     * </p>
+     */
+    private ResponseEntity<InputStreamResource> objectResponse(ObjectMetadata meta, ObjectRange objectRange,
+            MediaType contentType, InputStream in) {
+
+        HttpHeaders responseHeaders = ObjectHeaders.getValidators(meta);
+
+        if (objectRange == null)
+            return ResponseEntity.ok().headers(responseHeaders).contentType(contentType).body(new InputStreamResource(in));
+
+        responseHeaders.set(HttpHeaders.CONTENT_RANGE, objectRange.getContentRange());
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(responseHeaders).contentType(contentType)
+                .contentLength(objectRange.getLength()).body(new InputStreamResource(in));
+    }
+
+    private <T> ResponseEntity<T> notModified(ObjectMetadata meta) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(ObjectHeaders.getValidators(meta)).build();
+    }
+
+    private ResponseEntity<InputStreamResource> rangeNotSatisfiable(ObjectRange objectRange) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, objectRange.getContentRange()).build();
+    }
+
 }
@@ -22,8 +22,10 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -34,6 +36,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.odilon.error.OdilonServerAPIException;
 import io.odilon.error.OdilonObjectNotFoundException;
 import io.odilon.log.Logger;
+import io.odilon.model.ObjectMetadata;
 import io.odilon.monitor.SystemMonitorService;
 import io.odilon.net.ErrorCode;
 import io.odilon.net.ODHttpStatus;
@@ -95,7 +98,9 @@ public class ObjectControllerPresigned extends BaseApiController {
      */
     @RequestMapping(method = RequestMethod.GET)
     @ResponseBody
-    public ResponseEntity<InputStreamResource> getPresignedObjectStream(@RequestParam("token") String stringToken) {
+    public ResponseEntity<InputStreamResource> getPresignedObjectStream(@RequestParam("token") String stringToken,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) Optional<String> range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) Optional<String> ifRange) {
 
         TrafficPass pass = null;
 
@@ -119,7 +124,9 @@ public class ObjectControllerPresigned extends BaseApiController {
             String bucketName = authToken.bucketName;
             String objectName = authToken.objectName;
 
-            VirtualFileSystemObject object = getObjectStorageService().getObject(bucketName, objectName);
+            /** without Range, metadata and stream are resolved with one lookup */
+            VirtualFileSystemObject object = range.isEmpty() ? getObjectStorageService().openObject(bucketName, objectName)
+                    : getObjectStorageService().getObject(bucketName, objectName);
 
             if (object == null)
                 throw new OdilonObjectNotFoundException(String.format("not found -> b: %s | o:%s",
@@ -137,8 +144,28 @@ public class ObjectControllerPresigned extends BaseApiController {
                 contentType = estimateContentType(f_name);
             }
 
+            ObjectMetadata meta = object.getObjectMetadata();
+            ObjectRange objectRange = ObjectRange.resolve(range, ifRange, meta);
+
+            if (objectRange != null && !objectRange.isSatisfiable())
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, objectRange.getContentRange()).build();
+
+            responseHeaders.addAll(ObjectHeaders.getValidators(meta));
+
+            if (objectRange != null) {
+                InputStream in = getObjectStorageService().getObjectStream(bucketName, objectName, objectRange.getOffset(),
+                        objectRange.getLength());
+                getTrafficControlService().markStorageDone(pass, objectRange.getLength());
+                getSystemMonitorService().getGetObjectMeter().mark();
+                responseHeaders.set(HttpHeaders.CONTENT_RANGE, objectRange.getContentRange());
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(responseHeaders).contentType(contentType)
+                        .contentLength(objectRange.getLength()).body(new InputStreamResource(in));
+            }
+
             InputStream in = object.getInputStream();
 
+            getTrafficControlService().markStorageDone(pass, meta.length);
             getSystemMonitorService().getGetObjectMeter().mark();
 
             return ResponseEntity.ok().headers(responseHeaders).contentType(contentType).body(new InputStreamResource(in));
@@ -0,0 +1,135 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.api;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+
+import io.odilon.model.ObjectMetadata;
+
+/**
+ * <p>
+ * HTTP validators of an Object ({@code ETag}, {@code Last-Modified}) and
+ * evaluation of the conditional request headers {@code If-None-Match} and
+ * {@code If-Modified-Since} (RFC 7232).
+ * </p>
+ * <p>
+ * Everything is calculated from the {@link ObjectMetadata}, the data file is not
+ * accessed
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+final class ObjectHeaders {
+
+    static final String ACCEPT_RANGES_BYTES = "bytes";
+
+    static final String ODILON_VERSION = "X-Odilon-Version";
+
+    private ObjectHeaders() {
+    }
+
+    /**
+     * <p>
+     * {@code ETag}, {@code Last-Modified} and, if the Object is not encrypted,
+     * {@code Accept-Ranges}
+     * </p>
+     */
+    static HttpHeaders getValidators(ObjectMetadata meta) {
+
+        HttpHeaders headers = new HttpHeaders();
+
+        if (meta == null)
+            return headers;
+
+        if (!meta.isEncrypt())
+            headers.set(HttpHeaders.ACCEPT_RANGES, ACCEPT_RANGES_BYTES);
+
+        if (getETag(meta) != null)
+            headers.set(HttpHeaders.ETAG, getETag(meta));
+
+        if (getLastModified(meta) != null)
+            headers.set(HttpHeaders.LAST_MODIFIED, getLastModified(meta));
+
+        return headers;
+    }
+
+    /**
+     * <p>
+     * If-None-Match has precedence, If-Modified-Since is evaluated only if the
+     * request does not have If-None-Match
+     * </p>
+     *
+     * @return true if the response must be 304 (Not Modified)
+     */
+    static boolean isNotModified(Optional<String> ifNoneMatch, Optional<String> ifModifiedSince, ObjectMetadata meta) {
+
+        if (ifNoneMatch != null && ifNoneMatch.isPresent() && !ifNoneMatch.get().isBlank())
+            return isETagMatch(ifNoneMatch.get(), meta);
+
+        if (ifModifiedSince != null && ifModifiedSince.isPresent() && !ifModifiedSince.get().isBlank()) {
+            if (meta.lastModified == null)
+                return false;
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(ifModifiedSince.get().trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return meta.lastModified.toEpochSecond() <= date.toEpochSecond();
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>
+     * weak comparison, as required for If-None-Match
+     * </p>
+     */
+    private static boolean isETagMatch(String ifNoneMatch, ObjectMetadata meta) {
+
+        if (ifNoneMatch.trim().equals("*"))
+            return true;
+
+        String etag = getETag(meta);
+
+        if (etag == null)
+            return false;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/"))
+                value = value.substring(2);
+            if (value.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    static String getETag(ObjectMetadata meta) {
+        return (meta.etag == null) ? null : ("\"" + meta.etag + "\"");
+    }
+
+    static String getLastModified(ObjectMetadata meta) {
+        return (meta.lastModified == null) ? null
+                : DateTimeFormatter.RFC_1123_DATE_TIME.format(meta.lastModified.atZoneSameInstant(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.api;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.HttpRange;
+
+import io.odilon.model.ObjectMetadata;
+
+/**
+ * <p>
+ * Byte range of an Object requested with the HTTP {@code Range} header (RFC
+ * 7233).
+ * </p>
+ * <p>
+ * Only single byte ranges are served as partial content. The request is served
+ * entirely (ie. {@link #resolve} returns {@code null}) if:
+ * <ul>
+ * <li>there is no {@code Range} header or it is malformed</li>
+ * <li>the header contains more than one range</li>
+ * <li>the {@code If-Range} validator does not match the Object</li>
+ * <li>the Object is encrypted (the stored length is not the length of the
+ * decrypted data)</li>
+ * </ul>
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public final class ObjectRange {
+
+    private final long offset;
+    private final long length;
+    private final long objectLength;
+    private final boolean satisfiable;
+
+    private ObjectRange(long offset, long length, long objectLength, boolean satisfiable) {
+        this.offset = offset;
+        this.length = length;
+        this.objectLength = objectLength;
+        this.satisfiable = satisfiable;
+    }
+
+    /**
+     * @return the range to serve, or {@code null} if the whole Object must be
+     *         returned
+     */
+    public static ObjectRange resolve(Optional<String> range, Optional<String> ifRange, ObjectMetadata meta) {
+
+        if (range == null || range.isEmpty() || range.get().isBlank())
+            return null;
+
+        if (meta.isEncrypt())
+            return null;
+
+        if (ifRange != null && ifRange.isPresent() && !ifRange.get().isBlank() && !isIfRangeMatch(ifRange.get().trim(), meta))
+            return null;
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range.get());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (ranges.size() != 1)
+            return null;
+
+        long objectLength = meta.length;
+        try {
+            long start = ranges.get(0).getRangeStart(objectLength);
+            long end = ranges.get(0).getRangeEnd(objectLength);
+            if (end < start)
+                return new ObjectRange(0, 0, objectLength, false);
+            return new ObjectRange(start, end - start + 1, objectLength, true);
+        } catch (IllegalArgumentException e) {
+            return new ObjectRange(0, 0, objectLength, false);
+        }
+    }
+
+    /**
+     * <p>
+     * If-Range contains either an entity tag (strong comparison) or a date that must
+     * be an exact match of the Object's last modified date
+     * </p>
+     */
+    private static boolean isIfRangeMatch(String ifRange, ObjectMetadata meta) {
+
+        if (ifRange.startsWith("W/"))
+            return false;
+
+        if (ifRange.startsWith("\""))
+            return (meta.etag != null) && ifRange.equals(ObjectHeaders.getETag(meta));
+
+        if (meta.lastModified == null)
+            return false;
+
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return date.toEpochSecond() == meta.lastModified.toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    public boolean isSatisfiable() {
+        return this.satisfiable;
+    }
+
+    public String getContentRange() {
+        if (!this.satisfiable)
+            return "bytes */" + String.valueOf(this.objectLength);
+        return "bytes " + String.valueOf(this.offset) + "-" + String.valueOf(this.offset + this.length - 1) + "/"
+                + String.valueOf(this.objectLength);
+    }
+}
@@ -33,6 +33,7 @@ import io.odilon.scheduler.TestServiceRequest;
 import io.odilon.service.ObjectStorageService;
 import io.odilon.traffic.TrafficControlService;
 import io.odilon.traffic.TrafficPass;
+import io.odilon.traffic.TrafficType;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
 
 /**
@@ -70,7 +71,7 @@ public class RequestController extends BaseApiController {
 
         try {
 
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
 
             if (name == null)
                 throw new OdilonObjectNotFoundException(ErrorCode.INTERNAL_ERROR, String.format("parameter request is null"));
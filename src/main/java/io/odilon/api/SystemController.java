@@ -11,6 +11,7 @@ import io.odilon.net.ODHttpStatus;
 import io.odilon.service.ObjectStorageService;
 import io.odilon.traffic.TrafficControlService;
 import io.odilon.traffic.TrafficPass;
+import io.odilon.traffic.TrafficType;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
 
 /**
@@ -45,7 +46,7 @@ public class SystemController extends BaseApiController {
 
         TrafficPass pass = null;
         try {
-            pass = getTrafficControlService().getPass();
+            pass = getTrafficControlService().getPass(TrafficType.WRITE);
             getObjectStorageService().wipeAllPreviousVersions();
 
         } catch (OdilonServerAPIException e) {
@@ -25,6 +25,7 @@ import java.io.OutputStream;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -57,6 +58,14 @@ public class ParallelFileCoypAgent extends FileCopyAgent {
     @JsonIgnore
     final List<File> destination;
 
+    /** SHA-256 of each destination file, calculated on the buffer while it is saved */
+    @JsonIgnore
+    final String[] sha256;
+
+    /** bytes of each source to copy, -1 -> the whole array */
+    @JsonIgnore
+    final int length;
+
     @JsonIgnore
     private ExecutorService executor;
 
@@ -67,10 +76,22 @@ public class ParallelFileCoypAgent extends FileCopyAgent {
     private OffsetDateTime end;
 
     public ParallelFileCoypAgent(byte[][] source, List<File> destination) {
+        this(source, -1, destination);
+    }
+
+    /**
+     * <p>
+     * Copies only the first {@code length} bytes of each source (the arrays may be
+     * larger, for example buffers from the {@link io.odilon.service.BufferService})
+     * </p>
+     */
+    public ParallelFileCoypAgent(byte[][] source, int length, List<File> destination) {
         Check.requireNonNull(source);
         Check.requireNonNull(destination);
         this.source = source;
+        this.length = length;
         this.destination = destination;
+        this.sha256 = new String[destination.size()];
     }
 
     @Override
@@ -109,7 +130,9 @@ public class ParallelFileCoypAgent extends FileCopyAgent {
                     try {
                         File outputFile = getDestination().get(val);
                         try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
-                            out.write(this.source[val]);
+                            int len = (this.length < 0) ? this.source[val].length : this.length;
+                            out.write(this.source[val], 0, len);
+                            this.sha256[val] = SHA256Digest.toString(this.source[val], 0, len);
                         } catch (FileNotFoundException e) {
                             throw new InternalCriticalException(e, "f: " + outputFile.getName());
                         } catch (IOException e) {
@@ -173,4 +196,12 @@ public class ParallelFileCoypAgent extends FileCopyAgent {
         return destination;
     }
 
+    /**
+     * @return SHA-256 of the destination files, in the same order. Valid after
+     *         {@link #execute()} returned true
+     */
+    public List<String> getSha256() {
+        return Arrays.asList(this.sha256);
+    }
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.file;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import io.odilon.errors.InternalCriticalException;
+
+/**
+ * <p>
+ * SHA-256 calculated on the data while it is written, instead of reading the
+ * file again after it was saved. The String format (64 lowercase hex digits) is
+ * the same as {@code OdilonFileUtils.calculateSHA256String(File)}, so values
+ * calculated either way can be compared
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public final class SHA256Digest {
+
+    static private final String ALGORITHM = "SHA-256";
+
+    static private final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private SHA256Digest() {
+    }
+
+    public static MessageDigest newInstance() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalCriticalException(e, ALGORITHM);
+        }
+    }
+
+    public static String toString(MessageDigest digest) {
+        return toHex(digest.digest());
+    }
+
+    public static String toString(byte[] data) {
+        return toHex(newInstance().digest(data));
+    }
+
+    public static String toString(byte[] data, int offset, int length) {
+        MessageDigest digest = newInstance();
+        digest.update(data, offset, length);
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] hash) {
+        char[] str = new char[hash.length * 2];
+        for (int n = 0; n < hash.length; n++) {
+            str[2 * n] = HEX[(hash[n] >> 4) & 0x0f];
+            str[2 * n + 1] = HEX[hash[n] & 0x0f];
+        }
+        return new String(str);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.odilon.util.Check;
+
+/**
+ * <p>
+ * Policy used by RAID 1 to choose the mirror an object is read from.
+ * </p>
+ * <ul>
+ * <li><b>RANDOM</b> any enabled drive</li>
+ * <li><b>LEAST_LOADED</b> the drive with the fewest outstanding reads and the
+ * best read latency</li>
+ * <li><b>STICKY</b> always the same drive for a given object, so that repeated
+ * reads hit the page cache of that drive</li>
+ * </ul>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public enum ReadDrivePolicy {
+
+    RANDOM("random", 0), LEAST_LOADED("leastLoaded", 1), STICKY("sticky", 2);
+
+    private static List<String> names;
+
+    private String name;
+    private int code;
+
+    private ReadDrivePolicy(String name, int code) {
+        this.name = name;
+        this.code = code;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getCode() {
+        return this.code;
+    }
+
+    public String toJSON() {
+        StringBuilder str = new StringBuilder();
+        str.append("\"name\":\"" + name + "\"");
+        str.append(", \"code\":" + code);
+        return str.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(this.getClass().getSimpleName());
+        str.append(toJSON());
+        return str.toString();
+    }
+
+    public static List<String> getNames() {
+
+        if (names != null)
+            return names;
+
+        synchronized (ReadDrivePolicy.class) {
+            List<String> list = new ArrayList<String>();
+            for (ReadDrivePolicy p : values())
+                list.add(p.getName());
+            names = list;
+        }
+        return names;
+    }
+
+    public static ReadDrivePolicy fromString(String name) {
+
+        Check.requireNonNullArgument(name, "name is null");
+
+        String normalized = name.trim();
+
+        for (ReadDrivePolicy p : values()) {
+            if (p.getName().equalsIgnoreCase(normalized) || p.name().equalsIgnoreCase(normalized))
+                return p;
+        }
+        throw new IllegalArgumentException("unsuported name -> " + name);
+    }
+}
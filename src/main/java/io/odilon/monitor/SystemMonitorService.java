@@ -16,8 +16,10 @@
  */
 package io.odilon.monitor;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.annotation.PostConstruct;
 
@@ -25,8 +27,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import io.odilon.cache.FileCacheService;
@@ -38,6 +42,7 @@ import io.odilon.model.ServiceStatus;
 import io.odilon.service.BaseService;
 import io.odilon.service.ServerSettings;
 import io.odilon.service.SystemService;
+import io.odilon.traffic.TrafficType;
 
 /**
  * <p>
@@ -157,6 +162,22 @@ public class SystemMonitorService extends BaseService implements SystemService {
     @JsonIgnore
     private Counter cacheFileMissCounter;
 
+    // ----------------------------
+    // TRAFFIC CONTROL
+    // requests waiting for a pass and wait time (millisecs), by TrafficType
+
+    @JsonIgnore
+    private final Map<TrafficType, Counter> trafficQueueCounter = new EnumMap<TrafficType, Counter>(TrafficType.class);
+
+    @JsonIgnore
+    private final Map<TrafficType, Histogram> trafficWaitHistogram = new EnumMap<TrafficType, Histogram>(TrafficType.class);
+
+    @JsonIgnore
+    private Meter trafficTimeoutMeter;
+
+    @JsonIgnore
+    private final Map<TrafficType, AtomicInteger> trafficLimit = new EnumMap<TrafficType, AtomicInteger>(TrafficType.class);
+
     // ----------------------------
 
     @JsonIgnore
@@ -377,6 +398,8 @@ public class SystemMonitorService extends BaseService implements SystemService {
         map.put("vaultEncryptMeter", getString(this.encryptVaultMeter));
         map.put("vaultDecryptMeter", getString(this.decryptVaultMeter));
 
+        map.putAll(getTrafficMetrics());
+
         if (serverSettings.isStandByEnabled()) {
             map.put("replicaObjectCreate", String.valueOf(this.replicaCreateObject.getCount()));
             map.put("replicaObjectUpdate", String.valueOf(this.replicaUpdateObject.getCount()));
@@ -403,6 +426,40 @@ public class SystemMonitorService extends BaseService implements SystemService {
         return this.cacheFileMissCounter;
     }
 
+    public Counter getTrafficQueueCounter(TrafficType type) {
+        return this.trafficQueueCounter.get(type);
+    }
+
+    public Histogram getTrafficWaitHistogram(TrafficType type) {
+        return this.trafficWaitHistogram.get(type);
+    }
+
+    public Meter getTrafficTimeoutMeter() {
+        return this.trafficTimeoutMeter;
+    }
+
+    public void setTrafficLimit(TrafficType type, int limit) {
+        this.trafficLimit.get(type).set(limit);
+    }
+
+    /**
+     * <p>
+     * current limit, queue depth and wait time (mean, p95, max millisecs) of each
+     * traffic pool
+     * </p>
+     */
+    public Map<String, Object> getTrafficMetrics() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (TrafficType type : TrafficType.values()) {
+            String name = type.name().toLowerCase();
+            map.put("trafficLimit." + name, String.valueOf(this.trafficLimit.get(type).get()));
+            map.put("trafficQueue." + name, String.valueOf(this.trafficQueueCounter.get(type).getCount()));
+            map.put("trafficWaitMillisecs." + name, getString(this.trafficWaitHistogram.get(type)));
+        }
+        map.put("trafficTimeoutMeter", getString(this.trafficTimeoutMeter));
+        return map;
+    }
+
     public String getMetrics() {
         return toJSON();
     }
@@ -455,6 +512,14 @@ public class SystemMonitorService extends BaseService implements SystemService {
             this.encryptVaultMeter = metrics.meter("encrpytVaultMeter");
             this.decryptVaultMeter = metrics.meter("decryptVaultMeter");
 
+            // traffic control
+            for (TrafficType type : TrafficType.values()) {
+                this.trafficLimit.put(type, new AtomicInteger(0));
+                this.trafficQueueCounter.put(type, metrics.counter("trafficQueue." + type.name().toLowerCase()));
+                this.trafficWaitHistogram.put(type, metrics.histogram("trafficWait." + type.name().toLowerCase()));
+            }
+            this.trafficTimeoutMeter = metrics.meter("trafficTimeoutMeter");
+
             startuplogger.debug("Started -> " + SystemMonitorService.class.getSimpleName());
             setStatus(ServiceStatus.RUNNING);
         }
@@ -466,6 +531,15 @@ public class SystemMonitorService extends BaseService implements SystemService {
                 + String.format("%10.4f", meter.getFifteenMinuteRate()).trim();
     }
 
+    /**
+     * mean, 95th percentile, max
+     */
+    private String getString(Histogram histogram) {
+        Snapshot snapshot = histogram.getSnapshot();
+        return String.format("%10.2f", snapshot.getMean()).trim() + ", "
+                + String.format("%10.2f", snapshot.get95thPercentile()).trim() + ", " + String.valueOf(snapshot.getMax());
+    }
+
     private void set(double[] v, Meter m) {
         v[0] = m.getOneMinuteRate();
         v[1] = m.getFiveMinuteRate();
@@ -80,8 +80,17 @@ public class BasicAuthWebSecurityConfiguration {
         return new InMemoryUserDetailsManager(user);
     }
 
+    /**
+     * <p>
+     * BCrypt is checked once per client and TTL, see
+     * {@link CachingPasswordEncoder}
+     * </p>
+     */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        if (!this.serverSettings.isAuthCacheEnabled())
+            return new BCryptPasswordEncoder();
+        return new CachingPasswordEncoder(new BCryptPasswordEncoder(), this.serverSettings.getAuthCacheMaxCapacity(),
+                this.serverSettings.getAuthCacheDurationSecs());
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.odilon.errors.InternalCriticalException;
+import io.odilon.util.Check;
+
+/**
+ * <p>
+ * {@link PasswordEncoder} that keeps the credentials that were already verified
+ * by the delegate encoder (BCrypt) in a bounded in-memory cache with a time to
+ * live. BCrypt is slow by design, without the cache every API call (Basic Auth)
+ * pays the full BCrypt cost.
+ * </p>
+ * <p>
+ * The cache key is an HMAC-SHA256 of the raw password and the encoded password,
+ * calculated with a random key generated on startup. The raw password is never
+ * kept in memory and the keys are useless outside this process. Only successful
+ * matches are cached, a wrong password is always checked by the delegate.
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    static private final String HMAC_ALGORITHM = "HmacSHA256";
+
+    static private final int HMAC_KEY_SIZE_BYTES = 32;
+
+    private final PasswordEncoder delegate;
+
+    private final Cache<String, Boolean> cache;
+
+    private final SecretKeySpec hmacKey;
+
+    public CachingPasswordEncoder(PasswordEncoder delegate, long maxCapacity, long durationSecs) {
+
+        Check.requireNonNullArgument(delegate, "delegate is null");
+        Check.requireTrue(maxCapacity > 0, "maxCapacity must be > 0");
+        Check.requireTrue(durationSecs > 0, "durationSecs must be > 0");
+
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder().maximumSize(maxCapacity).expireAfterWrite(durationSecs, TimeUnit.SECONDS).build();
+
+        byte[] key = new byte[HMAC_KEY_SIZE_BYTES];
+        new SecureRandom().nextBytes(key);
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return this.delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+
+        if (rawPassword == null || encodedPassword == null)
+            return this.delegate.matches(rawPassword, encodedPassword);
+
+        String key = getKey(rawPassword, encodedPassword);
+
+        if (this.cache.getIfPresent(key) != null)
+            return true;
+
+        if (!this.delegate.matches(rawPassword, encodedPassword))
+            return false;
+
+        this.cache.put(key, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return this.delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    private String getKey(CharSequence rawPassword, String encodedPassword) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(this.hmacKey);
+            mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new InternalCriticalException(e, HMAC_ALGORITHM);
+        }
+    }
+}
@@ -16,48 +16,271 @@
  */
 package io.odilon.service;
 
+import java.lang.ref.Cleaner;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
-import io.odilon.cache.FileCacheService;
 import io.odilon.log.Logger;
-import io.odilon.virtualFileSystem.model.LockService;
+import io.odilon.model.ServiceStatus;
+import io.odilon.util.Check;
+import jakarta.annotation.PostConstruct;
 
 /**
- * 
- * NOT USED
+ * <p>
+ * Pool of reusable byte buffers for the RAID 6 encoder and decoder (chunk
+ * buffers of up to {@code MAX_CHUNK_SIZE} and shard buffers) and the RAID 1
+ * mirror writer. Allocating them for every chunk means large (humongous for G1)
+ * allocations under concurrent PUT and GET.
+ * </p>
+ * <p>
+ * Buffers are grouped in size classes of {@link #SIZE_CLASS} bytes, a buffer
+ * may be larger than requested and it is not zeroed. Buffers smaller than
+ * {@link #MIN_POOLED_SIZE} are not pooled. The pool keeps at most
+ * {@code buffers.pool.maxMB}, buffers returned when it is full are left to the
+ * GC.
+ * </p>
+ * <p>
+ * A {@link PooledBuffer} must be closed when it is not used anymore. If it
+ * becomes unreachable without being closed, the leak is logged and counted (the
+ * array is not reused).
+ * </p>
  * 
  * @author atolomei@novamens.com (Alejandro Tolomei)
- * 
- * 
  */
+@ThreadSafe
 @Service
 public class BufferService extends BaseService {
 
-    @SuppressWarnings("unused")
-    static private Logger logger = Logger.getLogger(FileCacheService.class.getName());
-    @SuppressWarnings("unused")
+    static private Logger logger = Logger.getLogger(BufferService.class.getName());
     static private Logger startuplogger = Logger.getLogger("StartupLogger");
 
+    static final int MIN_POOLED_SIZE = 256 * 1024;
+
+    static final int SIZE_CLASS = 256 * 1024;
+
     @JsonIgnore
     @Autowired
     private final ServerSettings serverSettings;
 
-    public BufferService(ServerSettings serverSettings, LockService vfsLockService) {
+    @JsonIgnore
+    private final Cleaner cleaner = Cleaner.create();
+
+    @JsonIgnore
+    private final Map<Integer, Deque<byte[]>> pools = new ConcurrentHashMap<Integer, Deque<byte[]>>();
+
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+
+    private final AtomicLong inUse = new AtomicLong(0);
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder leaked = new LongAdder();
+
+    private long maxPooledBytes;
+
+    public BufferService(ServerSettings serverSettings) {
         this.serverSettings = serverSettings;
     }
 
     /**
-     * byte [] getEncodingSourceBuffer byte [] getEncodingRSBuffer
-     * 
-     * byte [] getDecodingSrcBuffer byte [] getDecodingRSBuffer
-     * 
-     * Map<buffers>
-     * 
-     * FIFO Available put, get InUse MAP
-     * 
+     * <p>
+     * Returns a buffer of at least {@code capacity} bytes. The content of the
+     * buffer is undefined.
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link PooledBuffer}
+     */
+    public PooledBuffer acquire(int capacity) {
+        Check.requireTrue(capacity >= 0, "capacity must be >= 0");
+
+        this.acquired.increment();
+        this.inUse.incrementAndGet();
+
+        if (capacity < MIN_POOLED_SIZE) {
+            this.allocated.increment();
+            return new PooledBuffer(new byte[capacity], null);
+        }
+
+        int size = sizeClass(capacity);
+        byte[] array = getPool(size).pollFirst();
+        if (array != null) {
+            this.pooledBytes.addAndGet(-size);
+        } else {
+            this.allocated.increment();
+            array = new byte[size];
+        }
+        Lease lease = new Lease(array, Thread.currentThread().getName());
+        return new PooledBuffer(array, lease);
+    }
+
+    /**
+     * <p>
+     * Returns {@code count} buffers of the same length, of at least
+     * {@code capacity} bytes (for example the shards of a chunk)
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link PooledBuffers}
      */
+    public PooledBuffers acquire(int count, int capacity) {
+        PooledBuffer[] buffers = new PooledBuffer[count];
+        for (int n = 0; n < count; n++)
+            buffers[n] = acquire(capacity);
+        return new PooledBuffers(buffers);
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("buffers.acquired", this.acquired.sum());
+        map.put("buffers.allocated", this.allocated.sum());
+        map.put("buffers.inUse", this.inUse.get());
+        map.put("buffers.pooledMB", this.pooledBytes.get() / (1024 * 1024));
+        map.put("buffers.maxPooledMB", this.maxPooledBytes / (1024 * 1024));
+        map.put("buffers.discarded", this.discarded.sum());
+        map.put("buffers.leaked", this.leaked.sum());
+        return map;
+    }
 
+    @PostConstruct
+    protected void onInitialize() {
+        synchronized (this) {
+            setStatus(ServiceStatus.STARTING);
+            this.maxPooledBytes = ((long) this.serverSettings.getBufferPoolMaxMB()) * 1024 * 1024;
+            setStatus(ServiceStatus.RUNNING);
+            startuplogger.debug("Started -> " + BufferService.class.getSimpleName());
+        }
+    }
+
+    private void recycle(byte[] array) {
+        this.inUse.decrementAndGet();
+        int size = array.length;
+        long pooled = this.pooledBytes.addAndGet(size);
+        if (pooled > this.maxPooledBytes) {
+            this.pooledBytes.addAndGet(-size);
+            this.discarded.increment();
+            return;
+        }
+        getPool(size).offerFirst(array);
+    }
+
+    private Deque<byte[]> getPool(int size) {
+        return this.pools.computeIfAbsent(Integer.valueOf(size), key -> new ConcurrentLinkedDeque<byte[]>());
+    }
+
+    private static int sizeClass(int capacity) {
+        return (int) ((((long) capacity) + SIZE_CLASS - 1) / SIZE_CLASS * SIZE_CLASS);
+    }
+
+    /**
+     * <p>
+     * Cleaning action of a pooled buffer. It runs once, when the buffer is closed
+     * or, if it was not closed, when it becomes unreachable. It must not reference
+     * the {@link PooledBuffer}
+     * </p>
+     */
+    private final class Lease implements Runnable {
+
+        private final byte[] array;
+        private final String owner;
+        private volatile boolean released = false;
+
+        Lease(byte[] array, String owner) {
+            this.array = array;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            if (this.released) {
+                recycle(this.array);
+                return;
+            }
+            inUse.decrementAndGet();
+            leaked.increment();
+            logger.error("buffer not released -> size: " + String.valueOf(this.array.length) + " | acquired by thread: "
+                    + this.owner);
+        }
+    }
+
+    /**
+     * <p>
+     * Buffer acquired from the {@link BufferService}, {@link #close()} returns it
+     * to the pool. The array must not be used after the buffer is closed
+     * </p>
+     */
+    public final class PooledBuffer implements AutoCloseable {
+
+        private final byte[] array;
+        private final Lease lease;
+        private final Cleaner.Cleanable cleanable;
+        private boolean closed = false;
+
+        private PooledBuffer(byte[] array, Lease lease) {
+            this.array = array;
+            this.lease = lease;
+            this.cleanable = (lease != null) ? cleaner.register(this, lease) : null;
+        }
+
+        public byte[] array() {
+            return this.array;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (this.closed)
+                    return;
+                this.closed = true;
+            }
+            if (this.lease == null) {
+                inUse.decrementAndGet();
+                return;
+            }
+            this.lease.released = true;
+            this.cleanable.clean();
+        }
+    }
+
+    /**
+     * <p>
+     * Group of buffers of the same length, closed together
+     * </p>
+     */
+    public static final class PooledBuffers implements AutoCloseable {
+
+        private final PooledBuffer[] buffers;
+        private final byte[][] arrays;
+
+        private PooledBuffers(PooledBuffer[] buffers) {
+            this.buffers = buffers;
+            this.arrays = new byte[buffers.length][];
+            for (int n = 0; n < buffers.length; n++)
+                this.arrays[n] = buffers[n].array();
+        }
+
+        /**
+         * <p>
+         * The arrays of the buffers, all have the same length
+         * </p>
+         */
+        public byte[][] arrays() {
+            return this.arrays;
+        }
+
+        @Override
+        public void close() {
+            for (PooledBuffer buffer : this.buffers)
+                buffer.close();
+        }
+    }
 }
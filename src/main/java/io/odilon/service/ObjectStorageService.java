@@ -70,6 +70,10 @@ public interface ObjectStorageService extends SystemService {
 
     public VirtualFileSystemObject getObject(String bucketName, String objectName);
 
+    public VirtualFileSystemObject openObject(String bucketName, String objectName);
+
+    public ObjectMetadata statObject(String bucketName, String objectName);
+
     public ObjectMetadata getObjectMetadata(String bucketName, String objectName);
 
     /** Object version - get */
@@ -82,8 +86,12 @@ public interface ObjectStorageService extends SystemService {
 
     public InputStream getObjectPreviousVersionStream(String bucketName, String ObjectName, int version);
 
+    public InputStream getObjectPreviousVersionStream(String bucketName, String objectName, int version, long offset, long length);
+
     public InputStream getObjectStream(String bucketName, String objectName);
 
+    public InputStream getObjectStream(String bucketName, String objectName, long offset, long length);
+
     /** Object version - delete/restore */
 
     //public void deleteObjectAllPreviousVersions(ObjectMetadata meta);
@@ -154,6 +154,13 @@ public class OdilonObjectStorageService extends BaseService implements ObjectSto
         return getVirtualFileSystemService().getObjectVersion(bucketName, objectName, version);
     }
 
+    @Override
+    public InputStream getObjectPreviousVersionStream(String bucketName, String objectName, int version, long offset,
+            long length) {
+        Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
+        return getVirtualFileSystemService().getObjectVersion(bucketName, objectName, version, offset, length);
+    }
+
     @Override
     public ObjectMetadata restorePreviousVersion(String bucketName, String objectName) {
         Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
@@ -286,12 +293,56 @@ public class OdilonObjectStorageService extends BaseService implements ObjectSto
         }
     }
 
+    @Override
+    public InputStream getObjectStream(String bucketName, String objectName, long offset, long length) {
+        Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
+        InputStream is = null;
+        try {
+            is = getVirtualFileSystemService().getObjectStream(bucketName, objectName, offset, length);
+            return is;
+        } catch (Exception e1) {
+            logger.error(e1, SharedConstant.NOT_THROWN);
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    logger.error(e, SharedConstant.NOT_THROWN);
+                }
+            }
+            throw new InternalCriticalException(e1);
+        }
+    }
+
     @Override
     public VirtualFileSystemObject getObject(String bucketName, String objectName) {
         Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
         return getVirtualFileSystemService().getObject(bucketName, objectName);
     }
 
+    /**
+     * <p>
+     * Metadata and data stream resolved with one lookup. <b>IMPORTANT</b> -> caller
+     * must close the {@link InputStream} of the object returned
+     * </p>
+     */
+    /**
+     * <p>
+     * Metadata of the head version or {@code null} if the object does not exist,
+     * the data file is not opened
+     * </p>
+     */
+    @Override
+    public ObjectMetadata statObject(String bucketName, String objectName) {
+        Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
+        return getVirtualFileSystemService().statObject(bucketName, objectName);
+    }
+
+    @Override
+    public VirtualFileSystemObject openObject(String bucketName, String objectName) {
+        Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
+        return getVirtualFileSystemService().openObject(bucketName, objectName);
+    }
+
     @Override
     public ObjectMetadata getObjectMetadata(String bucketName, String objectName) {
         Check.requireTrue(isVirtualFileSystemServiceEnabled(), invalidStateMsg());
@@ -35,18 +35,18 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.lang.NonNull;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-
 import io.odilon.OdilonVersion;
 import io.odilon.encryption.EncryptionService;
 import io.odilon.log.Logger;
 import io.odilon.model.JSONObject;
 import io.odilon.model.DataStorage;
 import io.odilon.model.OdilonServerInfo;
+import io.odilon.model.ReadDrivePolicy;
 import io.odilon.model.RedundancyLevel;
 import io.odilon.model.ServerConstant;
 import io.odilon.model.SharedConstant;
 import io.odilon.service.util.ByteToString;
+import io.odilon.traffic.TrafficType;
 import io.odilon.util.RandomIDGenerator;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
 
@@ -175,6 +175,51 @@ public class ServerSettings implements JSONObject {
     @Value("${raid6.parityDrives:-1}")
     protected int raid6ParityDrives;
 
+    /**
+     * size of the chunks used to encode new objects (1..32 MB). Objects already
+     * stored keep the size they were encoded with
+     */
+    @Value("${raid6.chunkSizeMB:32}")
+    protected int raid6ChunkSizeMB;
+
+    /**
+     * shards read from disk are checked against the SHA-256 in the metadata of the
+     * object, a shard that does not match is rebuilt from parity
+     */
+    @Value("${raid6.verifyShards:true}")
+    protected boolean raid6VerifyShards;
+
+    /** random, leastLoaded, sticky */
+    @Value("${raid1.readPolicy:leastLoaded}")
+    protected String raid1ReadPolicyName;
+
+    private ReadDrivePolicy raid1ReadPolicy;
+
+    /** start the same read on another mirror if the first one is slow */
+    @Value("${raid1.hedgedReads.enabled:false}")
+    protected boolean raid1HedgedReadsEnabled;
+
+    /** percentile of the time to first bytes after which the read is hedged */
+    @Value("${raid1.hedgedReads.percentile:95}")
+    protected double raid1HedgedReadsPercentile;
+
+    /** max extra reads caused by hedging, as a percentage of the reads */
+    @Value("${raid1.hedgedReads.maxPercent:5}")
+    protected int raid1HedgedReadsMaxPercent;
+
+    @Value("${raid1.hedgedReads.minDelayMillisecs:5}")
+    protected long raid1HedgedReadsMinDelayMillisecs;
+
+    /** large objects are read from all mirrors in parallel */
+    @Value("${raid1.stripedReads.enabled:true}")
+    protected boolean raid1StripedReadsEnabled;
+
+    @Value("${raid1.stripedReads.minObjectSizeMB:32}")
+    protected long raid1StripedReadsMinObjectSizeMB;
+
+    @Value("${raid1.stripedReads.stripeKB:1024}")
+    protected int raid1StripedReadsStripeKB;
+
     @Value("${dataStorageMode:rw}")
     @NonNull
     protected String dataStorageMode;
@@ -184,9 +229,23 @@ public class ServerSettings implements JSONObject {
 
     // LOCK SERVICE ------------------------------------------
     //
-    @Value("${lockRateMillisecs:2}")
-    String s_lockRateMillisecs;
-    protected double lockRateMillisecs;
+    /** number of locks of the Object and FileCache lock tables */
+    @Value("${lock.stripes:4096}")
+    protected int lockStripes;
+
+    /** wait time and hold time histograms of the locks */
+    @Value("${lock.metrics.enabled:true}")
+    protected boolean lockMetricsEnabled;
+
+    /** number of most contended stripes reported by lock table */
+    @Value("${lock.metrics.topStripes:10}")
+    protected int lockMetricsTopStripes;
+
+    // BUFFER SERVICE ------------------------------------------
+    //
+    /** max memory kept by the pool of RAID 6 encoding and decoding buffers */
+    @Value("${buffers.pool.maxMB:512}")
+    protected int bufferPoolMaxMB;
 
     // SCHEDULER -------------------------------------------
     //
@@ -263,9 +322,36 @@ public class ServerSettings implements JSONObject {
 
     // TRAFFIC PASS --------------------------------------
 
-    @JsonProperty("traffic.tokens:12")
+    @Value("${traffic.tokens:12}")
     private int tokens;
 
+    /** tokens for each {@link TrafficType}, default -> traffic.tokens */
+    @Value("${traffic.tokens.read:-1}")
+    private int readTokens;
+
+    @Value("${traffic.tokens.write:-1}")
+    private int writeTokens;
+
+    @Value("${traffic.tokens.list:-1}")
+    private int listTokens;
+
+    @Value("${traffic.waitTimeoutMillisecs:10000}")
+    private long trafficWaitTimeoutMillisecs;
+
+    /** AIMD limit, tokens move between minTokens and maxTokens (-1 -> 4 x tokens) */
+    @Value("${traffic.adaptive.enabled:true}")
+    private boolean trafficAdaptive;
+
+    @Value("${traffic.adaptive.minTokens:2}")
+    private int trafficAdaptiveMinTokens;
+
+    @Value("${traffic.adaptive.maxTokens:-1}")
+    private int trafficAdaptiveMaxTokens;
+
+    /** decrease the limit if p99 latency > latencyTolerance x baseline p99 */
+    @Value("${traffic.adaptive.latencyTolerance:2.0}")
+    private double trafficAdaptiveLatencyTolerance;
+
     // OBJECT CACHES --------------------------------------
 
     @Value("${objectMetadataCache.initialCapacity:10000}")
@@ -291,6 +377,17 @@ public class ServerSettings implements JSONObject {
     @Value("${fileCache.initialCapacity:10000}")
     protected int fileCacheIntialCapacity;
 
+    // CREDENTIALS CACHE (BASIC AUTH) --------------------
+
+    @Value("${authCache.enabled:true}")
+    protected boolean authCacheEnabled;
+
+    @Value("${authCache.maxCapacity:1000}")
+    protected long authCacheMaxCapacity;
+
+    @Value("${authCache.durationSecs:300}")
+    protected long authCacheDurationSecs;
+
     // --------------------------------------------------
 
     @Value("${retryFailedSeconds:20}")
@@ -343,6 +440,14 @@ public class ServerSettings implements JSONObject {
         if (redundancyLevel == RedundancyLevel.RAID_6) {
             str.append(", \"dataDrives\":" + String.format("%3d", getRAID6DataDrives()).trim());
             str.append(", \"paritytDrives\":" + String.format("%3d", getRAID6ParityDrives()).trim());
+            str.append(", \"raid6.chunkSizeMB\":" + String.valueOf(getRAID6ChunkSizeMB()));
+            str.append(", \"raid6.verifyShards\":\"" + (isRAID6VerifyShards() ? "true" : "false") + "\"");
+        }
+
+        if (redundancyLevel == RedundancyLevel.RAID_1) {
+            str.append(", \"raid1.readPolicy\":\"" + getRAID1ReadPolicy().getName() + "\"");
+            str.append(", \"raid1.hedgedReads.enabled\":\"" + (isRAID1HedgedReadsEnabled() ? "true" : "false") + "\"");
+            str.append(", \"raid1.stripedReads.enabled\":\"" + (isRAID1StripedReadsEnabled() ? "true" : "false") + "\"");
         }
 
         str.append(", \"dataDirs\":[");
@@ -368,7 +473,8 @@ public class ServerSettings implements JSONObject {
         str.append(", \"encrypt\":\"" + "\"" + (isEncryptionEnabled() ? "true" : "false") + "\"");
         str.append(", \"keyAlgorithm\":" + (Optional.ofNullable(keyAlgorithm).isPresent() ? ("\"" + keyAlgorithm + "\"") : "null"));
 
-        str.append(", \"lockRateMillisecs\":" + String.format("%6.2f", getLockRateMillisecs()).trim());
+        str.append(", \"lock.stripes\":" + String.valueOf(getLockStripes()));
+        str.append(", \"lock.metrics.enabled\":\"" + (isLockMetricsEnabled() ? "true" : "false") + "\"");
 
         // Scheduler
         str.append("\"schedulerThreads\":\"" + String.valueOf(schedulerThreads) + "\"");
@@ -385,6 +491,10 @@ public class ServerSettings implements JSONObject {
         str.append(", \"timeZone\":\"" + getTimeZone() + "\"");
 
         str.append(", \"trafficTokens\":" + String.valueOf(tokens) + "");
+        str.append(", \"trafficTokensRead\":" + String.valueOf(readTokens) + "");
+        str.append(", \"trafficTokensWrite\":" + String.valueOf(writeTokens) + "");
+        str.append(", \"trafficTokensList\":" + String.valueOf(listTokens) + "");
+        str.append(", \"trafficAdaptive\":\"" + (this.trafficAdaptive ? "true" : "false") + "\"");
         str.append(", \"versionControl\":\"" + (this.versionControl ? "true" : "false") + "\"");
 
         str.append("\"objectMetadataCache.maxCapacity\":\"" + String.valueOf(objectCacheMaxCapacity) + "\"");
@@ -393,6 +503,10 @@ public class ServerSettings implements JSONObject {
         str.append("\"fileCache.maxCapacity\":\"" + String.valueOf(fileCacheMaxCapacity) + "\"");
         str.append("\"fileCache.durationDays\":\"" + String.valueOf(fileCacheDurationDays) + "\"");
 
+        str.append("\"authCache.enabled\":\"" + (this.authCacheEnabled ? "true" : "false") + "\"");
+        str.append("\"authCache.maxCapacity\":\"" + String.valueOf(authCacheMaxCapacity) + "\"");
+        str.append("\"authCache.durationSecs\":\"" + String.valueOf(authCacheDurationSecs) + "\"");
+
         return str.toString();
     }
 
@@ -404,6 +518,54 @@ public class ServerSettings implements JSONObject {
         return raid6DataDrives;
     }
 
+    public int getRAID6ChunkSizeMB() {
+        return raid6ChunkSizeMB;
+    }
+
+    /**
+     * @return chunk size in bytes, including the {@link ServerConstant#BYTES_IN_INT}
+     *         header of the chunk
+     */
+    public int getRAID6ChunkSize() {
+        return raid6ChunkSizeMB * ServerConstant.iMB;
+    }
+
+    public boolean isRAID6VerifyShards() {
+        return raid6VerifyShards;
+    }
+
+    public ReadDrivePolicy getRAID1ReadPolicy() {
+        return raid1ReadPolicy;
+    }
+
+    public boolean isRAID1HedgedReadsEnabled() {
+        return raid1HedgedReadsEnabled;
+    }
+
+    public double getRAID1HedgedReadsPercentile() {
+        return raid1HedgedReadsPercentile;
+    }
+
+    public int getRAID1HedgedReadsMaxPercent() {
+        return raid1HedgedReadsMaxPercent;
+    }
+
+    public long getRAID1HedgedReadsMinDelayMillisecs() {
+        return raid1HedgedReadsMinDelayMillisecs;
+    }
+
+    public boolean isRAID1StripedReadsEnabled() {
+        return raid1StripedReadsEnabled;
+    }
+
+    public long getRAID1StripedReadsMinObjectSizeMB() {
+        return raid1StripedReadsMinObjectSizeMB;
+    }
+
+    public int getRAID1StripedReadsStripeKB() {
+        return raid1StripedReadsStripeKB;
+    }
+
     public Map<String, Object> toMap() {
 
         Map<String, Object> map = new HashMap<String, Object>();
@@ -412,6 +574,24 @@ public class ServerSettings implements JSONObject {
         map.put("accessKey", accessKey);
         map.put("secretKey", secretKey);
         map.put("redundancyLevel", Optional.ofNullable(redundancyLevel).isPresent() ? (redundancyLevel.getName()) : "null");
+        if (redundancyLevel == RedundancyLevel.RAID_6) {
+            map.put("raid6.chunkSizeMB", String.valueOf(getRAID6ChunkSizeMB()));
+            map.put("raid6.verifyShards", isRAID6VerifyShards() ? "true" : "false");
+        }
+        if (redundancyLevel == RedundancyLevel.RAID_1) {
+            map.put("raid1.readPolicy", getRAID1ReadPolicy().getName());
+            map.put("raid1.hedgedReads.enabled", isRAID1HedgedReadsEnabled() ? "true" : "false");
+            if (isRAID1HedgedReadsEnabled()) {
+                map.put("raid1.hedgedReads.percentile", String.valueOf(getRAID1HedgedReadsPercentile()));
+                map.put("raid1.hedgedReads.maxPercent", String.valueOf(getRAID1HedgedReadsMaxPercent()));
+                map.put("raid1.hedgedReads.minDelayMillisecs", String.valueOf(getRAID1HedgedReadsMinDelayMillisecs()));
+            }
+            map.put("raid1.stripedReads.enabled", isRAID1StripedReadsEnabled() ? "true" : "false");
+            if (isRAID1StripedReadsEnabled()) {
+                map.put("raid1.stripedReads.minObjectSizeMB", String.valueOf(getRAID1StripedReadsMinObjectSizeMB()));
+                map.put("raid1.stripedReads.stripeKB", String.valueOf(getRAID1StripedReadsStripeKB()));
+            }
+        }
         int n = 0;
         if (rootDirs != null && rootDirs.size() > 0) {
             for (String s : rootDirs) {
@@ -424,7 +604,9 @@ public class ServerSettings implements JSONObject {
         map.put("https", isHTTPS() ? "true" : "false");
 
         map.put("keyAlgorithm", (Optional.ofNullable(keyAlgorithm).isPresent() ? (keyAlgorithm) : "null"));
-        map.put("lockRateMillisecs", String.format("%6.2f", getLockRateMillisecs()).trim());
+        map.put("lock.stripes", String.valueOf(getLockStripes()));
+        map.put("lock.metrics.enabled", isLockMetricsEnabled() ? "true" : "false");
+        map.put("buffers.pool.maxMB", String.valueOf(getBufferPoolMaxMB()));
 
         map.put("standby.enabled", isStandByEnabled() ? "true" : "false");
 
@@ -522,12 +704,54 @@ public class ServerSettings implements JSONObject {
 
         if (tokens < 1)
             tokens = ServerConstant.TRAFFIC_TOKENS_DEFAULT;
+        if (readTokens < 1)
+            readTokens = tokens;
+        if (writeTokens < 1)
+            writeTokens = tokens;
+        if (listTokens < 1)
+            listTokens = tokens;
+        if (trafficWaitTimeoutMillisecs < 1)
+            trafficWaitTimeoutMillisecs = 10000;
+        if (trafficAdaptiveMinTokens < 1)
+            trafficAdaptiveMinTokens = 1;
+        if (trafficAdaptiveLatencyTolerance <= 1.0)
+            trafficAdaptiveLatencyTolerance = 2.0;
         try {
             dataStorage = (dataStorageMode == null) ? DataStorage.READ_WRITE : DataStorage.fromString(dataStorageMode);
         } catch (Exception e) {
             exit("dataStorage must be one of {" + DataStorage.getNames().toString() + "} -> " + dataStorageMode);
         }
 
+        if (bufferPoolMaxMB < 0)
+            bufferPoolMaxMB = 0;
+
+        if (raid6ChunkSizeMB < 1)
+            raid6ChunkSizeMB = 1;
+        if (raid6ChunkSizeMB > ServerConstant.MAX_CHUNK_SIZE / ServerConstant.iMB)
+            raid6ChunkSizeMB = ServerConstant.MAX_CHUNK_SIZE / ServerConstant.iMB;
+
+        if (raid1HedgedReadsPercentile <= 0 || raid1HedgedReadsPercentile >= 100)
+            raid1HedgedReadsPercentile = 95;
+        if (raid1HedgedReadsMaxPercent < 0)
+            raid1HedgedReadsMaxPercent = 0;
+        if (raid1HedgedReadsMaxPercent > 100)
+            raid1HedgedReadsMaxPercent = 100;
+        if (raid1HedgedReadsMinDelayMillisecs < 0)
+            raid1HedgedReadsMinDelayMillisecs = 0;
+        if (raid1StripedReadsMinObjectSizeMB < 1)
+            raid1StripedReadsMinObjectSizeMB = 1;
+        if (raid1StripedReadsStripeKB < 64)
+            raid1StripedReadsStripeKB = 64;
+        if (raid1StripedReadsStripeKB > 16 * 1024)
+            raid1StripedReadsStripeKB = 16 * 1024;
+
+        try {
+            raid1ReadPolicy = (raid1ReadPolicyName == null) ? ReadDrivePolicy.LEAST_LOADED
+                    : ReadDrivePolicy.fromString(raid1ReadPolicyName);
+        } catch (Exception e) {
+            exit("raid1.readPolicy must be one of {" + ReadDrivePolicy.getNames().toString() + "} -> " + raid1ReadPolicyName);
+        }
+
         if (timeZone == null || timeZone.equals("null") || timeZone.length() == 0)
             timeZone = TimeZone.getDefault().getID();
 
@@ -627,20 +851,14 @@ public class ServerSettings implements JSONObject {
                         + "48 dirs in DataStorage and raid6.dataDrives=32 and raid6.parityDrives=16 ");
             }
         }
-        try {
+        if (this.lockStripes < 64)
+            this.lockStripes = 64;
 
-            this.lockRateMillisecs = Double.valueOf(this.s_lockRateMillisecs).doubleValue();
+        if (this.lockStripes > 1 << 20)
+            this.lockStripes = 1 << 20;
 
-            if (this.lockRateMillisecs < 0.01)
-                this.lockRateMillisecs = 0.01;
-
-            if (this.lockRateMillisecs > 10.0)
-                this.lockRateMillisecs = 10;
-
-        } catch (Exception e) {
-            logger.error(e, SharedConstant.NOT_THROWN);
-            this.lockRateMillisecs = 2;
-        }
+        if (this.lockMetricsTopStripes < 0)
+            this.lockMetricsTopStripes = 0;
 
         if (this.integrityCheckDays < 1)
             this.integrityCheckDays = 180;
@@ -676,6 +894,12 @@ public class ServerSettings implements JSONObject {
         if (this.objectCacheInitialCapacity < 1)
             this.objectCacheInitialCapacity = 10000;
 
+        if (this.authCacheMaxCapacity < 1)
+            this.authCacheMaxCapacity = 1000;
+
+        if (this.authCacheDurationSecs < 1)
+            this.authCacheDurationSecs = 300;
+
         startuplogger.debug("Started -> " + ServerSettings.class.getSimpleName());
 
     }
@@ -781,8 +1005,20 @@ public class ServerSettings implements JSONObject {
         return version;
     }
 
-    public double getLockRateMillisecs() {
-        return lockRateMillisecs;
+    public int getLockStripes() {
+        return lockStripes;
+    }
+
+    public boolean isLockMetricsEnabled() {
+        return lockMetricsEnabled;
+    }
+
+    public int getLockMetricsTopStripes() {
+        return lockMetricsTopStripes;
+    }
+
+    public int getBufferPoolMaxMB() {
+        return bufferPoolMaxMB;
     }
 
     public RedundancyLevel getRedundancyLevel() {
@@ -858,6 +1094,39 @@ public class ServerSettings implements JSONObject {
         return tokens;
     }
 
+    public int getMaxTrafficTokens(TrafficType type) {
+        switch (type) {
+        case WRITE:
+            return writeTokens;
+        case LIST:
+            return listTokens;
+        default:
+            return readTokens;
+        }
+    }
+
+    public long getTrafficWaitTimeoutMillisecs() {
+        return trafficWaitTimeoutMillisecs;
+    }
+
+    public boolean isTrafficAdaptive() {
+        return trafficAdaptive;
+    }
+
+    public int getTrafficAdaptiveMinTokens(TrafficType type) {
+        return Math.min(trafficAdaptiveMinTokens, getMaxTrafficTokens(type));
+    }
+
+    public int getTrafficAdaptiveMaxTokens(TrafficType type) {
+        if (trafficAdaptiveMaxTokens < 1)
+            return 4 * getMaxTrafficTokens(type);
+        return Math.max(trafficAdaptiveMaxTokens, getMaxTrafficTokens(type));
+    }
+
+    public double getTrafficAdaptiveLatencyTolerance() {
+        return trafficAdaptiveLatencyTolerance;
+    }
+
     public int getIntegrityCheckThreads() {
         return integrityCheckThreads;
     }
@@ -983,6 +1252,18 @@ public class ServerSettings implements JSONObject {
         return this.fileCacheDurationDays;
     }
 
+    public boolean isAuthCacheEnabled() {
+        return this.authCacheEnabled;
+    }
+
+    public long getAuthCacheMaxCapacity() {
+        return this.authCacheMaxCapacity;
+    }
+
+    public long getAuthCacheDurationSecs() {
+        return this.authCacheDurationSecs;
+    }
+
     public boolean isRAID6ConfigurationValid(int dataShards, int parityShards) {
         return (dataShards == 32 && parityShards == 16) || (dataShards == 16 && parityShards == 8)
                 || (dataShards == 8 && parityShards == 4) || (dataShards == 4 && parityShards == 2)
@@ -0,0 +1,156 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.traffic;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Additive Increase / Multiplicative Decrease concurrency limit of a
+ * {@link TrafficType} pool.
+ * </p>
+ * <p>
+ * The storage latency of every request (from {@code getPass} to
+ * {@code markStorageDone}) is sampled in windows of {@link #WINDOW_MILLISECS}
+ * (or {@link #WINDOW_MAX_SAMPLES} samples). When a window closes:
+ * <ul>
+ * <li>if the window p99 is higher than {@code latencyTolerance} x baseline p99,
+ * the limit is multiplied by {@link #BACKOFF_RATIO}</li>
+ * <li>otherwise, if at least half of the limit was in use, the limit is increased
+ * by 1</li>
+ * </ul>
+ * The baseline is the lowest window p99 observed, it drifts slowly upwards so that
+ * a permanent change in the hardware (or workload) is eventually accepted.
+ * </p>
+ * <p>
+ * Requests of {@link #LARGE_REQUEST_BYTES} or more are sampled in their own
+ * windows, with their own baseline, and their latency is normalised to
+ * {@link #LARGE_REQUEST_BYTES}. A few large objects do not raise the p99 of the
+ * small requests, and a large object is not compared with a small one.
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class AIMDLimit {
+
+    static final long WINDOW_MILLISECS = 1000;
+    static final int WINDOW_MAX_SAMPLES = 256;
+    static final int WINDOW_MIN_SAMPLES = 10;
+    static final double BACKOFF_RATIO = 0.9;
+    static final double BASELINE_DRIFT = 0.01;
+    static final long LARGE_REQUEST_BYTES = 8L * 1024L * 1024L;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+
+    private volatile int limit;
+
+    private final Window small = new Window();
+    private final Window large = new Window();
+
+    AIMDLimit(int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    int getLimit() {
+        return this.limit;
+    }
+
+    int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    /**
+     * @return baseline p99 of the small requests, -1 if no window closed yet
+     */
+    synchronized double getBaseline() {
+        return this.small.baseline;
+    }
+
+    /**
+     * @return baseline p99 of the large requests (normalised), -1 if no window
+     *         closed yet
+     */
+    synchronized double getLargeBaseline() {
+        return this.large.baseline;
+    }
+
+    /**
+     * @param latencyNanos storage latency of the request
+     * @param bytes        size of the data of the request, -1 if not known
+     * @param inflight     passes in use when the sample was taken
+     * @return the new limit
+     */
+    synchronized int onSample(long latencyNanos, long bytes, int inflight) {
+        if (bytes >= LARGE_REQUEST_BYTES)
+            return this.large.add((long) (latencyNanos * ((double) LARGE_REQUEST_BYTES / bytes)), inflight);
+        return this.small.add(latencyNanos, inflight);
+    }
+
+    /**
+     * samples and baseline of one class of requests
+     */
+    private class Window {
+
+        private final long[] samples = new long[WINDOW_MAX_SAMPLES];
+        private int count = 0;
+        private int maxInflight = 0;
+        private long windowStart = System.nanoTime();
+        private double baseline = -1;
+
+        int add(long latencyNanos, int inflight) {
+            this.samples[this.count++] = latencyNanos;
+            this.maxInflight = Math.max(this.maxInflight, inflight);
+            return closeIfDone();
+        }
+
+        private int closeIfDone() {
+
+            long elapsed = System.nanoTime() - this.windowStart;
+
+            if ((this.count < WINDOW_MAX_SAMPLES)
+                    && (elapsed < WINDOW_MILLISECS * 1000000L || this.count < WINDOW_MIN_SAMPLES))
+                return limit;
+
+            long[] window = Arrays.copyOf(this.samples, this.count);
+            Arrays.sort(window);
+            long p99 = window[Math.min(window.length - 1, (int) Math.ceil(window.length * 0.99) - 1)];
+
+            int newLimit = limit;
+
+            if (this.baseline > 0 && p99 > this.baseline * latencyTolerance)
+                newLimit = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+            else if (this.maxInflight * 2 >= limit)
+                newLimit = Math.min(maxLimit, limit + 1);
+
+            if (this.baseline < 0 || p99 < this.baseline)
+                this.baseline = p99;
+            else
+                this.baseline += (p99 - this.baseline) * BASELINE_DRIFT;
+
+            limit = newLimit;
+            this.count = 0;
+            this.maxInflight = 0;
+            this.windowStart = System.nanoTime();
+            return newLimit;
+        }
+    }
+}
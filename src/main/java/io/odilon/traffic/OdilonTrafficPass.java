@@ -26,11 +26,52 @@ public class OdilonTrafficPass implements TrafficPass {
 
     final int id;
 
-    public OdilonTrafficPass(int id) {
+    final TrafficType trafficType;
+
+    /** set by {@link TrafficControlService} when the pass is given to a request */
+    private transient long acquireNanos;
+
+    /** set by {@link TrafficControlService#markStorageDone}, 0 if not marked */
+    private transient long storageNanos;
+
+    /** size of the payload, -1 if not known */
+    private transient long bytes = -1;
+
+    public OdilonTrafficPass(int id, TrafficType trafficType) {
         this.id = id;
+        this.trafficType = trafficType;
     }
 
     public int getId() {
         return id;
     }
+
+    long getAcquireNanos() {
+        return acquireNanos;
+    }
+
+    void setAcquireNanos(long acquireNanos) {
+        this.acquireNanos = acquireNanos;
+    }
+
+    long getStorageNanos() {
+        return storageNanos;
+    }
+
+    void setStorageNanos(long storageNanos) {
+        this.storageNanos = storageNanos;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public TrafficType getTrafficType() {
+        return trafficType;
+    }
 }
@@ -16,9 +16,9 @@
  */
 package io.odilon.traffic;
 
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
 
 import jakarta.annotation.PostConstruct;
 
@@ -29,13 +29,33 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.odilon.log.Logger;
-import io.odilon.model.ServerConstant;
 import io.odilon.model.ServiceStatus;
+import io.odilon.monitor.SystemMonitorService;
 import io.odilon.service.BaseService;
 import io.odilon.service.ServerSettings;
 
 /**
- * 
+ * <p>
+ * Admission control of the API. Every request must get a {@link TrafficPass}
+ * before accessing the storage and release it when it is done.
+ * </p>
+ * <p>
+ * There is one pool of passes for each {@link TrafficType} (read, write, list).
+ * Each pool is a fair {@link Semaphore}: waiting requests get a pass in FIFO
+ * order and are woken up as soon as a pass is released. A request that can not
+ * get a pass within {@code traffic.waitTimeoutMillisecs} fails.
+ * </p>
+ * <p>
+ * If {@code traffic.adaptive.enabled} the size of each pool is not fixed, it is
+ * adjusted by an {@link AIMDLimit} based on the observed latency of the
+ * requests. The latency is the storage side of the request, from
+ * {@link #getPass} to {@link #markStorageDone}: the transfer of the data to or
+ * from the client is not sampled.
+ * </p>
+ * <p>
+ * Queue depth, wait time and current limit of each pool are reported by
+ * {@link SystemMonitorService}
+ * </p>
  * 
  * @author atolomei@novamens.com (Alejandro Tolomei)
  */
@@ -50,93 +70,134 @@ public class TrafficControlService extends BaseService {
     private final ServerSettings serverSettings;
 
     @JsonIgnore
-    private Set<TrafficPass> passes = null;
+    @Autowired
+    private final SystemMonitorService monitoringService;
+
+    @JsonIgnore
+    private final Map<TrafficType, TrafficPool> pools = new EnumMap<TrafficType, TrafficPool>(TrafficType.class);
 
     @JsonProperty("waittimeout")
     private long waittimeout = 10000L;
 
-    @JsonProperty("tokens")
-    private int tokens = ServerConstant.TRAFFIC_TOKENS_DEFAULT;
-
-    public TrafficControlService(ServerSettings serverSettings) {
+    public TrafficControlService(ServerSettings serverSettings, SystemMonitorService monitoringService) {
         this.serverSettings = serverSettings;
+        this.monitoringService = monitoringService;
     }
 
+    /**
+     * @return a {@link TrafficType#READ} pass
+     */
     public TrafficPass getPass() {
+        return getPass(TrafficType.READ);
+    }
 
+    public TrafficPass getPass(TrafficType type) {
+
+        TrafficPool pool = this.pools.get(type);
         TrafficPass pass = null;
-        long initialtime = System.currentTimeMillis();
-        long wait = 0;
+        long start = System.currentTimeMillis();
         boolean inqueue = false;
 
         try {
-            while (pass == null) {
-
-                synchronized (this) {
-                    if (!passes.isEmpty()) {
-                        pass = passes.iterator().next();
-                        passes.remove(pass);
-                    }
-                }
-
-                if (pass == null) {
-                    wait = System.currentTimeMillis() - initialtime;
-                    if (wait > waittimeout) {
-                        logger.error("TimeoutException  | passes = " + String.valueOf(passes));
-                        throw new RuntimeException("TimeoutException  | passes -> " + String.valueOf(passes));
-                    }
-
-                    synchronized (this) {
-                        try {
-                            if (!inqueue) {
-                                // metrics_service.getMeterAPITrafficeQueueIn().mark();
-                                // metrics_service.getCounterTrafficQueueSize().inc();
-                                inqueue = true;
-                            }
-                            wait(500);
-                        } catch (InterruptedException e) {
-                        }
-                    }
-                }
+            pass = pool.acquire(0);
+            if (pass == null) {
+                inqueue = true;
+                this.monitoringService.getTrafficQueueCounter(type).inc();
+                pass = pool.acquire(this.waittimeout);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for pass | type -> " + type.name());
         } finally {
-            // if (inqueue) {
-            // wait = System.currentTimeMillis() - initialtime;
-            // metrics_service.getCounterTrafficQueueSize().dec();
-            // metrics_service.getMeterAPITrafficeQueueOut().mark();
-            // metrics_service.getTrafficInQueueEstimator().addValue(wait);
-            // }
+            if (inqueue)
+                this.monitoringService.getTrafficQueueCounter(type).dec();
+            this.monitoringService.getTrafficWaitHistogram(type).update(System.currentTimeMillis() - start);
+        }
+
+        if (pass == null) {
+            this.monitoringService.getTrafficTimeoutMeter().mark();
+            logger.error("TimeoutException  | type -> " + type.name() + " | waiting -> " + String.valueOf(pool.getQueueLength()));
+            throw new RuntimeException("TimeoutException  | type -> " + type.name() + " | waiting -> "
+                    + String.valueOf(pool.getQueueLength()));
         }
         return pass;
     }
 
+    /**
+     * <p>
+     * The storage side of the request is done: the stream to return was opened, or
+     * the object was written. The latency sampled for the adaptive limit ends
+     * here, the time until {@link #release} (sending the response) is not
+     * sampled. If it is not called, the sample is the time the pass was held.
+     * </p>
+     * 
+     * @param pass
+     * @param bytes size of the data read or written, or -1 if not known. Requests
+     *              of at least {@link AIMDLimit#LARGE_REQUEST_BYTES} are sampled
+     *              apart, normalised by their size
+     */
+    public void markStorageDone(TrafficPass pass, long bytes) {
+
+        if (pass == null)
+            return;
+
+        OdilonTrafficPass odilonPass = (OdilonTrafficPass) pass;
+        odilonPass.setStorageNanos(System.nanoTime());
+        odilonPass.setBytes(bytes);
+    }
+
     public void release(TrafficPass pass) {
 
         if (pass == null)
             return;
 
-        synchronized (this) {
-            passes.add(pass);
-            notify();
-        }
+        this.pools.get(pass.getTrafficType()).release(pass);
     }
 
     public void setTimeout(long value) {
         waittimeout = value;
     }
 
+    /**
+     * @return estimated number of requests waiting for a pass of this type
+     */
+    public int getQueueLength(TrafficType type) {
+        return this.pools.get(type).getQueueLength();
+    }
+
+    public int getAvailablePasses(TrafficType type) {
+        return this.pools.get(type).getAvailable();
+    }
+
+    /**
+     * @return current concurrency limit of the pool (fixed or adaptive)
+     */
+    public int getLimit(TrafficType type) {
+        return this.pools.get(type).getLimit();
+    }
+
     @PostConstruct
     protected synchronized void onInitialize() {
         setStatus(ServiceStatus.STARTING);
-        this.tokens = serverSettings.getMaxTrafficTokens();
+        this.waittimeout = serverSettings.getTrafficWaitTimeoutMillisecs();
         createPasses();
         setStatus(ServiceStatus.RUNNING);
         startuplogger.debug("Started -> " + TrafficControlService.class.getSimpleName());
     }
 
     protected synchronized void createPasses() {
-        this.passes = Collections.synchronizedSet(new HashSet<TrafficPass>(this.tokens));
-        for (int n = 0; n < this.tokens; n++)
-            passes.add(new OdilonTrafficPass(n));
+        int id = 0;
+        for (TrafficType type : TrafficType.values()) {
+            int tokens = serverSettings.getMaxTrafficTokens(type);
+            AIMDLimit limit = null;
+            if (serverSettings.isTrafficAdaptive())
+                limit = new AIMDLimit(tokens, serverSettings.getTrafficAdaptiveMinTokens(type),
+                        serverSettings.getTrafficAdaptiveMaxTokens(type), serverSettings.getTrafficAdaptiveLatencyTolerance());
+            TrafficPool pool = new TrafficPool(type, tokens, limit, this.monitoringService);
+            for (int n = 0; n < pool.getMaxPasses(); n++)
+                pool.add(new OdilonTrafficPass(id++, type));
+            this.pools.put(type, pool);
+            this.monitoringService.setTrafficLimit(type, pool.getLimit());
+        }
     }
 }
@@ -32,4 +32,6 @@ import java.io.Serializable;
 
 public interface TrafficPass extends Serializable {
 
+    public TrafficType getTrafficType();
+
 }
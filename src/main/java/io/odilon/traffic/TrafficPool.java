@@ -0,0 +1,150 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.traffic;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.odilon.monitor.SystemMonitorService;
+
+/**
+ * <p>
+ * Passes of one {@link TrafficType}. The pool has as many passes as the maximum
+ * limit. The semaphore has as many permits as the current limit, a thread that
+ * acquired a permit always finds a pass.
+ * </p>
+ * <p>
+ * If the limit is adaptive, the storage latency of each pass is reported to the
+ * {@link AIMDLimit} on release and the permits are adjusted to the new limit.
+ * If the limit decreases below the passes in use, new requests wait until
+ * enough passes are released.
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class TrafficPool {
+
+    private final TrafficType type;
+    private final ResizableSemaphore semaphore;
+    private final Queue<OdilonTrafficPass> passes = new ConcurrentLinkedQueue<OdilonTrafficPass>();
+    private final AtomicInteger inflight = new AtomicInteger(0);
+    private final AIMDLimit limit;
+    private final SystemMonitorService monitoringService;
+    private int permits;
+
+    /**
+     * @param limit adaptive limit, or {@code null} if the pool has a fixed size of
+     *              {@code tokens}
+     */
+    TrafficPool(TrafficType type, int tokens, AIMDLimit limit, SystemMonitorService monitoringService) {
+        this.type = type;
+        this.limit = limit;
+        this.monitoringService = monitoringService;
+        this.permits = (limit == null) ? tokens : limit.getLimit();
+        this.semaphore = new ResizableSemaphore(this.permits);
+    }
+
+    void add(OdilonTrafficPass pass) {
+        this.passes.add(pass);
+    }
+
+    /**
+     * timed tryAcquire honors the fairness setting, even with timeout 0
+     */
+    TrafficPass acquire(long timeoutMillisecs) throws InterruptedException {
+        if (!this.semaphore.tryAcquire(timeoutMillisecs, TimeUnit.MILLISECONDS))
+            return null;
+        this.inflight.incrementAndGet();
+        OdilonTrafficPass pass = this.passes.poll();
+        pass.setAcquireNanos(System.nanoTime());
+        pass.setStorageNanos(0);
+        pass.setBytes(-1);
+        return pass;
+    }
+
+    /**
+     * <p>
+     * The sample is the time from acquire to {@link TrafficControlService#markStorageDone}.
+     * If the request did not mark it, the time the pass was held.
+     * </p>
+     */
+    void release(TrafficPass pass) {
+        OdilonTrafficPass odilonPass = (OdilonTrafficPass) pass;
+        long end = (odilonPass.getStorageNanos() > 0) ? odilonPass.getStorageNanos() : System.nanoTime();
+        long latency = end - odilonPass.getAcquireNanos();
+        long bytes = odilonPass.getBytes();
+        int used = this.inflight.getAndDecrement();
+        this.passes.add(odilonPass);
+        this.semaphore.release();
+        if (this.limit != null)
+            resize(this.limit.onSample(latency, bytes, used));
+    }
+
+    synchronized void resize(int newLimit) {
+        if (newLimit == this.permits)
+            return;
+        if (newLimit > this.permits)
+            this.semaphore.release(newLimit - this.permits);
+        else
+            this.semaphore.reducePermits(this.permits - newLimit);
+        this.permits = newLimit;
+        this.monitoringService.setTrafficLimit(this.type, newLimit);
+    }
+
+    int getMaxPasses() {
+        return (this.limit == null) ? this.permits : this.limit.getMaxLimit();
+    }
+
+    synchronized int getLimit() {
+        return this.permits;
+    }
+
+    int getInflight() {
+        return this.inflight.get();
+    }
+
+    int getQueueLength() {
+        return this.semaphore.getQueueLength();
+    }
+
+    /**
+     * @return permits available, negative if the limit was reduced below the passes
+     *         in use
+     */
+    int getAvailable() {
+        return this.semaphore.availablePermits();
+    }
+
+    /**
+     * fair semaphore that can shrink
+     */
+    @SuppressWarnings("serial")
+    private static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.traffic;
+
+/**
+ * <p>
+ * Each type of request has its own pool of {@link TrafficPass}, so that slow
+ * uploads or large listings do not starve the rest of the traffic
+ * </p>
+ * 
+ * {@see TrafficControlService}
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public enum TrafficType {
+
+    /** get Object, metadata, exists, info */
+    READ,
+
+    /** put, delete, restore */
+    WRITE,
+
+    /** list Buckets and Objects */
+    LIST;
+}
@@ -20,21 +20,34 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -74,6 +87,7 @@ import io.odilon.virtualFileSystem.model.JournalService;
 import io.odilon.virtualFileSystem.model.LockService;
 import io.odilon.virtualFileSystem.model.ServerBucket;
 import io.odilon.virtualFileSystem.model.OperationCode;
+import io.odilon.virtualFileSystem.model.VirtualFileSystemObject;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemOperation;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
 
@@ -112,11 +126,16 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
     @JsonIgnore
     private LockService lockService;
 
+    /**
+     * The driver is shared by all threads (see
+     * {@link VirtualFileSystemService#createVFSIODriver()}), these lists are
+     * built on first use and discarded by {@link #resetDrives()}
+     */
     @JsonIgnore
-    private List<Drive> drivesEnabled;
+    private volatile List<Drive> drivesEnabled;
 
     @JsonIgnore
-    private List<Drive> drivesAll;
+    private volatile List<Drive> drivesAll;
 
     @JsonIgnore
     private ApplicationContext applicationContext;
@@ -234,50 +253,50 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
         OffsetDateTime now = OffsetDateTime.now();
         String oldName = bucket.getName();
 
-        bucketWriteLock(oldName);
+        /**
+         * both names are locked in the order of the lock table, a stripe shared by
+         * the two names is locked once
+         */
+        List<ReadWriteLock> locks = getLockService().getOrderedBucketLocks(oldName, newBucketName);
+        bucketWriteLock(locks);
         try {
-            bucketWriteLock(newBucketName);
-            try {
 
-                /** must be executed inside the critical zone. */
-                checkExistsBucket(bucket);
+            /** must be executed inside the critical zone. */
+            checkExistsBucket(bucket);
 
-                /** must be executed also inside the critical zone. */
-                checkNotExistsBucket(newBucketName);
+            /** must be executed also inside the critical zone. */
+            checkNotExistsBucket(newBucketName);
 
-                operation = getJournalService().updateBucket(bucket, newBucketName);
-                backupBucketMetadata(bucket);
+            operation = getJournalService().updateBucket(bucket, newBucketName);
+            backupBucketMetadata(bucket);
 
-                bucketMeta = bucket.getBucketMetadata();
-                bucketMeta.setLastModified(now);
-                bucketMeta.setBucketName(newBucketName);
+            bucketMeta = bucket.getBucketMetadata();
+            bucketMeta.setLastModified(now);
+            bucketMeta.setBucketName(newBucketName);
 
-                for (Drive drive : getDrivesAll()) {
-                    try {
-                        drive.updateBucket(bucketMeta);
+            for (Drive drive : getDrivesAll()) {
+                try {
+                    drive.updateBucket(bucketMeta);
 
-                    } catch (IOException e) {
-                        commitOK = false;
-                        throw new InternalCriticalException(e, objectInfo(drive));
-                    } catch (Exception e) {
-                        commitOK = false;
-                        throw new InternalCriticalException(e, objectInfo(drive));
-                    }
+                } catch (IOException e) {
+                    commitOK = false;
+                    throw new InternalCriticalException(e, objectInfo(drive));
+                } catch (Exception e) {
+                    commitOK = false;
+                    throw new InternalCriticalException(e, objectInfo(drive));
                 }
+            }
 
-                commitOK = operation.commit(bucket);
-                return bucket;
+            commitOK = operation.commit(bucket);
+            return bucket;
 
+        } finally {
+            try {
+                if (!commitOK)
+                    rollback(operation);
             } finally {
-                try {
-                    if (!commitOK)
-                        rollback(operation);
-                } finally {
-                    bucketWriteUnLock(newBucketName);
-                }
+                bucketWriteUnLock(locks);
             }
-        } finally {
-            bucketWriteUnLock(oldName);
         }
     }
 
@@ -626,30 +645,17 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
         List<VirtualFileSystemOperation> list = new ArrayList<VirtualFileSystemOperation>();
 
         for (Drive drive : getDrivesEnabled()) {
-            File dir = new File(drive.getJournalDirPath());
-            if (!dir.exists())
-                return list;
-            if (!dir.isDirectory())
-                return list;
-            File[] files = dir.listFiles();
-            for (File file : files) {
-                if (!file.isDirectory()) {
-                    Path pa = Paths.get(file.getAbsolutePath());
-                    try {
-                        String str = Files.readString(pa);
-                        OdilonVirtualFileSystemOperation op = getObjectMapper().readValue(str,
-                                OdilonVirtualFileSystemOperation.class);
-                        op.setJournalService(getJournalService());
-                        if (!list.contains(op))
-                            list.add(op);
-
-                    } catch (IOException e) {
-                        try {
-                            Files.delete(file.toPath());
-                        } catch (IOException e1) {
-                            logger.error(e, SharedConstant.NOT_THROWN);
-                        }
-                    }
+            for (Entry<String, String> entry : drive.getJournalPending().entrySet()) {
+                try {
+                    OdilonVirtualFileSystemOperation op = getObjectMapper().readValue(entry.getValue(),
+                            OdilonVirtualFileSystemOperation.class);
+                    op.setJournalService(getJournalService());
+                    if (!list.contains(op))
+                        list.add(op);
+                } catch (IOException e) {
+                    logger.error(e, "invalid journal record -> op: " + entry.getKey() + " | d: " + drive.getName(),
+                            SharedConstant.NOT_THROWN);
+                    drive.removeJournal(entry.getKey());
                 }
             }
         }
@@ -852,91 +858,51 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
     }
 
     /**
-     * 
-     * 
+     * <p>
+     * {@link Drive}s enabled sorted by order. The list is built on first use and
+     * shared by all the threads until {@link #resetDrives()}, it must not be
+     * modified
+     * </p>
      */
     @Override
-    public synchronized List<Drive> getDrivesEnabled() {
-
-        if (this.drivesEnabled != null)
+    public List<Drive> getDrivesEnabled() {
+        List<Drive> list = this.drivesEnabled;
+        if (list != null)
+            return list;
+        synchronized (this) {
+            if (this.drivesEnabled == null)
+                this.drivesEnabled = sortByOrder(getVirtualFileSystemService().getMapDrivesEnabled().values());
             return this.drivesEnabled;
-
-        this.drivesEnabled = new ArrayList<Drive>();
-
-        getVirtualFileSystemService().getMapDrivesEnabled().forEach((K, V) -> this.drivesEnabled.add(V));
-
-        this.drivesEnabled.sort(new Comparator<Drive>() {
-            @Override
-            public int compare(Drive o1, Drive o2) {
-                try {
-
-                    if ((o1.getDriveInfo() == null))
-                        if (o2.getDriveInfo() != null)
-                            return 1;
-
-                    if ((o2.getDriveInfo() == null))
-                        if (o1.getDriveInfo() != null)
-                            return -1;
-
-                    if ((o1.getDriveInfo() == null) && o2.getDriveInfo() == null)
-                        return 0;
-
-                    if (o1.getDriveInfo().getOrder() < o2.getDriveInfo().getOrder())
-                        return -1;
-
-                    if (o1.getDriveInfo().getOrder() > o2.getDriveInfo().getOrder())
-                        return 1;
-
-                    return 0;
-                } catch (Exception e) {
-                    return 0;
-                }
-            }
-        });
-        return this.drivesEnabled;
+        }
     }
 
     /**
-     * 
+     * <p>
+     * All {@link Drive}s sorted by order, see {@link #getDrivesEnabled()}
+     * </p>
      */
-    public synchronized List<Drive> getDrivesAll() {
-
-        if (drivesAll != null)
-            return drivesAll;
-
-        this.drivesAll = new ArrayList<Drive>();
-
-        getVirtualFileSystemService().getMapDrivesAll().forEach((K, V) -> drivesAll.add(V));
-
-        this.drivesAll.sort(new Comparator<Drive>() {
-            @Override
-            public int compare(Drive o1, Drive o2) {
-                try {
-                    if ((o1.getDriveInfo() == null))
-                        if (o2.getDriveInfo() != null)
-                            return 1;
-
-                    if ((o2.getDriveInfo() == null))
-                        if (o1.getDriveInfo() != null)
-                            return -1;
-
-                    if ((o1.getDriveInfo() == null) && o2.getDriveInfo() == null)
-                        return 0;
-
-                    if (o1.getDriveInfo().getOrder() < o2.getDriveInfo().getOrder())
-                        return -1;
-
-                    if (o1.getDriveInfo().getOrder() > o2.getDriveInfo().getOrder())
-                        return 1;
-
-                    return 0;
-                } catch (Exception e) {
-                    return 0;
-                }
-            }
-        });
+    @Override
+    public List<Drive> getDrivesAll() {
+        List<Drive> list = this.drivesAll;
+        if (list != null)
+            return list;
+        synchronized (this) {
+            if (this.drivesAll == null)
+                this.drivesAll = sortByOrder(getVirtualFileSystemService().getMapDrivesAll().values());
+            return this.drivesAll;
+        }
+    }
 
-        return this.drivesAll;
+    /**
+     * <p>
+     * Called by the {@link VirtualFileSystemService} after the set of drives or
+     * their status changed. The lists are rebuilt on next use
+     * </p>
+     */
+    @Override
+    public synchronized void resetDrives() {
+        this.drivesEnabled = null;
+        this.drivesAll = null;
     }
 
     /**
@@ -953,9 +919,7 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
      */
     @Override
     public void saveScheduler(ServiceRequest request, String queueId) {
-        for (Drive drive : getDrivesEnabled()) {
-            drive.saveScheduler(request, queueId);
-        }
+        onDrivesEnabled(drive -> drive.saveScheduler(request, queueId), "saveScheduler -> " + queueId);
     }
 
     /**
@@ -965,19 +929,22 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
      */
     @Override
     public void removeScheduler(ServiceRequest request, String queueId) {
-        for (Drive drive : getDrivesEnabled())
-            drive.removeScheduler(request, queueId);
+        onDrivesEnabled(drive -> drive.removeScheduler(request, queueId), "removeScheduler -> " + queueId);
     }
 
     /**
      * <p>
-     * Shared by RAID 1 and RAID 6
+     * Shared by RAID 1 and RAID 6. The record is queued in every Drive's journal
+     * log and then the method waits for all of them (ie. latency is the slowest
+     * drive, not the sum)
      * </p>
      */
     @Override
     public void saveJournal(VirtualFileSystemOperation op) {
+        List<CompletableFuture<Void>> list = new ArrayList<CompletableFuture<Void>>();
         for (Drive drive : getDrivesEnabled())
-            drive.saveJournal(op);
+            list.add(drive.saveJournalAsync(op));
+        awaitAll(list, "op: " + op.getId());
     }
 
     /**
@@ -987,8 +954,10 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
      */
     @Override
     public void removeJournal(String id) {
+        List<CompletableFuture<Void>> list = new ArrayList<CompletableFuture<Void>>();
         for (Drive drive : getDrivesEnabled())
-            drive.removeJournal(id);
+            list.add(drive.removeJournalAsync(id));
+        awaitAll(list, "op: " + id);
     }
 
     public boolean isStandByEnabled() {
@@ -1140,6 +1109,114 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
     
     protected abstract Drive getObjectMetadataReadDrive(ServerBucket bucket, String objectName);
 
+    /**
+     * <p>
+     * Opens the data stream of the head version (decrypted if the object is
+     * encrypted).
+     * </p>
+     * MUST BE CALLED INSIDE THE CRITICAL ZONE
+     */
+    protected abstract InputStream openInputStream(ServerBucket bucket, String objectName, ObjectMetadata meta)
+            throws IOException;
+
+    /**
+     * <p>
+     * Shared by RAID 0, RAID 1, RAID 6. <br/>
+     * The existence check, the {@link ObjectMetadata} and the data stream are
+     * resolved inside one critical zone, instead of {@code exists},
+     * {@code getObjectMetadata} and {@code getInputStream} locking the object
+     * three times
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} of the object
+     * returned
+     */
+    @Override
+    public VirtualFileSystemObject openObject(ServerBucket bucket, String objectName) {
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireNonNullStringArgument(objectName, "objectName is null or empty | b:" + bucket.getName());
+
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                /** must be executed inside the critical zone */
+                checkExistBucket(bucket);
+                checkIsAccesible(bucket);
+
+                ObjectMetadata meta = getObjectMetadataIfExistsInternal(bucket, objectName);
+
+                if ((meta == null) || (!meta.isAccesible()))
+                    throw new OdilonObjectNotFoundException(objectInfo(bucket, objectName));
+
+                return new OdilonObject(bucket, objectName, getVirtualFileSystemService(), meta,
+                        openInputStream(bucket, objectName, meta));
+
+            } catch (OdilonObjectNotFoundException e) {
+                throw e;
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
+    /**
+     * <p>
+     * Shared by RAID 0, RAID 1, RAID 6. <br/>
+     * Returns the {@link ObjectMetadata} of the head version or {@code null} if the
+     * object does not exist. If the metadata is in the
+     * {@link ObjectMetadataCacheService} the drives are not accessed, the data
+     * file is never opened
+     * </p>
+     */
+    @Override
+    public ObjectMetadata statObject(ServerBucket bucket, String objectName) {
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireNonNullStringArgument(objectName, "objectName is null or empty | b:" + bucket.getName());
+
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                /** must be executed inside the critical zone */
+                checkExistBucket(bucket);
+                checkIsAccesible(bucket);
+                return getObjectMetadataIfExistsInternal(bucket, objectName);
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns {@code null} if the object does not exist. A hit in the
+     * {@link ObjectMetadataCacheService} means the object exists, only on a miss
+     * the drive is checked
+     * </p>
+     * MUST BE CALLED INSIDE THE CRITICAL ZONE
+     */
+    protected ObjectMetadata getObjectMetadataIfExistsInternal(ServerBucket bucket, String objectName) {
+
+        boolean cached = getServerSettings().isUseObjectCache() && getObjectMetadataCacheService().containsKey(bucket, objectName);
+
+        if ((!cached) && (!getObjectMetadataReadDrive(bucket, objectName).existsObjectMetadata(bucket, objectName)))
+            return null;
+
+        return getDriverObjectMetadataInternal(bucket, objectName, true);
+    }
+
     /**
      * <p>
      * Note that bucketName is not stored on disk, we must set the bucketName
@@ -1257,6 +1334,58 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
         }
     }
 
+    /**
+     * <p>
+     * Returns an {@link InputStream} that starts at {@code offset} and returns at
+     * most {@code length} bytes of the data file.<br/>
+     * If the file is not encrypted the file channel is positioned directly at the
+     * offset, otherwise the decrypted stream has to be skipped up to the offset
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     */
+    protected InputStream getRangeInputStream(Path path, boolean isEncrypt, long offset, long length) throws IOException {
+        return getRangeInputStream(path, isEncrypt, offset, length, null);
+    }
+
+    /**
+     * <p>
+     * Same as {@link #getRangeInputStream(Path, boolean, long, long)}, the reads
+     * of the data file are recorded in the {@link DriveReadStats} of the drive
+     * </p>
+     * 
+     * @param stats read stats of the drive of the data file, or null
+     */
+    protected InputStream getRangeInputStream(Path path, boolean isEncrypt, long offset, long length, DriveReadStats stats)
+            throws IOException {
+
+        Check.requireTrue(offset >= 0, "offset must be >= 0");
+        Check.requireTrue(length >= 0, "length must be >= 0");
+
+        if (isEncrypt) {
+            InputStream stream = getEncryptionService().decryptStream(withReadStats(Files.newInputStream(path), stats));
+            try {
+                stream.skipNBytes(offset);
+            } catch (IOException e) {
+                stream.close();
+                throw e;
+            }
+            return new BoundedInputStream(stream, length);
+        }
+
+        SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BoundedInputStream(withReadStats(Channels.newInputStream(channel), stats), length);
+    }
+
+    private InputStream withReadStats(InputStream stream, DriveReadStats stats) {
+        return (stats == null) ? stream : new DriveReadInputStream(stream, stats);
+    }
+
     protected EncryptionService getEncryptionService() {
         return getVirtualFileSystemService().getEncryptionService();
     }
@@ -1273,6 +1402,76 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
         return getVirtualFileSystemService().getReplicationService();
     }
 
+    /**
+     * <p>
+     * Executes the action on all enabled drives concurrently (using the
+     * VirtualFileSystem's ExecutorService) and waits for all of them. If any fails
+     * the first error is thrown after all drives finished, as an
+     * {@link InternalCriticalException}
+     * </p>
+     */
+    protected void onDrivesEnabled(Consumer<Drive> action, String info) {
+
+        List<Drive> drives = getDrivesEnabled();
+
+        if (drives.size() == 1) {
+            action.accept(drives.get(0));
+            return;
+        }
+
+        ExecutorService executor = getVirtualFileSystemService().getExecutorService();
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(drives.size());
+        for (Drive drive : drives) {
+            tasks.add(() -> {
+                action.accept(drive);
+                return Boolean.valueOf(true);
+            });
+        }
+        try {
+            Throwable error = null;
+            for (Future<Boolean> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (error == null)
+                        error = e.getCause();
+                }
+            }
+            if (error instanceof InternalCriticalException)
+                throw (InternalCriticalException) error;
+            if (error != null)
+                throw new InternalCriticalException(error, info);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalCriticalException(e, info);
+        }
+    }
+
+    /**
+     * <p>
+     * waits for all the futures, the first error is thrown after all of them
+     * completed
+     * </p>
+     */
+    protected void awaitAll(List<CompletableFuture<Void>> list, String info) {
+        Throwable error = null;
+        for (CompletableFuture<Void> future : list) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null)
+                    error = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalCriticalException(e, info);
+            }
+        }
+        if (error instanceof InternalCriticalException)
+            throw (InternalCriticalException) error;
+        if (error != null)
+            throw new InternalCriticalException(error, info);
+    }
+
     protected SystemMonitorService getSystemMonitorService() {
         return getVirtualFileSystemService().getSystemMonitorService();
     }
@@ -1325,6 +1524,19 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
         getLockService().getBucketLock(bucket).writeLock().unlock();
     }
 
+    /**
+     * locks in the order of the list (see {@link LockService#getOrderedBucketLocks})
+     */
+    protected void bucketWriteLock(List<ReadWriteLock> locks) {
+        for (ReadWriteLock lock : locks)
+            lock.writeLock().lock();
+    }
+
+    protected void bucketWriteUnLock(List<ReadWriteLock> locks) {
+        for (int n = locks.size() - 1; n >= 0; n--)
+            locks.get(n).writeLock().unlock();
+    }
+
     protected void bucketWriteLock(BucketMetadata meta) {
         getLockService().getBucketLock(meta.getId()).writeLock().lock();
     }
@@ -1539,4 +1751,38 @@ public abstract class BaseIODriver implements IODriver, ApplicationContextAware
     }
 
 
+
+    private static List<Drive> sortByOrder(Collection<Drive> drives) {
+
+        List<Drive> list = new ArrayList<Drive>(drives);
+
+        list.sort(new Comparator<Drive>() {
+            @Override
+            public int compare(Drive o1, Drive o2) {
+                try {
+                    if ((o1.getDriveInfo() == null))
+                        if (o2.getDriveInfo() != null)
+                            return 1;
+
+                    if ((o2.getDriveInfo() == null))
+                        if (o1.getDriveInfo() != null)
+                            return -1;
+
+                    if ((o1.getDriveInfo() == null) && o2.getDriveInfo() == null)
+                        return 0;
+
+                    if (o1.getDriveInfo().getOrder() < o2.getDriveInfo().getOrder())
+                        return -1;
+
+                    if (o1.getDriveInfo().getOrder() > o2.getDriveInfo().getOrder())
+                        return 1;
+
+                    return 0;
+                } catch (Exception e) {
+                    return 0;
+                }
+            }
+        });
+        return list;
+    }
 }
@@ -0,0 +1,470 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+import io.odilon.errors.InternalCriticalException;
+import io.odilon.log.Logger;
+import io.odilon.model.ServerConstant;
+import io.odilon.model.SharedConstant;
+
+/**
+ * <p>
+ * Append-only, segmented Write Ahead Log of the Journal of a {@link OdilonDrive}.
+ * Replaces the previous format (one {@code <opId>.json} file per operation, that
+ * was created and deleted for every operation).
+ * </p>
+ * <p>
+ * There are two types of records, {@code BEGIN} (the operation in JSON format)
+ * and {@code END} (commit or cancel, just the operation id). An operation is
+ * pending if it has a {@code BEGIN} and no {@code END}.
+ * </p>
+ * <h3>Group commit</h3>
+ * <p>
+ * Threads do not write to disk, they enqueue their record and wait. A single
+ * writer thread takes all the records in the queue, writes them with one call and
+ * one {@code fsync}, and then releases the waiting threads. Under load many
+ * operations share the same {@code fsync}.
+ * </p>
+ * <h3>Segments</h3>
+ * <p>
+ * Records are appended to the active segment ({@code journal-<seq>.wal}), when it
+ * reaches {@link #SEGMENT_MAX_SIZE} a new segment is started. The writer thread
+ * deletes the oldest segments once all their operations have ended. Segments are
+ * deleted strictly in order, so the {@code END} of an operation is never
+ * removed before its {@code BEGIN}.
+ * </p>
+ * <h3>Recovery</h3>
+ * <p>
+ * On startup all the segments are read in order. A torn record at the end of a
+ * segment (crash during a write) stops the reading of that segment. New records
+ * always go to a new segment. Journal files of the previous format are migrated
+ * to the log.
+ * </p>
+ * <h3>Errors</h3>
+ * <p>
+ * If a write fails, the records of the batch fail and the log continues in a new
+ * segment. If the new segment can not be opened, the log is unusable: the
+ * records in the queue and all the records appended after that fail, and the
+ * writer thread ends.
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class DriveJournalLog {
+
+    static private Logger logger = Logger.getLogger(DriveJournalLog.class.getName());
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_EXT = ".wal";
+
+    static final long SEGMENT_MAX_SIZE = 8 * 1024 * 1024;
+    static final int MAX_BATCH = 512;
+
+    /** payload length (int), crc (int), type (byte) */
+    static final int HEADER_SIZE = 9;
+
+    static final byte BEGIN = 1;
+    static final byte END = 2;
+
+    private final String driveName;
+    private final File dir;
+
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<Record>();
+
+    /** pending operations, opId -> JSON */
+    private final Map<String, String> pending = new ConcurrentHashMap<String, String>();
+
+    /** only accessed by the writer thread (after the initial load) */
+    private final Map<String, Long> opSegment = new HashMap<String, Long>();
+    private final TreeMap<Long, Integer> openBySegment = new TreeMap<Long, Integer>();
+
+    private FileChannel channel;
+    private long activeSegment;
+    private long activeSize;
+
+    private Thread writer;
+
+    /** set when the log can not continue, it is not usable after that */
+    private volatile IOException failed;
+
+    DriveJournalLog(String driveName, String dirPath) {
+        this.driveName = driveName;
+        this.dir = new File(dirPath);
+    }
+
+    /**
+     * <p>
+     * reads the existing segments, migrates the old journal files and starts the
+     * writer thread
+     * </p>
+     */
+    synchronized void open() throws IOException {
+
+        long lastSegment = 0;
+        for (Long seq : getSegments()) {
+            load(seq);
+            lastSegment = seq;
+        }
+
+        openSegment(lastSegment + 1);
+        migrateJsonFiles();
+        truncate();
+
+        this.writer = new Thread(this::writeLoop, "journal-" + this.driveName);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * stops the writer thread, records not written fail
+     */
+    synchronized void close() {
+        if (this.writer != null) {
+            this.writer.interrupt();
+            try {
+                this.writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.writer = null;
+        }
+        failQueued(new IOException("journal closed -> d: " + this.driveName));
+        closeChannel();
+    }
+
+    /**
+     * @return {@code true} if a new segment could not be opened after an error
+     */
+    boolean isFailed() {
+        return this.failed != null;
+    }
+
+    void begin(String opId, String json) {
+        await(opId, beginAsync(opId, json));
+    }
+
+    void end(String opId) {
+        await(opId, endAsync(opId));
+    }
+
+    /**
+     * @return completed when the record is on disk
+     */
+    CompletableFuture<Void> beginAsync(String opId, String json) {
+        return append(new Record(BEGIN, opId, json));
+    }
+
+    CompletableFuture<Void> endAsync(String opId) {
+        return append(new Record(END, opId, null));
+    }
+
+    /**
+     * @return opId -> JSON of the operations that did not end
+     */
+    Map<String, String> getPending() {
+        return new HashMap<String, String>(this.pending);
+    }
+
+    private CompletableFuture<Void> append(Record record) {
+        if (this.failed != null) {
+            record.done.completeExceptionally(this.failed);
+            return record.done;
+        }
+        /** it would be discarded as invalid on recovery */
+        if (record.payload.length > SEGMENT_MAX_SIZE) {
+            record.done.completeExceptionally(new IOException("record too large -> " + String.valueOf(record.payload.length)));
+            return record.done;
+        }
+        this.queue.add(record);
+        /** the writer may have failed after the check, it will not take the record */
+        if (this.failed != null)
+            failQueued(this.failed);
+        return record.done;
+    }
+
+    private void failQueued(IOException e) {
+        List<Record> list = new ArrayList<Record>();
+        this.queue.drainTo(list);
+        for (Record record : list)
+            record.done.completeExceptionally(e);
+    }
+
+    private void await(String opId, CompletableFuture<Void> done) {
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalCriticalException(e, "op: " + opId + " | d: " + this.driveName);
+        } catch (ExecutionException e) {
+            throw new InternalCriticalException(e.getCause(), "op: " + opId + " | d: " + this.driveName);
+        }
+    }
+
+    private void writeLoop() {
+
+        List<Record> batch = new ArrayList<Record>(MAX_BATCH);
+
+        while (true) {
+            try {
+                batch.add(this.queue.take());
+                this.queue.drainTo(batch, MAX_BATCH - 1);
+                try {
+                    write(batch);
+                    for (Record record : batch)
+                        apply(record, this.activeSegment);
+                    for (Record record : batch)
+                        record.done.complete(null);
+                } catch (Exception e) {
+                    for (Record record : batch)
+                        record.done.completeExceptionally(e);
+                    /** the segment may end with a torn record, records after it would be ignored on recovery */
+                    nextSegment();
+                } finally {
+                    batch.clear();
+                }
+
+                if (this.activeSize >= SEGMENT_MAX_SIZE)
+                    nextSegment();
+                truncate();
+
+            } catch (InterruptedException e) {
+                logger.debug("journal writer interrupted -> d: " + this.driveName);
+                return;
+            } catch (IOException e) {
+                logger.error(e, "can not open a new segment, the journal is not usable -> d: " + this.driveName,
+                        SharedConstant.NOT_THROWN);
+                this.failed = e;
+                failQueued(e);
+                closeChannel();
+                return;
+            } catch (Exception e) {
+                logger.error(e, "d: " + this.driveName, SharedConstant.NOT_THROWN);
+            }
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        closeChannel();
+        openSegment(this.activeSegment + 1);
+    }
+
+    private void closeChannel() {
+        if (this.channel == null)
+            return;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            logger.error(e, "can not close segment -> " + getSegmentFile(this.activeSegment).getName() + " | d: "
+                    + this.driveName, SharedConstant.NOT_THROWN);
+        }
+    }
+
+    private void write(List<Record> batch) throws IOException {
+
+        int size = 0;
+        for (Record record : batch)
+            size += HEADER_SIZE + record.payload.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (Record record : batch) {
+            crc.reset();
+            crc.update(record.type);
+            crc.update(record.payload);
+            buffer.putInt(record.payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record.type);
+            buffer.put(record.payload);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+            this.channel.write(buffer);
+        this.channel.force(false);
+        this.activeSize += size;
+    }
+
+    private void apply(Record record, long segment) {
+        if (record.type == BEGIN) {
+            this.pending.put(record.opId, record.json);
+            this.opSegment.put(record.opId, segment);
+            this.openBySegment.merge(segment, 1, Integer::sum);
+        } else {
+            this.pending.remove(record.opId);
+            Long seq = this.opSegment.remove(record.opId);
+            if (seq != null)
+                this.openBySegment.merge(seq, -1, Integer::sum);
+        }
+    }
+
+    /**
+     * deletes the oldest closed segments while they do not have pending operations
+     */
+    private void truncate() {
+        for (Long seq : getSegments()) {
+            if (seq >= this.activeSegment)
+                return;
+            Integer open = this.openBySegment.get(seq);
+            if (open != null && open > 0)
+                return;
+            try {
+                Files.deleteIfExists(getSegmentFile(seq).toPath());
+                this.openBySegment.remove(seq);
+            } catch (IOException e) {
+                logger.error(e, "can not delete -> " + getSegmentFile(seq).getName() + " | d: " + this.driveName,
+                        SharedConstant.NOT_THROWN);
+                return;
+            }
+        }
+    }
+
+    private void openSegment(long seq) throws IOException {
+        this.channel = FileChannel.open(getSegmentFile(seq).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.activeSegment = seq;
+        this.activeSize = this.channel.size();
+    }
+
+    private void load(long seq) throws IOException {
+
+        File file = getSegmentFile(seq);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    int crcValue = in.readInt();
+                    byte type = in.readByte();
+                    if (length < 0 || length > SEGMENT_MAX_SIZE || (type != BEGIN && type != END))
+                        throw new IOException("invalid record");
+                    byte[] payload = in.readNBytes(length);
+                    if (payload.length < length)
+                        throw new EOFException();
+                    CRC32 crc = new CRC32();
+                    crc.update(type);
+                    crc.update(payload);
+                    if ((int) crc.getValue() != crcValue)
+                        throw new IOException("crc");
+                    apply(Record.fromPayload(type, payload), seq);
+                } catch (IOException e) {
+                    logger.error("torn record, ignoring the rest of the segment -> " + file.getName() + " | d: " + this.driveName,
+                            SharedConstant.NOT_THROWN);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * journal files of the previous format ({@code <opId>.json})
+     */
+    private void migrateJsonFiles() throws IOException {
+
+        File[] files = this.dir.listFiles((d, name) -> name.endsWith(ServerConstant.JSON));
+        if (files == null || files.length == 0)
+            return;
+
+        List<Record> batch = new ArrayList<Record>();
+        for (File file : files) {
+            String name = file.getName();
+            batch.add(new Record(BEGIN, name.substring(0, name.length() - ServerConstant.JSON.length()),
+                    Files.readString(file.toPath())));
+        }
+        write(batch);
+        for (Record record : batch)
+            apply(record, this.activeSegment);
+        for (File file : files)
+            Files.delete(file.toPath());
+    }
+
+    private List<Long> getSegments() {
+        List<Long> list = new ArrayList<Long>();
+        File[] files = this.dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_EXT));
+        if (files == null)
+            return list;
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                list.add(Long.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXT.length())));
+            } catch (NumberFormatException e) {
+                logger.error("invalid segment name -> " + name + " | d: " + this.driveName, SharedConstant.NOT_THROWN);
+            }
+        }
+        list.sort(null);
+        return list;
+    }
+
+    private File getSegmentFile(long seq) {
+        return new File(this.dir, SEGMENT_PREFIX + String.format("%016d", seq) + SEGMENT_EXT);
+    }
+
+    /**
+     * BEGIN payload -> opId \n JSON, END payload -> opId
+     */
+    private static class Record {
+
+        final byte type;
+        final String opId;
+        final String json;
+        final byte[] payload;
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+        Record(byte type, String opId, String json) {
+            this.type = type;
+            this.opId = opId;
+            this.json = json;
+            this.payload = ((type == BEGIN) ? (opId + "\n" + json) : opId).getBytes(StandardCharsets.UTF_8);
+        }
+
+        static Record fromPayload(byte type, byte[] payload) throws IOException {
+            String str = new String(payload, StandardCharsets.UTF_8);
+            if (type == END)
+                return new Record(END, str, null);
+            int index = str.indexOf('\n');
+            if (index < 0)
+                throw new IOException("invalid BEGIN record");
+            return new Record(BEGIN, str.substring(0, index), str.substring(index + 1));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.odilon.util.Check;
+
+/**
+ * <p>
+ * InputStream that records the reads in progress and the latency of each read
+ * call in the {@link DriveReadStats} of the drive the data comes from.
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class DriveReadInputStream extends FilterInputStream {
+
+    private final DriveReadStats stats;
+
+    private boolean closed = false;
+
+    public DriveReadInputStream(InputStream in, DriveReadStats stats) {
+        super(in);
+        Check.requireNonNullArgument(stats, "stats is null");
+        this.stats = stats;
+        this.stats.onOpen();
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int value = super.read();
+        this.stats.onRead(System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int value = this.in.read(b, off, len);
+        this.stats.onRead(System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.closed = true;
+        }
+        try {
+            super.close();
+        } finally {
+            this.stats.onClose();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>
+ * Read load of a {@link io.odilon.virtualFileSystem.model.Drive}: number of
+ * reads in progress and an exponentially weighted moving average (EWMA) of the
+ * latency of the read calls.
+ * </p>
+ * <p>
+ * It is updated by the streams returned by the RAID drivers and used to choose
+ * the drive to read from when the data is available in more than one drive
+ * (RAID 1). All methods are lock free.
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+@ThreadSafe
+public class DriveReadStats {
+
+    /** weight of a new sample is 1/2^ALPHA_SHIFT */
+    private static final int ALPHA_SHIFT = 3;
+
+    /** value used before the first sample, 100 microseconds */
+    private static final long INITIAL_LATENCY_NANOS = 100_000L;
+
+    private final AtomicInteger inProgress = new AtomicInteger(0);
+
+    private final AtomicLong latencyNanos = new AtomicLong(INITIAL_LATENCY_NANOS);
+
+    private final AtomicLong reads = new AtomicLong(0);
+
+    public DriveReadStats() {
+    }
+
+    public void onOpen() {
+        this.inProgress.incrementAndGet();
+    }
+
+    public void onClose() {
+        this.inProgress.decrementAndGet();
+    }
+
+    /**
+     * @param nanos duration of one read call
+     */
+    public void onRead(long nanos) {
+        if (nanos < 0)
+            return;
+        this.reads.incrementAndGet();
+        long prev;
+        long next;
+        do {
+            prev = this.latencyNanos.get();
+            next = prev + ((nanos - prev) >> ALPHA_SHIFT);
+        } while (!this.latencyNanos.compareAndSet(prev, next));
+    }
+
+    public int getInProgress() {
+        return Math.max(0, this.inProgress.get());
+    }
+
+    public long getLatencyNanos() {
+        return this.latencyNanos.get();
+    }
+
+    public long getReads() {
+        return this.reads.get();
+    }
+
+    /**
+     * <p>
+     * Expected wait of a new read on this drive. Lower is better.
+     * </p>
+     */
+    public double getLoadScore() {
+        return ((double) getLatencyNanos()) * (1 + getInProgress());
+    }
+
+    public String toJSON() {
+        StringBuilder str = new StringBuilder();
+        str.append("\"inProgress\":" + String.valueOf(getInProgress()));
+        str.append(", \"latencyMicros\":" + String.valueOf(getLatencyNanos() / 1000));
+        str.append(", \"reads\":" + String.valueOf(getReads()));
+        return str.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(this.getClass().getSimpleName());
+        str.append("{" + toJSON() + "}");
+        return str.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.LockFreeExponentiallyDecayingReservoir;
+import com.codahale.metrics.Snapshot;
+
+import io.odilon.model.ServerConstant;
+
+/**
+ * <p>
+ * Wait time and hold time of the locks of one {@link StripedLockTable}
+ * (microseconds)
+ * </p>
+ * <p>
+ * To keep the overhead low enough to be always on:
+ * <ul>
+ * <li>an acquisition that gets the lock on the first attempt is only counted,
+ * the wait histogram contains the contended acquisitions</li>
+ * <li>hold time is measured on 1 of every {@link #HOLD_SAMPLE} acquisitions</li>
+ * <li>histograms use a lock free reservoir</li>
+ * </ul>
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class LockMetrics {
+
+    static final int HOLD_SAMPLE = 16;
+
+    /** sampled holds a thread can have at the same time on one table */
+    static final int MAX_SAMPLED_HOLDS = 4;
+
+    private final String name;
+    private final boolean enabled;
+    private final int holdSample;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+
+    private final Histogram waitHistogram = new Histogram(LockFreeExponentiallyDecayingReservoir.builder().build());
+    private final Histogram holdHistogram = new Histogram(LockFreeExponentiallyDecayingReservoir.builder().build());
+
+    /**
+     * sampled holds of the current thread. A thread may hold several locks of the
+     * same table (see {@link StripedLockTable#getOrdered}), each hold is matched
+     * with its release by lock and mode
+     */
+    private final ThreadLocal<Holds> holds = ThreadLocal.withInitial(() -> new Holds());
+
+    /**
+     * key of the last lock the current thread got from the table. The key string
+     * is built only if the thread has to wait for that lock
+     */
+    private final ThreadLocal<RequestedKey> requested = ThreadLocal.withInitial(() -> new RequestedKey());
+
+    public LockMetrics(String name, boolean enabled) {
+        this(name, enabled, HOLD_SAMPLE);
+    }
+
+    /**
+     * @param holdSample hold time is measured on 1 of every {@code holdSample}
+     *                   acquisitions
+     */
+    LockMetrics(String name, boolean enabled, int holdSample) {
+        this.name = name;
+        this.enabled = enabled;
+        this.holdSample = holdSample;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param lock       lock of the table that was acquired
+     * @param waitNanos  0 if the lock was acquired on the first attempt
+     * @param firstHold  true if the thread did not hold the lock before
+     *                   (reentrant acquisitions are not sampled)
+     */
+    void onAcquired(Object lock, boolean write, long waitNanos, boolean firstHold) {
+        this.acquired.increment();
+        if (waitNanos > 0) {
+            this.contended.increment();
+            this.waitHistogram.update(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+        }
+        if (firstHold && ThreadLocalRandom.current().nextInt(this.holdSample) == 0)
+            this.holds.get().add(lock, write, System.nanoTime());
+    }
+
+    void setRequested(Object lock, String name) {
+        this.requested.get().set(lock, false, 0, name, StripedLockTable.NO_VERSION);
+    }
+
+    void setRequested(Object lock, long bucketId, String objectName, int version) {
+        this.requested.get().set(lock, true, bucketId, objectName, version);
+    }
+
+    /**
+     * @return key the current thread requested for {@code lock}, or null if the
+     *         last key it requested is of another lock
+     */
+    String getRequested(Object lock) {
+        RequestedKey key = this.requested.get();
+        return (key.lock == lock) ? key.toString() : null;
+    }
+
+    /**
+     * @param lastHold true if the thread does not hold the lock anymore
+     */
+    void onReleased(Object lock, boolean write, boolean lastHold) {
+        if (!lastHold)
+            return;
+        long start = this.holds.get().remove(lock, write);
+        if (start != 0)
+            this.holdHistogram.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("lock." + this.name + ".acquired", String.valueOf(this.acquired.sum()));
+        map.put("lock." + this.name + ".contended", String.valueOf(this.contended.sum()));
+        map.put("lock." + this.name + ".waitMicros", getString(this.waitHistogram));
+        map.put("lock." + this.name + ".holdMicros", getString(this.holdHistogram));
+        return map;
+    }
+
+    /**
+     * <p>
+     * Sampled holds of one thread, at most {@link #MAX_SAMPLED_HOLDS}. If there is
+     * no room the hold is not sampled
+     * </p>
+     */
+    private static class Holds {
+
+        private final Object[] locks = new Object[MAX_SAMPLED_HOLDS];
+        private final boolean[] write = new boolean[MAX_SAMPLED_HOLDS];
+        private final long[] start = new long[MAX_SAMPLED_HOLDS];
+        private int size = 0;
+
+        void add(Object lock, boolean write, long start) {
+            if (this.size == MAX_SAMPLED_HOLDS)
+                return;
+            this.locks[this.size] = lock;
+            this.write[this.size] = write;
+            this.start[this.size] = start;
+            this.size++;
+        }
+
+        /**
+         * @return time the hold started, 0 if it was not sampled
+         */
+        long remove(Object lock, boolean write) {
+            for (int n = 0; n < this.size; n++) {
+                if (this.locks[n] == lock && this.write[n] == write) {
+                    long value = this.start[n];
+                    this.size--;
+                    this.locks[n] = this.locks[this.size];
+                    this.write[n] = this.write[this.size];
+                    this.start[n] = this.start[this.size];
+                    this.locks[this.size] = null;
+                    return value;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * parts of the key of a lock, bucketId + objectName [+ version] or name
+     */
+    private static class RequestedKey {
+
+        private Object lock;
+        private boolean hasBucketId;
+        private long bucketId;
+        private String name;
+        private int version;
+
+        void set(Object lock, boolean hasBucketId, long bucketId, String name, int version) {
+            this.lock = lock;
+            this.hasBucketId = hasBucketId;
+            this.bucketId = bucketId;
+            this.name = name;
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            if (!this.hasBucketId)
+                return this.name;
+            return String.valueOf(this.bucketId) + ServerConstant.BO_SEPARATOR + this.name
+                    + ((this.version == StripedLockTable.NO_VERSION) ? ""
+                            : (ServerConstant.BO_SEPARATOR + String.valueOf(this.version)));
+        }
+    }
+
+    /**
+     * mean, 95th percentile, 99th percentile, max
+     */
+    private String getString(Histogram histogram) {
+        Snapshot snapshot = histogram.getSnapshot();
+        return String.format("%10.2f", snapshot.getMean()).trim() + ", "
+                + String.format("%10.2f", snapshot.get95thPercentile()).trim() + ", "
+                + String.format("%10.2f", snapshot.get99thPercentile()).trim() + ", " + String.valueOf(snapshot.getMax());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * {@link ReadWriteLock} of a {@link StripedLockTable}. It delegates to a
+ * {@link ReentrantReadWriteLock} and reports wait and hold time to the
+ * {@link LockMetrics} of the table. It also keeps the contention of the stripe
+ * and the last key that had to wait for it, used to report the most contended
+ * stripes. The key is only recorded on the contended path
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class MonitoredReadWriteLock implements ReadWriteLock {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LockMetrics metrics;
+
+    private final MonitoredLock readLock;
+    private final MonitoredLock writeLock;
+
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private volatile String lastKey;
+
+    public MonitoredReadWriteLock(LockMetrics metrics) {
+        this.metrics = metrics;
+        this.readLock = new MonitoredLock(this.lock.readLock(), false);
+        this.writeLock = new MonitoredLock(this.lock.writeLock(), true);
+    }
+
+    @Override
+    public Lock readLock() {
+        return this.readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return this.writeLock;
+    }
+
+    public boolean isLocked() {
+        return this.lock.isWriteLocked() || (this.lock.getReadLockCount() > 0);
+    }
+
+    public long getContended() {
+        return this.contended.sum();
+    }
+
+    public long getWaitNanos() {
+        return this.waitNanos.sum();
+    }
+
+    public String getLastKey() {
+        return this.lastKey;
+    }
+
+    /**
+     * the first attempt failed, the key the current thread requested from the
+     * table is the last key of the stripe
+     */
+    private void onContended() {
+        String key = this.metrics.getRequested(this);
+        if (key != null)
+            this.lastKey = key;
+    }
+
+    private void onAcquired(boolean write, long wait) {
+        if (wait > 0) {
+            this.contended.increment();
+            this.waitNanos.add(wait);
+        }
+        this.metrics.onAcquired(this, write, wait,
+                write ? (this.lock.getWriteHoldCount() == 1) : (this.lock.getReadHoldCount() == 1));
+    }
+
+    private class MonitoredLock implements Lock {
+
+        private final Lock delegate;
+        private final boolean write;
+
+        MonitoredLock(Lock delegate, boolean write) {
+            this.delegate = delegate;
+            this.write = write;
+        }
+
+        /**
+         * <p>
+         * First attempt of {@code lock}, {@code lockInterruptibly} and timed
+         * {@code tryLock}. A plain {@code tryLock} acquires the read lock even if
+         * there are writers waiting, the timed one does not
+         * </p>
+         */
+        private boolean tryFirst() {
+            try {
+                return this.delegate.tryLock(0, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void lock() {
+            if (!metrics.isEnabled()) {
+                this.delegate.lock();
+                return;
+            }
+            if (tryFirst()) {
+                onAcquired(this.write, 0);
+                return;
+            }
+            onContended();
+            long start = System.nanoTime();
+            this.delegate.lock();
+            onAcquired(this.write, Math.max(1, System.nanoTime() - start));
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (!metrics.isEnabled()) {
+                this.delegate.lockInterruptibly();
+                return;
+            }
+            if (this.delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+                onAcquired(this.write, 0);
+                return;
+            }
+            onContended();
+            long start = System.nanoTime();
+            this.delegate.lockInterruptibly();
+            onAcquired(this.write, Math.max(1, System.nanoTime() - start));
+        }
+
+        @Override
+        public boolean tryLock() {
+            boolean acquired = this.delegate.tryLock();
+            if (acquired && metrics.isEnabled())
+                onAcquired(this.write, 0);
+            return acquired;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (!metrics.isEnabled())
+                return this.delegate.tryLock(time, unit);
+            if (this.delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+                onAcquired(this.write, 0);
+                return true;
+            }
+            onContended();
+            long start = System.nanoTime();
+            boolean acquired = this.delegate.tryLock(time, unit);
+            if (acquired)
+                onAcquired(this.write, Math.max(1, System.nanoTime() - start));
+            return acquired;
+        }
+
+        @Override
+        public void unlock() {
+            this.delegate.unlock();
+            if (metrics.isEnabled())
+                metrics.onReleased(MonitoredReadWriteLock.this, this.write,
+                        this.write ? !lock.isWriteLockedByCurrentThread() : (lock.getReadHoldCount() == 0));
+        }
+
+        @Override
+        public Condition newCondition() {
+            return this.delegate.newCondition();
+        }
+    }
+}
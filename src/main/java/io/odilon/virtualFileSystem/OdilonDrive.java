@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -125,6 +126,12 @@ public class OdilonDrive extends BaseObject implements Drive {
     @JsonProperty("driveInfo")
     DriveInfo driveInfo;
 
+    @JsonIgnore
+    private DriveJournalLog journalLog;
+
+    @JsonIgnore
+    private final DriveReadStats readStats = new DriveReadStats();
+
     @Autowired
     protected OdilonDrive(String rootDir) {
         this.name = rootDir;
@@ -199,6 +206,12 @@ public class OdilonDrive extends BaseObject implements Drive {
         return this.driveInfo;
     }
 
+    @JsonIgnore
+    @Override
+    public DriveReadStats getReadStats() {
+        return this.readStats;
+    }
+
     @Override
     public synchronized void setDriveInfo(DriveInfo info) {
         this.driveInfo = info;
@@ -674,7 +687,9 @@ public class OdilonDrive extends BaseObject implements Drive {
         Check.requireNonNullArgument(op, "op is null");
         try {
             String jsonString = getObjectMapper().writeValueAsString(op);
-            Files.writeString(Paths.get(getJournalDirPath() + File.separator + op.getId() + ServerConstant.JSON), jsonString);
+            getJournalLog().begin(op.getId(), jsonString);
+        } catch (InternalCriticalException e) {
+            throw e;
         } catch (Exception e) {
             throw new InternalCriticalException(e, "op: " + (Optional.ofNullable(op).isPresent() ? (op.toString()) : "null"));
         }
@@ -683,11 +698,59 @@ public class OdilonDrive extends BaseObject implements Drive {
     @Override
     public void removeJournal(String id) {
         Check.requireNonNullArgument(id, "id is null");
+        getJournalLog().end(id);
+    }
+
+    /**
+     * <p>
+     * The record is queued in the Journal log of the Drive, the future completes
+     * when it is on disk
+     * </p>
+     */
+    @Override
+    public CompletableFuture<Void> saveJournalAsync(VirtualFileSystemOperation op) {
+
+        Check.requireNonNullArgument(op, "op is null");
         try {
-            Files.delete(Paths.get(getJournalDirPath() + File.separator + id + ServerConstant.JSON));
+            String jsonString = getObjectMapper().writeValueAsString(op);
+            return getJournalLog().beginAsync(op.getId(), jsonString);
         } catch (Exception e) {
-            throw new InternalCriticalException(e, "id: " + (Optional.ofNullable(id).isPresent() ? id : "null"));
+            return CompletableFuture.failedFuture(new InternalCriticalException(e, "op: " + op.toString()));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> removeJournalAsync(String id) {
+        Check.requireNonNullArgument(id, "id is null");
+        return getJournalLog().endAsync(id);
+    }
+
+    /**
+     * <p>
+     * Operations that were saved and not removed, opId -> JSON
+     * </p>
+     */
+    @Override
+    public Map<String, String> getJournalPending() {
+        return getJournalLog().getPending();
+    }
+
+    /**
+     * <p>
+     * The log is opened on first use (recovery of the existing segments)
+     * </p>
+     */
+    protected synchronized DriveJournalLog getJournalLog() {
+        if (this.journalLog == null) {
+            DriveJournalLog log = new DriveJournalLog(getName(), getJournalDirPath());
+            try {
+                log.open();
+            } catch (IOException e) {
+                throw new InternalCriticalException(e, "Can not open Journal -> d: " + getName());
+            }
+            this.journalLog = log;
         }
+        return this.journalLog;
     }
 
     @Override
@@ -19,6 +19,7 @@ package io.odilon.virtualFileSystem;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jakarta.annotation.PostConstruct;
 import javax.annotation.concurrent.ThreadSafe;
@@ -63,6 +64,18 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * When an operation is performed, a Journal record is stored in disk and upon
  * successful completion or cancellation the registration is deleted.
  * </p>
+ * <p>
+ * Each Drive keeps its Journal in an append-only log with group commit (see
+ * {@link DriveJournalLog}), the records of concurrent operations share the same
+ * disk write.
+ * </p>
+ * <p>
+ * There is no global lock: operation ids are generated lock free, the state of
+ * each operation is kept in concurrent maps and events are published by the
+ * thread that commits or cancels. Concurrency control on the objects and
+ * buckets is done by the {@link io.odilon.virtualFileSystem.model.LockService}
+ * locks held by the caller.
+ * </p>
  * <h3>In case of critical problems</h3>
  * <p>
  * when the system restarts, the operations are taken from the disk that could
@@ -79,7 +92,7 @@ public class OdilonJournalService extends BaseService implements JournalService
 
     /** lazy injection */
     @JsonIgnore
-    private VirtualFileSystemService virtualFileSystemService;
+    private volatile VirtualFileSystemService virtualFileSystemService;
 
     @JsonIgnore
     private Map<String, VirtualFileSystemOperation> operations = new ConcurrentHashMap<String, VirtualFileSystemOperation>();
@@ -87,6 +100,9 @@ public class OdilonJournalService extends BaseService implements JournalService
     @JsonIgnore
     private Map<String, String> ops_aborted = new ConcurrentHashMap<String, String>();
 
+    @JsonIgnore
+    private final AtomicLong lastOperationId = new AtomicLong(0);
+
     @JsonIgnore
     private boolean isStandBy;
 
@@ -213,35 +229,32 @@ public class OdilonJournalService extends BaseService implements JournalService
         if (operation == null)
             return true;
 
-        synchronized (this) {
-
-            boolean isOK = false;
+        boolean isOK = false;
 
-            try {
+        try {
 
-                if (isStandBy())
-                    getReplicationService().enqueue(operation);
+            if (isStandBy())
+                getReplicationService().enqueue(operation);
 
-                getApplicationEventPublisher().publishEvent(new CacheEvent(operation, Action.COMMIT));
+            getApplicationEventPublisher().publishEvent(new CacheEvent(operation, Action.COMMIT));
 
-                if ((payload != null) && (payload instanceof ServerBucket)) {
-                    getApplicationEventPublisher().publishEvent(new BucketEvent(operation, Action.COMMIT, (ServerBucket) payload));
-                }
+            if ((payload != null) && (payload instanceof ServerBucket)) {
+                getApplicationEventPublisher().publishEvent(new BucketEvent(operation, Action.COMMIT, (ServerBucket) payload));
+            }
 
-                getVirtualFileSystemService().removeJournal(operation.getId());
-                getOperations().remove(operation.getId());
+            getVirtualFileSystemService().removeJournal(operation.getId());
+            getOperations().remove(operation.getId());
 
-                isOK = true;
-                return isOK;
+            isOK = true;
+            return isOK;
 
-            } catch (Exception e) {
+        } catch (Exception e) {
 
-                if (isStandBy()) {
-                    getOpsAborted().put(operation.getId(), operation.getId());
-                    getReplicationService().cancel(operation);
-                }
-                throw e;
+            if (isStandBy()) {
+                getOpsAborted().put(operation.getId(), operation.getId());
+                getReplicationService().cancel(operation);
             }
+            throw e;
         }
     }
 
@@ -256,30 +269,32 @@ public class OdilonJournalService extends BaseService implements JournalService
         if (operation == null)
             return true;
 
-        synchronized (this) {
-            try {
+        try {
 
-                CacheEvent event = new CacheEvent(operation, Action.ROLLBACK);
-                getApplicationEventPublisher().publishEvent(event);
+            CacheEvent event = new CacheEvent(operation, Action.ROLLBACK);
+            getApplicationEventPublisher().publishEvent(event);
 
-                if (payload instanceof ServerBucket)
-                    getApplicationEventPublisher()
-                            .publishEvent(new BucketEvent(operation, Action.ROLLBACK, (ServerBucket) payload));
+            if (payload instanceof ServerBucket)
+                getApplicationEventPublisher().publishEvent(new BucketEvent(operation, Action.ROLLBACK, (ServerBucket) payload));
 
-                getVirtualFileSystemService().removeJournal(operation.getId());
+            getVirtualFileSystemService().removeJournal(operation.getId());
 
-            } catch (InternalCriticalException e) {
-                logger.error(e, "the operation was saved in just some of the drives due to a crash", SharedConstant.NOT_THROWN);
-            }
-            logger.debug("Cancel ->" + operation.toString());
-            getOperations().remove(operation.getId());
+        } catch (InternalCriticalException e) {
+            logger.error(e, "the operation was saved in just some of the drives due to a crash", SharedConstant.NOT_THROWN);
         }
+        logger.debug("Cancel ->" + operation.toString());
+        getOperations().remove(operation.getId());
         return true;
     }
 
+    /**
+     * <p>
+     * Lock free, ids are unique and increasing (based on {@code System.nanoTime()})
+     * </p>
+     */
     @Override
-    public synchronized String newOperationId() {
-        return String.valueOf(System.nanoTime());
+    public String newOperationId() {
+        return String.valueOf(this.lastOperationId.updateAndGet(last -> Math.max(last + 1, System.nanoTime())));
     }
 
     public boolean isExecuting(String opid) {
@@ -328,7 +343,7 @@ public class OdilonJournalService extends BaseService implements JournalService
         }
     }
 
-    private synchronized VirtualFileSystemOperation createNew(OperationCode code, Optional<Long> bucketId,
+    private VirtualFileSystemOperation createNew(OperationCode code, Optional<Long> bucketId,
             Optional<String> bucketName, Optional<String> objectName, Optional<Integer> iVersion) {
 
         final VirtualFileSystemOperation operation = new OdilonVirtualFileSystemOperation(newOperationId(), code, bucketId,
@@ -16,32 +16,24 @@
  */
 package io.odilon.virtualFileSystem;
 
-import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.odilon.cache.FileCacheService;
 import io.odilon.log.Logger;
 import io.odilon.model.BucketMetadata;
-import io.odilon.model.ServerConstant;
 import io.odilon.model.ServiceStatus;
 import io.odilon.service.BaseService;
-import io.odilon.service.PoolCleaner;
 import io.odilon.service.ServerSettings;
 import io.odilon.util.Check;
 import io.odilon.virtualFileSystem.model.LockService;
@@ -53,6 +45,17 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * Implementation of the interface {@link OdilonLockService}. Bucket locks,
  * Object locks, File locks for {@link FileCacheService}
  * </p>
+ * <p>
+ * Locks are taken from fixed size {@link StripedLockTable}s (one for Buckets,
+ * one for Objects and one for FileCache files) instead of Maps keyed by String.
+ * Getting a lock does not create key strings nor Map entries and there is no
+ * clean up thread. The size of the Object and FileCache tables is
+ * {@code lock.stripes} (default 4096)
+ * </p>
+ * <p>
+ * If {@code lock.metrics.enabled} the locks record wait and hold times and the
+ * most contended stripes, see {@link #getLockMetrics()}
+ * </p>
  * 
  * @author atolomei@novamens.com (Alejandro Tolomei)
  * 
@@ -62,30 +65,23 @@ public class OdilonLockService extends BaseService implements LockService {
 
     static private Logger logger = Logger.getLogger(OdilonLockService.class.getName());
     static private Logger startuplogger = Logger.getLogger("StartupLogger");
-    static private final DecimalFormat formatter = new DecimalFormat("###,###,###");
 
-    private static final long minTimeToSleepMillisec = 1000 * 5; // 5 secs
-    private static final long maxTimeToSleepMillisec = minTimeToSleepMillisec * 24; // 2 minutes
-    private static final long deltaTimeToSleep = maxTimeToSleepMillisec - minTimeToSleepMillisec;
+    /** Buckets are few, this table does not need to be as large as the others */
+    static private final int BUCKET_STRIPES = 256;
 
-    /** 2000 lock/sec */
-    @JsonProperty("ratePerMillisec")
-    private double ratePerMillisec = 2;
+    static private final String SERVER_LOCK = "server";
 
     @JsonIgnore
-    ReentrantReadWriteLock serverLock = new ReentrantReadWriteLock();
+    private StripedLockTable serverLock;
 
     @JsonIgnore
-    private ConcurrentMap<String, ReentrantReadWriteLock> objectLocks = new ConcurrentHashMap<>(1000);
+    private StripedLockTable objectLocks;
 
     @JsonIgnore
-    private ConcurrentMap<String, ReentrantReadWriteLock> fileCacheLocks = new ConcurrentHashMap<>(1000);
+    private StripedLockTable fileCacheLocks;
 
     @JsonIgnore
-    private ConcurrentMap<String, ReentrantReadWriteLock> bucketLocks = new ConcurrentHashMap<>(1000);
-
-    @JsonIgnore
-    private PoolCleaner cleaner;
+    private StripedLockTable bucketLocks;
 
     @JsonIgnore
     @Autowired
@@ -102,7 +98,7 @@ public class OdilonLockService extends BaseService implements LockService {
     @Override
     public ReadWriteLock getBucketLock(ServerBucket bucket) {
         Check.requireNonNullArgument(bucket, "bucket is null");
-        return getBucketLocks().computeIfAbsent(bucket.getName(), key -> new ReentrantReadWriteLock());
+        return getBucketLocks().get(bucket.getName());
     }
 
     @Override
@@ -114,79 +110,79 @@ public class OdilonLockService extends BaseService implements LockService {
     @Override
     public ReadWriteLock getBucketLock(String bucketName) {
         Check.requireNonNullArgument(bucketName, "bucketName is null");
-        return getBucketLocks().computeIfAbsent(bucketName, key -> new ReentrantReadWriteLock());
+        return getBucketLocks().get(bucketName);
     }
 
     @Override
     public ReadWriteLock getBucketLock(Long id) {
-        return getBucketLocks().computeIfAbsent(getVirtualFileSystemService().getBucketCache().get(id).getName(),
-                key -> new ReentrantReadWriteLock());
+        return getBucketLocks().get(getVirtualFileSystemService().getBucketCache().get(id).getName());
+    }
+
+    @Override
+    public List<ReadWriteLock> getOrderedBucketLocks(String... bucketNames) {
+        Check.requireNonNullArgument(bucketNames, "bucketNames is null");
+        return getBucketLocks().getOrdered(bucketNames);
     }
 
     @Override
     public ReadWriteLock getObjectLock(ServerBucket bucket, String objectName) {
         Check.requireNonNullArgument(bucket, "bucket is null");
         Check.requireNonNullArgument(objectName, "objectName is null");
-        return getObjectLocks().computeIfAbsent(getKey(bucket.getId(), objectName), key -> new ReentrantReadWriteLock());
+        return getObjectLocks().get(bucket.getId().longValue(), objectName);
     }
 
     @Override
     public ReadWriteLock getObjectLock(Long bucketId, String objectName) {
         Check.requireNonNullArgument(bucketId, "bucketId is null");
         Check.requireNonNullArgument(objectName, "objectName is null");
-        return getObjectLocks().computeIfAbsent(getKey(bucketId, objectName), key -> new ReentrantReadWriteLock());
+        return getObjectLocks().get(bucketId.longValue(), objectName);
     }
 
     @Override
     public ReadWriteLock getFileCacheLock(Long bucketId, String objectName, Optional<Integer> version) {
-        return getFileCacheLocks().computeIfAbsent(getFileKey(bucketId, objectName, version), key -> new ReentrantReadWriteLock());
+        Check.requireNonNullArgument(bucketId, "bucketId is null");
+        Check.requireNonNullArgument(objectName, "objectName is null");
+        return getFileCacheLocks().get(bucketId.longValue(), objectName,
+                (version == null || version.isEmpty()) ? StripedLockTable.NO_VERSION : version.get().intValue());
     }
 
+    /**
+     * <p>
+     * The lock may be shared with other Buckets, a {@code true} means the Bucket
+     * may be locked
+     * </p>
+     */
     public boolean isLocked(ServerBucket bucket) {
-        return isLocked(bucket);
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        return isLocked(bucket.getName());
     }
 
     public boolean isLocked(String bucketName) {
-
-        if (!getBucketLocks().containsKey(bucketName))
-            return false;
-
-        if (getBucketLocks().get(bucketName).isWriteLocked())
-            return true;
-
-        if (getBucketLocks().get(bucketName).getReadLockCount() > 0)
-            return true;
-
-        return false;
+        Check.requireNonNullArgument(bucketName, "bucketName is null");
+        return getBucketLocks().isLocked(bucketName);
     }
 
     @Override
     public ReadWriteLock getServerLock() {
-        return this.serverLock;
+        return this.serverLock.get(SERVER_LOCK);
     }
 
-    public ConcurrentMap<String, ReentrantReadWriteLock> getObjectLocks() {
-        return objectLocks;
-    }
-
-    public void setObjectLocks(ConcurrentMap<String, ReentrantReadWriteLock> objectLocks) {
-        this.objectLocks = objectLocks;
-    }
-
-    public ConcurrentMap<String, ReentrantReadWriteLock> getFileCacheLocks() {
-        return fileCacheLocks;
-    }
-
-    public void setFileCacheLocks(ConcurrentMap<String, ReentrantReadWriteLock> fileCacheLocks) {
-        this.fileCacheLocks = fileCacheLocks;
-    }
-
-    public ConcurrentMap<String, ReentrantReadWriteLock> getBucketLocks() {
-        return bucketLocks;
-    }
-
-    public void setBucketLocks(ConcurrentMap<String, ReentrantReadWriteLock> bucketLocks) {
-        this.bucketLocks = bucketLocks;
+    /**
+     * <p>
+     * wait time, hold time and most contended stripes of the server, bucket, object
+     * and file cache locks
+     * </p>
+     */
+    @Override
+    public Map<String, Object> getLockMetrics() {
+        int top = getServerSettings().getLockMetricsTopStripes();
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("lock.metrics.enabled", getServerSettings().isLockMetricsEnabled() ? "true" : "false");
+        map.putAll(this.serverLock.toMap(0));
+        map.putAll(getBucketLocks().toMap(top));
+        map.putAll(getObjectLocks().toMap(top));
+        map.putAll(getFileCacheLocks().toMap(top));
+        return map;
     }
 
     public VirtualFileSystemService getVirtualFileSystemService() {
@@ -213,117 +209,37 @@ public class OdilonLockService extends BaseService implements LockService {
     @Override
     public String toJSON() {
         StringBuilder str = new StringBuilder();
-        str.append("{\"maxLockCreationRateSec\":" + formatter.format(ratePerMillisec * 1000.0).trim().trim());
-        str.append(", \"minTimeToSleepMillisec\":" + formatter.format(minTimeToSleepMillisec).trim() + "}");
+        str.append("{\"objectLocks\":" + String.valueOf(getObjectLocks().size()));
+        str.append(", \"fileCacheLocks\":" + String.valueOf(getFileCacheLocks().size()));
+        str.append(", \"bucketLocks\":" + String.valueOf(getBucketLocks().size()) + "}");
         return str.toString();
     }
 
     @PostConstruct
     protected synchronized void onInitialize() {
-
         setStatus(ServiceStatus.STARTING);
-        this.ratePerMillisec = getServerSettings().getLockRateMillisecs();
-
-        this.cleaner = new PoolCleaner() {
-
-            @Override
-            public long getSleepTimeMillis() {
-                return Math.round(minTimeToSleepMillisec
-                        + deltaTimeToSleep / (1.0 + ((getObjectLocks().size() + getFileCacheLocks().size()) / deltaTimeToSleep)));
-            }
-
-            @Override
-            public void cleanUp() {
-
-                if (exit())
-                    return;
-
-                if (getObjectLocks().size() > 0) {
-                    long maxToPurge = Math.round(getRatePerMillisec() * maxTimeToSleepMillisec)
-                            + (long) (getRatePerMillisec() * 1000.0);
-                    List<String> list = new ArrayList<String>();
-                    try {
-                        int counter = 0;
-                        for (Entry<String, ReentrantReadWriteLock> entry : getObjectLocks().entrySet()) {
-                            if (entry.getValue().writeLock().tryLock()) {
-                                list.add(entry.getKey());
-                                counter++;
-                                if (counter >= maxToPurge) {
-                                    break;
-                                }
-                            }
-                        }
-                        list.forEach(item -> {
-                            ReentrantReadWriteLock lock = getObjectLocks().get(item);
-                            getObjectLocks().remove(item);
-                            lock.writeLock().unlock();
-                        });
-                        list.forEach(item -> getObjectLocks().remove(item));
-
-                    } finally {
-                    }
-                }
-                {
-                    if (getFileCacheLocks().size() > 0) { // FC>0
-                        try {
-                            long maxToPurge = Math.round(getRatePerMillisec() * maxTimeToSleepMillisec)
-                                    + (long) (getRatePerMillisec() * 1000.0);
-                            List<String> list = new ArrayList<String>();
-                            int counter = 0;
-                            for (Entry<String, ReentrantReadWriteLock> entry : getFileCacheLocks().entrySet()) {
-                                if (entry.getValue().writeLock().tryLock()) {
-                                    list.add(entry.getKey());
-                                    counter++;
-                                    if (counter >= maxToPurge) {
-                                        break;
-                                    }
-                                }
-                            }
-                            list.forEach(item -> {
-                                ReentrantReadWriteLock lock = getFileCacheLocks().get(item);
-                                getFileCacheLocks().remove(item);
-                                lock.writeLock().unlock();
-                            });
-                            list.forEach(item -> getFileCacheLocks().remove(item));
-                        } finally {
-                        }
-                    } // FC>0
-                }
-            }
-        };
-
-        Thread thread = new Thread(cleaner);
-        thread.setDaemon(true);
-        thread.setName(
-                LockService.class.getSimpleName() + "Cleaner-" + Double.valueOf(Math.abs(Math.random() * 1000000)).intValue());
-        thread.start();
+        boolean metrics = getServerSettings().isLockMetricsEnabled();
+        this.serverLock = new StripedLockTable(1, new LockMetrics(SERVER_LOCK, metrics));
+        this.bucketLocks = new StripedLockTable(BUCKET_STRIPES, new LockMetrics("bucket", metrics));
+        this.objectLocks = new StripedLockTable(getServerSettings().getLockStripes(), new LockMetrics("object", metrics));
+        this.fileCacheLocks = new StripedLockTable(getServerSettings().getLockStripes(), new LockMetrics("fileCache", metrics));
         setStatus(ServiceStatus.RUNNING);
         startuplogger.debug("Started -> " + LockService.class.getSimpleName());
     }
 
-    @PreDestroy
-    private void preDestroy() {
-        getPoolCleaner().sendExitSignal();
+    private StripedLockTable getObjectLocks() {
+        return this.objectLocks;
     }
 
-    private String getKey(Long bucketId, String objectName) {
-        return (bucketId.toString() + ServerConstant.BO_SEPARATOR + objectName);
+    private StripedLockTable getFileCacheLocks() {
+        return this.fileCacheLocks;
     }
 
-    private String getFileKey(Long bucketId, String objectName, Optional<Integer> version) {
-        return (bucketId.toString() + ServerConstant.BO_SEPARATOR + objectName
-                + (version.isEmpty() ? "" : (ServerConstant.BO_SEPARATOR + String.valueOf(version.get().intValue()))));
+    private StripedLockTable getBucketLocks() {
+        return this.bucketLocks;
     }
 
     private ServerSettings getServerSettings() {
         return serverSettings;
     }
-
-    private PoolCleaner getPoolCleaner() {
-        return this.cleaner;
-    }
-
-    private double getRatePerMillisec() {
-        return this.ratePerMillisec;
-    }
 }
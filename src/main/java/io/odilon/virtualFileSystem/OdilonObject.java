@@ -47,12 +47,29 @@ public class OdilonObject extends BaseObject implements VirtualFileSystemObject
     @JsonIgnore
     private VirtualFileSystemService vfs;
 
+    /**
+     * <p>
+     * Stream opened by the driver together with the metadata (see
+     * {@link io.odilon.virtualFileSystem.model.IODriver#openObject}). It is returned by the first call to
+     * {@link #getInputStream()}, following calls open a new stream
+     * </p>
+     */
+    @JsonIgnore
+    private InputStream inputStream;
+
     public OdilonObject(ServerBucket bucket, String objectName, VirtualFileSystemService vfs) {
         this.bucket = bucket;
         this.objectName = objectName;
         this.vfs = vfs;
     }
 
+    public OdilonObject(ServerBucket bucket, String objectName, VirtualFileSystemService vfs, ObjectMetadata objectMetadata,
+            InputStream inputStream) {
+        this(bucket, objectName, vfs);
+        this.objectMetadata = objectMetadata;
+        this.inputStream = inputStream;
+    }
+
     @Override
     public ServerBucket getBucket() {
         return bucket;
@@ -75,7 +92,12 @@ public class OdilonObject extends BaseObject implements VirtualFileSystemObject
     }
 
     @Override
-    public InputStream getInputStream() throws IOException {
+    public synchronized InputStream getInputStream() throws IOException {
+        if (this.inputStream != null) {
+            InputStream stream = this.inputStream;
+            this.inputStream = null;
+            return stream;
+        }
         return this.vfs.getObjectStream(bucket, objectName);
     }
 }
@@ -72,6 +72,7 @@ import io.odilon.replication.ReplicationService;
 import io.odilon.scheduler.SchedulerService;
 import io.odilon.scheduler.ServiceRequest;
 import io.odilon.service.BaseService;
+import io.odilon.service.BufferService;
 import io.odilon.service.ServerSettings;
 import io.odilon.service.util.ByteToString;
 import io.odilon.util.Check;
@@ -187,6 +188,11 @@ public class OdilonVirtualFileSystemService extends BaseService
     @Autowired
     private final FileCacheService fileCacheService;
 
+    /** pool of buffers used by the RAID 6 encoder and decoder */
+    @JsonIgnore
+    @Autowired
+    private final BufferService bufferService;
+
     @JsonProperty("started")
     private final OffsetDateTime started = OffsetDateTime.now();
 
@@ -226,6 +232,13 @@ public class OdilonVirtualFileSystemService extends BaseService
     @JsonIgnore
     private final Map<Integer, Drive> drivesRSDecode = new ConcurrentHashMap<Integer, Drive>();
 
+    /** RAID driver shared by all threads, see {@link #createVFSIODriver()} */
+    @JsonIgnore
+    private volatile IODriver driver;
+
+    @JsonIgnore
+    private final Object driverLock = new Object();
+
     @JsonIgnore
     private ApplicationContext applicationContext;
 
@@ -249,9 +262,10 @@ public class OdilonVirtualFileSystemService extends BaseService
             SchedulerService schedulerService, BucketIteratorService walkerService, ReplicationService replicationService,
             ObjectMetadataCacheService objectCacheService, MasterKeyService masterKeyEncryptorService,
             OdilonKeyEncryptorService odilonKeyEncryptorService, FileCacheService fileCacheService,
-            ApplicationEventPublisher applicationEventPublisher) {
+            BufferService bufferService, ApplicationEventPublisher applicationEventPublisher) {
 
         this.fileCacheService = fileCacheService;
+        this.bufferService = bufferService;
         this.objectCacheService = objectCacheService;
         this.lockService = vfsLockService;
         this.serverSettings = serverSettings;
@@ -307,6 +321,18 @@ public class OdilonVirtualFileSystemService extends BaseService
         return driver.getObjectVersionInputStream(driver.getBucket(bucketName), objectName, version);
     }
 
+    @Override
+    public InputStream getObjectVersion(String bucketName, String objectName, int version, long offset, long length) {
+        Check.requireNonNullStringArgument(bucketName, "bucketName can not be null or empty");
+        Check.requireNonNullStringArgument(objectName, "objectName can not be null or empty | b:" + bucketName);
+        Check.requireTrue(version >= 0, "version must be >=0");
+        Check.requireTrue(offset >= 0, "offset must be >=0");
+        Check.requireTrue(length >= 0, "length must be >=0");
+        IODriver driver = createVFSIODriver();
+        Check.requireTrue(driver.existsBucket(bucketName), "bucket does not exist -> " + bucketName);
+        return driver.getObjectVersionInputStream(driver.getBucket(bucketName), objectName, version, offset, length);
+    }
+
     @Override
     public boolean hasVersions(String bucketName, String objectName) {
         Check.requireNonNullStringArgument(bucketName, "bucketName can not be null or empty");
@@ -479,6 +505,37 @@ public class OdilonVirtualFileSystemService extends BaseService
         return createVFSIODriver().getInputStream(bucket, objectName);
     }
 
+    /**
+     * <p>
+     * Metadata of the head version or {@code null} if the object does not exist.
+     * The data file is not opened (see {@link IODriver#statObject})
+     * </p>
+     */
+    @Override
+    public ObjectMetadata statObject(String bucketName, String objectName) {
+        Check.requireNonNullStringArgument(bucketName, "bucketName can not be null or empty");
+        Check.requireNonNullStringArgument(objectName, "objectName can not be null or empty | b:" + bucketName);
+        IODriver driver = createVFSIODriver();
+        return driver.statObject(driver.getBucket(bucketName), objectName);
+    }
+
+    /**
+     * <p>
+     * Metadata and data stream are resolved by the driver under one lock
+     * acquisition (see {@link IODriver#openObject}). {@code getBucket} already
+     * checks that the bucket exists.
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} of the object
+     * returned
+     */
+    @Override
+    public VirtualFileSystemObject openObject(String bucketName, String objectName) {
+        Check.requireNonNullStringArgument(bucketName, "bucketName can not be null or empty");
+        Check.requireNonNullStringArgument(objectName, "objectName can not be null or empty | b:" + bucketName);
+        IODriver driver = createVFSIODriver();
+        return driver.openObject(driver.getBucket(bucketName), objectName);
+    }
+
     /**
      * <p>
      * 
@@ -500,6 +557,24 @@ public class OdilonVirtualFileSystemService extends BaseService
         return getObjectStream(driver.getBucket(bucketName), objectName);
     }
 
+    /**
+     * <p>
+     * Returns at most {@code length} bytes of the object starting at
+     * {@code offset}.<br/>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     * </p>
+     */
+    @Override
+    public InputStream getObjectStream(String bucketName, String objectName, long offset, long length) throws IOException {
+        Check.requireNonNullStringArgument(bucketName, "bucketName can not be null or empty");
+        Check.requireNonNullStringArgument(objectName, "objectName can not be null or empty | b:" + bucketName);
+        Check.requireTrue(offset >= 0, "offset must be >=0");
+        Check.requireTrue(length >= 0, "length must be >=0");
+        IODriver driver = createVFSIODriver();
+        Check.requireTrue(driver.existsBucket(bucketName), "bucket does not exist -> " + bucketName);
+        return driver.getInputStream(driver.getBucket(bucketName), objectName, offset, length);
+    }
+
     @Override
     public DataList<Item<ObjectMetadata>> listObjects(String bucketName) {
         return listObjects(bucketName, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
@@ -585,6 +660,7 @@ public class OdilonVirtualFileSystemService extends BaseService
             getMapDrivesEnabled().remove(drive.getName(), drive);
             getMapDrivesRSDecode().remove(Integer.valueOf(drive.getDriveInfo().getOrder()), drive);
         }
+        resetDrives();
     }
 
     /**
@@ -619,6 +695,11 @@ public class OdilonVirtualFileSystemService extends BaseService
         return this.fileCacheService;
     }
 
+    @Override
+    public BufferService getBufferService() {
+        return this.bufferService;
+    }
+
     @Override
     public ObjectMetadataCacheService getObjectMetadataCacheService() {
         return this.objectCacheService;
@@ -629,15 +710,22 @@ public class OdilonVirtualFileSystemService extends BaseService
         return this.raid;
     }
 
+    /**
+     * <p>
+     * The driver is created once (the first time it is required) and shared by
+     * all threads. {@link IODriver} implementations are thread safe
+     * </p>
+     */
     @Override
     public IODriver createVFSIODriver() {
-        if (this.raid == RedundancyLevel.RAID_0)
-            return getApplicationContext().getBean(RAIDZeroDriver.class, this, getLockService());
-        if (this.raid == RedundancyLevel.RAID_1)
-            return getApplicationContext().getBean(RAIDOneDriver.class, this, getLockService());
-        if (this.raid == RedundancyLevel.RAID_6)
-            return getApplicationContext().getBean(RAIDSixDriver.class, this, getLockService());
-        throw new IllegalStateException("RAID not supported -> " + this.raid.toString());
+        IODriver current = this.driver;
+        if (current != null)
+            return current;
+        synchronized (this.driverLock) {
+            if (this.driver == null)
+                this.driver = newVFSIODriver();
+            return this.driver;
+        }
     }
 
     @Override
@@ -949,6 +1037,29 @@ public class OdilonVirtualFileSystemService extends BaseService
         /** set up drives for RS Decoding */
         this.drivesEnabled.values()
                 .forEach(drive -> this.drivesRSDecode.put(Integer.valueOf(drive.getDriveInfo().getOrder()), drive));
+
+        resetDrives();
+    }
+
+    /**
+     * <p>
+     * the driver caches the sorted lists of drives
+     * </p>
+     */
+    private void resetDrives() {
+        IODriver current = this.driver;
+        if (current != null)
+            current.resetDrives();
+    }
+
+    private IODriver newVFSIODriver() {
+        if (this.raid == RedundancyLevel.RAID_0)
+            return getApplicationContext().getBean(RAIDZeroDriver.class, this, getLockService());
+        if (this.raid == RedundancyLevel.RAID_1)
+            return getApplicationContext().getBean(RAIDOneDriver.class, this, getLockService());
+        if (this.raid == RedundancyLevel.RAID_6)
+            return getApplicationContext().getBean(RAIDSixDriver.class, this, getLockService());
+        throw new IllegalStateException("RAID not supported -> " + this.raid.toString());
     }
 
     /**
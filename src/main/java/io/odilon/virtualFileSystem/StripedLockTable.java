@@ -0,0 +1,195 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * <p>
+ * Fixed size table of {@link ReadWriteLock}. The lock of a key (Bucket name, or
+ * bucketId + objectName [+ version]) is the one in the position given by the
+ * hash of the key.
+ * </p>
+ * <p>
+ * The table never grows, getting a lock does not allocate (no key strings, no
+ * map entries) and there is nothing to purge. Two keys may share the same lock,
+ * which is safe as long as a thread does not hold a read lock of one key while
+ * acquiring the write lock of a different key of the same table (locks are
+ * reentrant, but a read lock can not be upgraded). {@link OdilonLockService}
+ * uses separate tables for Buckets, Objects and FileCache files.
+ * </p>
+ * <p>
+ * A thread that needs more than one key of the same table (for example the old
+ * and new name of a Bucket being renamed) must take them with
+ * {@link #getOrdered(String...)}. Two unrelated keys may share a stripe, two
+ * threads that take their keys in any other order can deadlock even if they do
+ * not have a key in common.
+ * </p>
+ * <p>
+ * Locks are {@link MonitoredReadWriteLock}, wait and hold times are reported to
+ * the {@link LockMetrics} of the table
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class StripedLockTable {
+
+    static public final int NO_VERSION = -1;
+
+    private final MonitoredReadWriteLock[] locks;
+    private final int mask;
+    private final LockMetrics metrics;
+
+    /**
+     * @param stripes number of locks, rounded up to a power of 2
+     */
+    public StripedLockTable(int stripes) {
+        this(stripes, new LockMetrics("default", false));
+    }
+
+    /**
+     * @param stripes number of locks, rounded up to a power of 2
+     */
+    public StripedLockTable(int stripes, LockMetrics metrics) {
+        int size = (stripes <= 1) ? 1 : (Integer.highestOneBit(stripes - 1) << 1);
+        this.metrics = metrics;
+        this.locks = new MonitoredReadWriteLock[size];
+        for (int n = 0; n < size; n++)
+            this.locks[n] = new MonitoredReadWriteLock(metrics);
+        this.mask = size - 1;
+    }
+
+    /**
+     * <p>
+     * If metrics are enabled the key is remembered by the current thread (no
+     * string is built), in case it has to wait for the lock
+     * </p>
+     */
+    public ReadWriteLock get(String name) {
+        MonitoredReadWriteLock lock = this.locks[spread(name.hashCode()) & this.mask];
+        if (this.metrics.isEnabled())
+            this.metrics.setRequested(lock, name);
+        return lock;
+    }
+
+    public ReadWriteLock get(long bucketId, String objectName) {
+        return get(bucketId, objectName, NO_VERSION, spread(hash(bucketId, objectName)));
+    }
+
+    public ReadWriteLock get(long bucketId, String objectName, int version) {
+        return get(bucketId, objectName, version, spread(31 * hash(bucketId, objectName) + version));
+    }
+
+    private ReadWriteLock get(long bucketId, String objectName, int version, int hash) {
+        MonitoredReadWriteLock lock = this.locks[hash & this.mask];
+        if (this.metrics.isEnabled())
+            this.metrics.setRequested(lock, bucketId, objectName, version);
+        return lock;
+    }
+
+    /**
+     * <p>
+     * Locks of the keys in stripe order, without repeated stripes. The caller
+     * locks them in the order of the list and unlocks them in reverse order
+     * </p>
+     */
+    public List<ReadWriteLock> getOrdered(String... names) {
+        int[] stripes = new int[names.length];
+        for (int n = 0; n < names.length; n++)
+            stripes[n] = spread(names[n].hashCode()) & this.mask;
+        Arrays.sort(stripes);
+        List<ReadWriteLock> list = new ArrayList<ReadWriteLock>(names.length);
+        for (int n = 0; n < stripes.length; n++) {
+            if (n == 0 || stripes[n] != stripes[n - 1])
+                list.add(this.locks[stripes[n]]);
+        }
+        return list;
+    }
+
+    /**
+     * <p>
+     * true if the lock of the key is held (by this key or another that shares the
+     * stripe)
+     * </p>
+     */
+    public boolean isLocked(String name) {
+        return this.locks[spread(name.hashCode()) & this.mask].isLocked();
+    }
+
+    public int size() {
+        return this.locks.length;
+    }
+
+    public LockMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * <p>
+     * metrics of the table and the {@code top} stripes with more contended
+     * acquisitions. Different keys may share a stripe, each stripe is reported
+     * with its position and the last key that had to wait for it
+     * </p>
+     */
+    public Map<String, Object> toMap(int top) {
+
+        Map<String, Object> map = new HashMap<String, Object>(getMetrics().toMap());
+
+        if (top < 1 || !getMetrics().isEnabled())
+            return map;
+
+        List<Integer> list = new ArrayList<Integer>();
+        for (int n = 0; n < this.locks.length; n++) {
+            if (this.locks[n].getContended() > 0)
+                list.add(n);
+        }
+        list.sort(Comparator.comparingLong((Integer n) -> this.locks[n].getContended()).reversed());
+
+        List<String> topStripes = new ArrayList<String>();
+        for (int n = 0; n < Math.min(top, list.size()); n++) {
+            MonitoredReadWriteLock lock = this.locks[list.get(n)];
+            topStripes.add("stripe " + String.valueOf(list.get(n)) + " (last key: "
+                    + ((lock.getLastKey() == null) ? "?" : lock.getLastKey()) + ") -> " + String.valueOf(lock.getContended())
+                    + " contended, " + String.valueOf(lock.getWaitNanos() / 1000) + " wait micros");
+        }
+        map.put("lock." + getMetrics().getName() + ".topStripes", topStripes);
+        return map;
+    }
+
+    private static int hash(long bucketId, String objectName) {
+        return 31 * Long.hashCode(bucketId) + objectName.hashCode();
+    }
+
+    /**
+     * murmur3 finalizer, neighbour keys (objectName-1, objectName-2) go to distant
+     * positions
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -19,11 +19,14 @@ package io.odilon.virtualFileSystem.model;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import io.odilon.model.BucketMetadata;
 import io.odilon.model.ObjectMetadata;
 import io.odilon.scheduler.ServiceRequest;
 import io.odilon.virtualFileSystem.DriveInfo;
+import io.odilon.virtualFileSystem.DriveReadStats;
 
 /**
  * <p>
@@ -46,6 +49,11 @@ public interface Drive {
 
     public void setDriveInfo(DriveInfo info);
 
+    /**
+     * ----------------- Read load ------------------
+     */
+    public DriveReadStats getReadStats();
+
 
     /**
      * ----------------- Journal ------------------
@@ -54,6 +62,14 @@ public interface Drive {
 
     public void removeJournal(String id);
 
+    /** the future completes when the record is on disk */
+    public CompletableFuture<Void> saveJournalAsync(VirtualFileSystemOperation op);
+
+    public CompletableFuture<Void> removeJournalAsync(String id);
+
+    /** operations saved and not removed, opId -> JSON */
+    public Map<String, String> getJournalPending();
+
     /**
      * ----------------- Sys ------------------
      */
@@ -71,12 +71,41 @@ public interface IODriver {
 
     public VirtualFileSystemObject getObject(ServerBucket bucket, String objectName);
 
+    /**
+     * <p>
+     * Resolves the {@link ObjectMetadata} and opens the data stream of the head
+     * version under a single acquisition of the object and bucket locks. Throws
+     * {@link io.odilon.error.OdilonObjectNotFoundException} if the object does not
+     * exist or is not accesible
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} of the object
+     * returned
+     */
+    public VirtualFileSystemObject openObject(ServerBucket bucket, String objectName);
+
+    /**
+     * <p>
+     * Returns the {@link ObjectMetadata} of the head version, or {@code null} if the
+     * object does not exist, without opening the data file
+     * </p>
+     */
+    public ObjectMetadata statObject(ServerBucket bucket, String objectName);
+
     public boolean exists(ServerBucket bucket, String objectName);
 
     public void delete(ServerBucket bucket, String objectName);
 
     public InputStream getInputStream(ServerBucket bucket, String objectName) throws IOException;
 
+    /**
+     * <p>
+     * Returns at most {@code length} bytes of the object data starting at
+     * {@code offset} (offset and length refer to the object as returned by
+     * {@link #getInputStream(ServerBucket, String)})
+     * </p>
+     */
+    public InputStream getInputStream(ServerBucket bucket, String objectName, long offset, long length) throws IOException;
+
     /**
      * Object List
      */
@@ -159,6 +188,8 @@ public interface IODriver {
 
     public InputStream getObjectVersionInputStream(ServerBucket bucket, String objectName, int version);
 
+    public InputStream getObjectVersionInputStream(ServerBucket bucket, String objectName, int version, long offset, long length);
+
     //public void deleteObjectAllPreviousVersions(ObjectMetadata meta);
     public void deleteObjectAllPreviousVersions(ServerBucket bucket, String objectName);
 
@@ -200,6 +231,14 @@ public interface IODriver {
 
     public List<Drive> getDrivesAll();
 
+    /**
+     * <p>
+     * Discard the cached lists of drives, the set of drives or their status
+     * changed
+     * </p>
+     */
+    public void resetDrives();
+
 
     /**
      * <p>
@@ -16,6 +16,8 @@
  */
 package io.odilon.virtualFileSystem.model;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.locks.ReadWriteLock;
 
@@ -25,9 +27,9 @@ import io.odilon.virtualFileSystem.OdilonVirtualFileSystemService;
 
 /**
  * <p>
- * Lock Service for Object, FileCacheService, Bucket, ServerInfo. It maintains a
- * Map of Object locks that is cleaned after the lock is released or regularly
- * by a clean up process
+ * Lock Service for Object, FileCacheService, Bucket, ServerInfo. Locks are
+ * taken from fixed size lock tables indexed by the hash of the key, different
+ * keys may share the same lock
  * </p>
  * 
  * @author atolomei@novamens.com (Alejandro Tolomei)
@@ -46,6 +48,14 @@ public interface LockService extends SystemService {
 
     public ReadWriteLock getBucketLock(Long id);
 
+    /**
+     * <p>
+     * Locks of several Buckets, in the order they must be locked. Names that share
+     * a lock return it once
+     * </p>
+     */
+    public List<ReadWriteLock> getOrderedBucketLocks(String... bucketNames);
+
     public ReadWriteLock getServerLock();
 
     public ReadWriteLock getFileCacheLock(Long bucketId, String objectName, Optional<Integer> version);
@@ -54,6 +64,8 @@ public interface LockService extends SystemService {
 
     public boolean isLocked(String bucketName);
 
+    public Map<String, Object> getLockMetrics();
+
     public void setVirtualFileSystemService(OdilonVirtualFileSystemService odilonVirtualFileSystemService);
 
 }
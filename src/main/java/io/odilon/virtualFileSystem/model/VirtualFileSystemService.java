@@ -45,6 +45,7 @@ import io.odilon.query.BucketIteratorService;
 import io.odilon.replication.ReplicationService;
 import io.odilon.scheduler.SchedulerService;
 import io.odilon.scheduler.ServiceRequest;
+import io.odilon.service.BufferService;
 import io.odilon.service.ServerSettings;
 import io.odilon.service.SystemService;
 import io.odilon.virtualFileSystem.BucketCache;
@@ -102,7 +103,9 @@ public interface VirtualFileSystemService extends SystemService {
     static final public int BITS_PER_BYTE = 8;
 
     /**
-     * Create RAID driver
+     * <p>
+     * RAID driver. It is created on first use and shared by all threads
+     * </p>
      */
     public IODriver createVFSIODriver();
 
@@ -167,6 +170,10 @@ public interface VirtualFileSystemService extends SystemService {
 
     public VirtualFileSystemObject getObject(String bucketName, String objectName);
 
+    public VirtualFileSystemObject openObject(String bucketName, String objectName);
+
+    public ObjectMetadata statObject(String bucketName, String objectName);
+
     public ObjectMetadata getObjectMetadata(ServerBucket bucket, String objectName);
 
     public boolean existsObject(ServerBucket bucket, String objectName);
@@ -183,6 +190,8 @@ public interface VirtualFileSystemService extends SystemService {
 
     public InputStream getObjectStream(String bucketName, String objectName) throws IOException;
 
+    public InputStream getObjectStream(String bucketName, String objectName, long offset, long length) throws IOException;
+
     /**
      * Object Version
      */
@@ -196,6 +205,8 @@ public interface VirtualFileSystemService extends SystemService {
 
     public InputStream getObjectVersion(String bucketName, String ObjectName, int version);
 
+    public InputStream getObjectVersion(String bucketName, String objectName, int version, long offset, long length);
+
     public ObjectMetadata restorePreviousVersion(String bucketName, String objectName);
 
     //public void deleteObjectAllPreviousVersions(ObjectMetadata meta);
@@ -266,6 +277,8 @@ public interface VirtualFileSystemService extends SystemService {
 
     public FileCacheService getFileCacheService();
 
+    public BufferService getBufferService();
+
     public SystemMonitorService getSystemMonitorService();
 
     public LockService getLockService();
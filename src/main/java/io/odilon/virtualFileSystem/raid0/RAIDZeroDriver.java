@@ -20,14 +20,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -622,6 +621,47 @@ public class RAIDZeroDriver extends BaseIODriver implements ApplicationContextAw
         Check.requireTrue(bucket.isAccesible(), "bucket is not Accesible " + objectInfo(bucket));
         Check.requireNonNullStringArgument(objectName, "objectName is null or empty " + objectInfo(bucket));
 
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+
+                /** must be executed inside the critical zone */
+                checkExistBucket(bucket);
+
+                ObjectMetadata meta = getDriverObjectMetadataInternal(bucket, objectName, true);
+
+                if ((meta == null) || (!meta.isAccesible()))
+                    throw new OdilonObjectNotFoundException(objectInfo(bucket, objectName));
+
+                return openInputStream(bucket, objectName, meta);
+
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
+    /**
+     * <p>
+     * RAID 0. The data file is opened and positioned at the offset, only the bytes
+     * of the range are read
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     */
+    @Override
+    public InputStream getInputStream(ServerBucket bucket, String objectName, long offset, long length) {
+
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireTrue(bucket.isAccesible(), "bucket is not Accesible " + objectInfo(bucket));
+        Check.requireNonNullStringArgument(objectName, "objectName is null or empty " + objectInfo(bucket));
+
         objectReadLock(bucket, objectName);
         try {
             bucketReadLock(bucket);
@@ -639,12 +679,52 @@ public class RAIDZeroDriver extends BaseIODriver implements ApplicationContextAw
                     throw new OdilonObjectNotFoundException(objectInfo(bucket, objectName));
 
                 ObjectPath path = new ObjectPath(readDrive, bucket, objectName);
-                InputStream stream = Files.newInputStream(path.dataFilePath());
+                return getRangeInputStream(path.dataFilePath(), meta.isEncrypt(), offset, length);
 
-                return (meta.isEncrypt()) ? getEncryptionService().decryptStream(stream) : stream;
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (OdilonObjectNotFoundException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
+    @Override
+    public InputStream getObjectVersionInputStream(ServerBucket bucket, String objectName, int version, long offset,
+            long length) {
+
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireTrue(bucket.isAccesible(), "bucket is not Accesible " + objectInfo(bucket));
+        Check.requireNonNullStringArgument(objectName, "objectName is null or empty " + objectInfo(bucket));
+
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                /** must be executed inside the critical zone */
+                checkExistBucket(bucket);
+
+                /** RAID 0: read is from only 1 drive */
+                Drive readDrive = getReadDrive(bucket, objectName);
+
+                ObjectMetadata meta = getObjectMetadataVersion(bucket, objectName, version);
+
+                if ((meta == null) || (!meta.isAccesible()))
+                    throw new OdilonObjectNotFoundException(ObjectMetadata.class.getSimpleName());
+
+                ObjectPath path = new ObjectPath(readDrive, bucket, objectName);
+                return getRangeInputStream(path.dataFileVersionPath(version), meta.isEncrypt(), offset, length);
 
             } catch (IllegalArgumentException e) {
                 throw e;
+            } catch (OdilonObjectNotFoundException e) {
+                throw e;
             } catch (Exception e) {
                 throw new InternalCriticalException(e, objectInfo(bucket, objectName));
             } finally {
@@ -666,37 +746,16 @@ public class RAIDZeroDriver extends BaseIODriver implements ApplicationContextAw
         List<VirtualFileSystemOperation> list = new ArrayList<VirtualFileSystemOperation>();
         Drive drive = getDrivesEnabled().get(0);
 
-        File dir = new File(drive.getJournalDirPath());
-
-        if (!dir.exists())
-            return list;
-
-        if (!dir.isDirectory())
-            return list;
-
-        File[] files = dir.listFiles();
-
-        if (files.length == 0)
-            return list;
-
-        for (File file : files) {
-
-            if (!file.isDirectory()) {
-                Path pa = Paths.get(file.getAbsolutePath());
-                try {
-                    String str = Files.readString(pa);
-                    OdilonVirtualFileSystemOperation operation = getObjectMapper().readValue(str,
-                            OdilonVirtualFileSystemOperation.class);
-                    operation.setJournalService(getJournalService());
-                    list.add(operation);
-                } catch (IOException e) {
-                    logger.debug(e, fileInfo(file));
-                    try {
-                        Files.delete(file.toPath());
-                    } catch (IOException e1) {
-                        logger.error(e, SharedConstant.NOT_THROWN);
-                    }
-                }
+        for (Entry<String, String> entry : drive.getJournalPending().entrySet()) {
+            try {
+                OdilonVirtualFileSystemOperation operation = getObjectMapper().readValue(entry.getValue(),
+                        OdilonVirtualFileSystemOperation.class);
+                operation.setJournalService(getJournalService());
+                list.add(operation);
+            } catch (IOException e) {
+                logger.error(e, "invalid journal record -> op: " + entry.getKey() + " | d: " + drive.getName(),
+                        SharedConstant.NOT_THROWN);
+                drive.removeJournal(entry.getKey());
             }
         }
         std_logger.info("Rollback -> " + String.valueOf(list.size()) + " transactions");
@@ -1214,6 +1273,18 @@ public class RAIDZeroDriver extends BaseIODriver implements ApplicationContextAw
      * @param objectName
      * @return
      */
+    /**
+     * <p>
+     * RAID 0: read is from only 1 drive
+     * </p>
+     */
+    @Override
+    protected InputStream openInputStream(ServerBucket bucket, String objectName, ObjectMetadata meta) throws IOException {
+        ObjectPath path = new ObjectPath(getReadDrive(bucket, objectName), bucket, objectName);
+        InputStream stream = Files.newInputStream(path.dataFilePath());
+        return (meta.isEncrypt()) ? getEncryptionService().decryptStream(stream) : stream;
+    }
+
     protected Drive getReadDrive(ServerBucket bucket, String objectName) {
         return getDrive(bucket, objectName);
     }
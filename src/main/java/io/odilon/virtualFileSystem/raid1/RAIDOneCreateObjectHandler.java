@@ -16,32 +16,26 @@
  */
 package io.odilon.virtualFileSystem.raid1;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import io.odilon.OdilonVersion;
 import io.odilon.errors.InternalCriticalException;
+import io.odilon.file.SHA256Digest;
 import io.odilon.log.Logger;
 import io.odilon.model.ObjectMetadata;
 import io.odilon.model.ObjectStatus;
-import io.odilon.model.ServerConstant;
 import io.odilon.model.SharedConstant;
-import io.odilon.util.OdilonFileUtils;
 import io.odilon.virtualFileSystem.ObjectPath;
 import io.odilon.virtualFileSystem.model.Drive;
 import io.odilon.virtualFileSystem.model.ServerBucket;
@@ -98,8 +92,8 @@ public class RAIDOneCreateObjectHandler extends RAIDOneTransactionObjectHandler
                 /** start operation */
                 operation = createObject();
             
-                saveData(stream, srcFileName);
-                saveMetadata(srcFileName, contentType, customTags);
+                String sha256 = saveData(stream, srcFileName);
+                saveMetadata(srcFileName, contentType, customTags, sha256);
                 
                 /** commit */
                 commitOK = operation.commit();
@@ -141,13 +135,12 @@ public class RAIDOneCreateObjectHandler extends RAIDOneTransactionObjectHandler
      * @param stream
      * @param srcFileName
      */
-    private void saveData(InputStream stream, String srcFileName) {
+    private String saveData(InputStream stream, String srcFileName) {
 
         int total_drives = getDriver().getDrivesAll().size();
+        MessageDigest digest = SHA256Digest.newInstance();
 
-        byte[] buf = new byte[ServerConstant.BUFFER_SIZE];
-
-        BufferedOutputStream out[] = new BufferedOutputStream[total_drives];
+        OutputStream out[] = new OutputStream[total_drives];
         boolean isMainException = false;
         try (InputStream sourceStream = isEncrypt() ? (getVirtualFileSystemService().getEncryptionService().encryptStream(stream))
                 : stream) {
@@ -156,52 +149,12 @@ public class RAIDOneCreateObjectHandler extends RAIDOneTransactionObjectHandler
 
                 ObjectPath path = new ObjectPath(drive, getBucket().getId(), getObjectName());
                 String sPath = path.dataFilePath().toString();
-                out[n_d++] = new BufferedOutputStream(new FileOutputStream(sPath), ServerConstant.BUFFER_SIZE);
+                out[n_d++] = new FileOutputStream(sPath);
             }
 
-            int bytes_read = 0;
-
-            /** if there is just 1 disk copy directly */
-            if (getDriver().getDrivesAll().size() < 2) {
-                while ((bytes_read = sourceStream.read(buf, 0, buf.length)) >= 0) {
-                    for (int bytes = 0; bytes < total_drives; bytes++) {
-                        out[bytes].write(buf, 0, bytes_read);
-                    }
-                }
-            } else {
-                /** for 2 or more disks copy in parallel */
-                final int size = getDriver().getDrivesAll().size();
-                
-                ExecutorService executor = getVirtualFileSystemService().getExecutorService();
-                
-                while ((bytes_read = sourceStream.read(buf, 0, buf.length)) >= 0) {
-                    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(size);
-                    for (int index = 0; index < total_drives; index++) {
-                        final int t_index = index;
-                        final int t_bytes_read = bytes_read;
-                        tasks.add(() -> {
-                            try {
-                                out[t_index].write(buf, 0, t_bytes_read);
-                                return Boolean.valueOf(true);
-                            } catch (Exception e) {
-                                logger.error(e, SharedConstant.NOT_THROWN);
-                                return Boolean.valueOf(false);
-                            }
-                        });
-                    }
-                    try {
-                        List<Future<Boolean>> future = executor.invokeAll(tasks, 10, TimeUnit.MINUTES);
-                        Iterator<Future<Boolean>> it = future.iterator();
-                        while (it.hasNext()) {
-                            if (!it.next().get())
-                                throw new InternalCriticalException(info(srcFileName));
-                        }
-                    } catch (InterruptedException | ExecutionException e) {
-                        throw new InternalCriticalException(e, info(srcFileName));
-                    }
-
-                }
-            } // else
+            /** one writer per drive, see {@link RAIDOneMirrorWriter} */
+            RAIDOneMirrorWriter.copy(sourceStream, out, getVirtualFileSystemService().getExecutorService(),
+                    getVirtualFileSystemService().getBufferService(), digest);
 
         } catch (InternalCriticalException e) {
             isMainException = true;
@@ -226,6 +179,7 @@ public class RAIDOneCreateObjectHandler extends RAIDOneTransactionObjectHandler
             if (!isMainException && (secEx != null))
                 throw new InternalCriticalException(secEx);
         }
+        return SHA256Digest.toString(digest);
     }
 
     /**
@@ -241,10 +195,7 @@ public class RAIDOneCreateObjectHandler extends RAIDOneTransactionObjectHandler
      * @param stream
      * @param srcFileName
      */
-    private void saveMetadata(String srcFileName, String contentType, Optional<List<String>> customTags) {
-
-        String sha = null;
-        String baseDrive = null;
+    private void saveMetadata(String srcFileName, String contentType, Optional<List<String>> customTags, String sha256) {
 
         OffsetDateTime now = OffsetDateTime.now();
 
@@ -254,15 +205,6 @@ public class RAIDOneCreateObjectHandler extends RAIDOneTransactionObjectHandler
             ObjectPath path = new ObjectPath(drive, getBucket(), getObjectName());
             File file = path.dataFilePath().toFile();
             try {
-                String sha256 = OdilonFileUtils.calculateSHA256String(file);
-                if (sha == null) {
-                    sha = sha256;
-                    baseDrive = drive.getName();
-                } else {
-                    if (!sha256.equals(sha))
-                        throw new InternalCriticalException("SHA 256 are not equal for -> d:" + baseDrive + " ->" + sha + " vs d:"
-                                + drive.getName() + " -> " + sha256);
-                }
                 ObjectMetadata meta = new ObjectMetadata(getBucket().getId(), getObjectName());
                 meta.setFileName(srcFileName);
                 meta.setAppVersion(OdilonVersion.VERSION);
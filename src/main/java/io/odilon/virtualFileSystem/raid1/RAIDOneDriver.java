@@ -27,6 +27,7 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -34,6 +35,8 @@ import javax.annotation.concurrent.ThreadSafe;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import io.odilon.cache.CacheEvent;
 import io.odilon.error.OdilonObjectNotFoundException;
 import io.odilon.errors.InternalCriticalException;
@@ -41,6 +44,7 @@ import io.odilon.log.Logger;
 import io.odilon.model.ServerConstant;
 import io.odilon.model.SharedConstant;
 import io.odilon.model.ObjectMetadata;
+import io.odilon.model.ReadDrivePolicy;
 import io.odilon.model.RedundancyLevel;
 import io.odilon.model.list.DataList;
 import io.odilon.model.list.Item;
@@ -50,6 +54,7 @@ import io.odilon.util.Check;
 import io.odilon.util.OdilonFileUtils;
 import io.odilon.virtualFileSystem.Action;
 import io.odilon.virtualFileSystem.BaseIODriver;
+import io.odilon.virtualFileSystem.DriveReadInputStream;
 import io.odilon.virtualFileSystem.ObjectPath;
 import io.odilon.virtualFileSystem.OdilonObject;
 import io.odilon.virtualFileSystem.OdilonVirtualFileSystemOperation;
@@ -87,12 +92,21 @@ public class RAIDOneDriver extends BaseIODriver {
 
     private static Logger logger = Logger.getLogger(RAIDOneDriver.class.getName());
 
+    /** stateless, shared by all the update operations */
+    @JsonIgnore
+    private final RAIDOneUpdateObjectHandler updateHandler;
+
+    @JsonIgnore
+    private final RAIDOneHedgedReader hedgedReader;
+
     /**
      * @param virtualFileSystemService
      * @param lockService
      */
     public RAIDOneDriver(VirtualFileSystemService virtualFileSystemService, LockService lockService) {
         super(virtualFileSystemService, lockService);
+        this.updateHandler = new RAIDOneUpdateObjectHandler(this);
+        this.hedgedReader = new RAIDOneHedgedReader(this, virtualFileSystemService.getServerSettings());
     }
 
     @Override
@@ -142,8 +156,7 @@ public class RAIDOneDriver extends BaseIODriver {
     public ObjectMetadata restorePreviousVersion(ServerBucket bucket, String objectName) {
         Check.requireNonNullArgument(bucket, "bucket is null");
         checkIsAccesible(bucket);
-        RAIDOneUpdateObjectHandler agent = new RAIDOneUpdateObjectHandler(this);
-        return agent.restorePreviousVersion(bucket, objectName);
+        return getUpdateHandler().restorePreviousVersion(bucket, objectName);
     }
 
     /**
@@ -198,6 +211,47 @@ public class RAIDOneDriver extends BaseIODriver {
         }
     }
 
+    @Override
+    public InputStream getObjectVersionInputStream(ServerBucket bucket, String objectName, int version, long offset,
+            long length) {
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireNonNullStringArgument(objectName, "objectName is null or empty | b:" + bucket.getName());
+        checkIsAccesible(bucket);
+
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                /** must be executed also inside the critical zone */
+                if (!existsCacheBucket(bucket))
+                    throw new IllegalArgumentException("bucket does not exist -> " + objectInfo(bucket));
+
+                /** RAID 1: read is from any of the drives */
+                Drive readDrive = getReadDrive(bucket, objectName);
+
+                ObjectMetadata meta = getObjectMetadataVersion(bucket, objectName, version);
+
+                if ((meta == null) || (!meta.isAccesible()))
+                    throw new OdilonObjectNotFoundException(
+                            "object version does not exists -> " + objectInfo(bucket, objectName, version));
+
+                ObjectPath path = new ObjectPath(readDrive, bucket, objectName);
+                return getRangeInputStream(path.dataFileVersionPath(version), meta.isEncrypt(), offset, length,
+                        readDrive.getReadStats());
+
+            } catch (OdilonObjectNotFoundException e) {
+                logger.error(e, SharedConstant.NOT_THROWN);
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName, version));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
     @Override
     public void deleteObjectAllPreviousVersions(ServerBucket bucket, String objectName) {
         Check.requireNonNullArgument(bucket, "bucket is null");
@@ -219,8 +273,7 @@ public class RAIDOneDriver extends BaseIODriver {
         checkIsAccesible(bucket);
 
         if (exists(bucket, objectName)) {
-            RAIDOneUpdateObjectHandler updateAgent = new RAIDOneUpdateObjectHandler(this);
-            updateAgent.update(bucket, objectName, stream, fileName, contentType, customTags);
+            getUpdateHandler().update(bucket, objectName, stream, fileName, contentType, customTags);
             getVirtualFileSystemService().getSystemMonitorService().getUpdateObjectCounter().inc();
         } else {
             RAIDOneCreateObjectHandler createAgent = new RAIDOneCreateObjectHandler(this, bucket, objectName);
@@ -260,8 +313,7 @@ public class RAIDOneDriver extends BaseIODriver {
     @Override
     public void putObjectMetadata(ObjectMetadata meta) {
         Check.requireNonNullArgument(meta, "meta is null");
-        RAIDOneUpdateObjectHandler updateAgent = new RAIDOneUpdateObjectHandler(this);
-        updateAgent.updateObjectMetadata(meta);
+        getUpdateHandler().updateObjectMetadata(meta);
         getVirtualFileSystemService().getSystemMonitorService().getUpdateObjectCounter().inc();
     }
 
@@ -529,14 +581,50 @@ public class RAIDOneDriver extends BaseIODriver {
                 if (!existsCacheBucket(bucket.getName()))
                     throw new IllegalArgumentException("bucket does not exist -> " + objectInfo(bucket));
 
-                /** read is from only 1 drive, randomly selected */
+                ObjectMetadata meta = getDriverObjectMetadataInternal(bucket, objectName, true);
+                return openInputStream(bucket, objectName, meta);
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
+    /**
+     * <p>
+     * RAID 1. The data file of any of the drives is opened and positioned at the
+     * offset, only the bytes of the range are read
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     */
+    @Override
+    public InputStream getInputStream(ServerBucket bucket, String objectName, long offset, long length) throws IOException {
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireTrue(bucket.isAccesible(), "bucket is not Accesible (ie. enabled or archived) b:" + bucket.getId());
+        Check.requireNonNullArgument(objectName, "objectName is null or empty | b:" + bucket.getId());
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                /** must be executed also inside the critical zone */
+                if (!existsCacheBucket(bucket.getName()))
+                    throw new IllegalArgumentException("bucket does not exist -> " + objectInfo(bucket));
+
+                /** read is from only 1 drive, selected by the read policy (see getReadDrive) */
                 Drive readDrive = getReadDrive(bucket, objectName);
                 ObjectMetadata meta = getDriverObjectMetadataInternal(bucket, objectName, true);
-                InputStream stream = getInputStreamFromSelectedDrive(readDrive, bucket.getId(), objectName);
-                if (meta.isEncrypt())
-                    return getVirtualFileSystemService().getEncryptionService().decryptStream(stream);
-                else
-                    return stream;
+
+                if ((meta == null) || (!meta.isAccesible()))
+                    throw new OdilonObjectNotFoundException(objectInfo(bucket, objectName));
+
+                ObjectPath path = new ObjectPath(readDrive, bucket, objectName);
+                return getRangeInputStream(path.dataFilePath(), meta.isEncrypt(), offset, length, readDrive.getReadStats());
+
+            } catch (OdilonObjectNotFoundException e) {
+                throw e;
             } catch (Exception e) {
                 throw new InternalCriticalException(e, objectInfo(bucket, objectName));
             } finally {
@@ -796,17 +884,117 @@ public class RAIDOneDriver extends BaseIODriver {
         return getReadDrive(bucket, objectName);
     }
 
+    /**
+     * <p>
+     * RAID 1: the object is in all enabled drives, the drive to read from is
+     * selected by the {@link ReadDrivePolicy} configured in {@code raid1.readPolicy}
+     * </p>
+     */
     protected Drive getReadDrive(ServerBucket bucket, String objectName) {
-        return getDrivesEnabled().get(Double.valueOf(Math.abs(Math.random() * 1000)).intValue() % getDrivesEnabled().size());
+        List<Drive> drives = getDrivesEnabled();
+        if (drives.size() == 1)
+            return drives.get(0);
+        switch (getReadDrivePolicy()) {
+        case STICKY:
+            return drives.get(Math.floorMod(stickyHash(bucket.getId(), objectName), drives.size()));
+        case LEAST_LOADED:
+            return getLeastLoadedDrive(drives);
+        default:
+            return drives.get(ThreadLocalRandom.current().nextInt(drives.size()));
+        }
     }
 
     protected Drive getReadDrive(ServerBucket bucket) {
-        return getDrivesEnabled().get(Double.valueOf(Math.abs(Math.random() * 1000)).intValue() % getDrivesEnabled().size());
+        List<Drive> drives = getDrivesEnabled();
+        if (drives.size() == 1)
+            return drives.get(0);
+        switch (getReadDrivePolicy()) {
+        case STICKY:
+            return drives.get(Math.floorMod(Long.hashCode(bucket.getId()), drives.size()));
+        case LEAST_LOADED:
+            return getLeastLoadedDrive(drives);
+        default:
+            return drives.get(ThreadLocalRandom.current().nextInt(drives.size()));
+        }
+    }
+
+    /**
+     * <p>
+     * RAID 1: read is from only 1 drive, see {@link #getReadDrive}. If hedged
+     * reads are enabled and the drive is slow to respond, the read is also started
+     * on another mirror (see {@link RAIDOneHedgedReader})
+     * </p>
+     * <p>
+     * Objects larger than {@code raid1.stripedReads.minObjectSizeMB} are read
+     * from all the mirrors in parallel (see {@link RAIDOneStripedInputStream}). If
+     * less than 2 mirrors can be used the object is read from one drive
+     * </p>
+     */
+    @Override
+    protected InputStream openInputStream(ServerBucket bucket, String objectName, ObjectMetadata meta) throws IOException {
+        InputStream stream = null;
+        if (isStripedRead(meta)) {
+            stream = RAIDOneStripedInputStream.open(getDrivesEnabled(), bucket, objectName,
+                    getServerSettings().getRAID1StripedReadsStripeKB() * 1024,
+                    getVirtualFileSystemService().getExecutorService());
+        }
+        if (stream == null) {
+            Drive readDrive = getReadDrive(bucket, objectName);
+            stream = getHedgedReader().open(bucket, objectName, readDrive);
+        }
+        if (meta.isEncrypt())
+            return getVirtualFileSystemService().getEncryptionService().decryptStream(stream);
+        else
+            return stream;
     }
 
     protected InputStream getInputStreamFromSelectedDrive(Drive readDrive, Long bucketId, String objectName) throws IOException {
-        return Files.newInputStream(
-                Paths.get(readDrive.getRootDirPath() + File.separator + bucketId.toString() + File.separator + objectName));
+        return new DriveReadInputStream(
+                Files.newInputStream(
+                        Paths.get(readDrive.getRootDirPath() + File.separator + bucketId.toString() + File.separator + objectName)),
+                readDrive.getReadStats());
+    }
+
+    /**
+     * <p>
+     * Drive with the lowest expected wait (latency EWMA x reads in progress). The
+     * scan starts at a random position so that idle drives with the same score
+     * share the load
+     * </p>
+     */
+    private Drive getLeastLoadedDrive(List<Drive> drives) {
+        int size = drives.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        Drive best = drives.get(start);
+        double bestScore = best.getReadStats().getLoadScore();
+        for (int n = 1; n < size; n++) {
+            Drive drive = drives.get((start + n) % size);
+            double score = drive.getReadStats().getLoadScore();
+            if (score < bestScore) {
+                best = drive;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private boolean isStripedRead(ObjectMetadata meta) {
+        if ((!getServerSettings().isRAID1StripedReadsEnabled()) || getDrivesEnabled().size() < 2)
+            return false;
+        return meta.getLength() >= getServerSettings().getRAID1StripedReadsMinObjectSizeMB() * 1024L * 1024L;
+    }
+
+    private ReadDrivePolicy getReadDrivePolicy() {
+        ReadDrivePolicy policy = getServerSettings().getRAID1ReadPolicy();
+        return (policy != null) ? policy : ReadDrivePolicy.LEAST_LOADED;
+    }
+
+    private static int stickyHash(Long bucketId, String objectName) {
+        int h = 31 * Long.hashCode(bucketId) + objectName.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
     }
 
     private boolean fix(ServerBucket bucket, String objectName, ObjectMetadata goodDriveMeta, Boolean[] iCheck, Drive goodDrive) {
@@ -923,4 +1111,11 @@ public class RAIDOneDriver extends BaseIODriver {
         }
     }
 
+    private RAIDOneUpdateObjectHandler getUpdateHandler() {
+        return this.updateHandler;
+    }
+
+    private RAIDOneHedgedReader getHedgedReader() {
+        return this.hedgedReader;
+    }
 }
@@ -0,0 +1,326 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid1;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.LockFreeExponentiallyDecayingReservoir;
+
+import io.odilon.log.Logger;
+import io.odilon.model.SharedConstant;
+import io.odilon.service.ServerSettings;
+import io.odilon.util.Check;
+import io.odilon.virtualFileSystem.model.Drive;
+import io.odilon.virtualFileSystem.model.ServerBucket;
+
+/**
+ * <p>
+ * Hedged reads for RAID 1 (optional, {@code raid1.hedgedReads.enabled}).
+ * </p>
+ * <p>
+ * The first bytes of the object are requested to the selected drive. If they
+ * have not arrived after the configured percentile of the time to first bytes
+ * ({@code raid1.hedgedReads.percentile}), the same read is started on another
+ * mirror and the first one to respond is used. The other stream is closed when
+ * its read completes.
+ * </p>
+ * <p>
+ * Hedges are limited by a token bucket: each read adds
+ * {@code raid1.hedgedReads.maxPercent}/100 of a token and each hedge takes one,
+ * so that hedged reads never add more than that percentage of extra reads
+ * (with a burst of {@link #MAX_BURST} hedges).
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class RAIDOneHedgedReader {
+
+    static private Logger logger = Logger.getLogger(RAIDOneHedgedReader.class.getName());
+
+    /** bytes read before the stream is returned to the caller */
+    static final int FIRST_CHUNK_SIZE = 16 * 1024;
+
+    static private final int MAX_BURST = 10;
+
+    /** the budget is kept in thousandths of a hedge */
+    static private final long HEDGE_COST = 1000;
+
+    static private final long MAX_BUDGET = MAX_BURST * HEDGE_COST;
+
+    /** the threshold is recalculated every RECALC_SAMPLES samples */
+    static private final long RECALC_SAMPLES = 256;
+
+    /** threshold used until there are enough samples */
+    static private final long INITIAL_THRESHOLD_MILLISECS = 50;
+
+    private final RAIDOneDriver driver;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long creditPerRead;
+    private final long minDelayNanos;
+
+    private final Histogram firstBytesHistogram = new Histogram(LockFreeExponentiallyDecayingReservoir.builder().build());
+    private final AtomicLong samples = new AtomicLong(0);
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+
+    private volatile long thresholdNanos;
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+
+    RAIDOneHedgedReader(RAIDOneDriver driver, ServerSettings settings) {
+        Check.requireNonNullArgument(driver, "driver is null");
+        this.driver = driver;
+        this.enabled = (settings != null) && settings.isRAID1HedgedReadsEnabled();
+        this.percentile = (settings != null) ? (settings.getRAID1HedgedReadsPercentile() / 100.0) : 0.95;
+        this.creditPerRead = (settings != null) ? (settings.getRAID1HedgedReadsMaxPercent() * HEDGE_COST / 100) : 0;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos((settings != null) ? settings.getRAID1HedgedReadsMinDelayMillisecs() : 0);
+        this.thresholdNanos = Math.max(this.minDelayNanos, TimeUnit.MILLISECONDS.toNanos(INITIAL_THRESHOLD_MILLISECS));
+    }
+
+    boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * <p>
+     * Opens the data file of the object in {@code drive}, or in another mirror if
+     * {@code drive} is slow to respond. <br/>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     * </p>
+     */
+    InputStream open(ServerBucket bucket, String objectName, Drive drive) throws IOException {
+
+        List<Drive> drives = this.driver.getDrivesEnabled();
+
+        if ((!this.enabled) || drives.size() < 2)
+            return this.driver.getInputStreamFromSelectedDrive(drive, bucket.getId(), objectName);
+
+        this.reads.increment();
+        addCredit();
+
+        ExecutorService executor = this.driver.getVirtualFileSystemService().getExecutorService();
+        BlockingQueue<Attempt> done = new ArrayBlockingQueue<Attempt>(2);
+        List<Attempt> attempts = new ArrayList<Attempt>(2);
+
+        Attempt first = new Attempt(drive, bucket.getId(), objectName, done);
+        attempts.add(first);
+        executor.execute(first);
+
+        Attempt winner = null;
+        IOException error = null;
+
+        try {
+            Attempt result = done.poll(this.thresholdNanos, TimeUnit.NANOSECONDS);
+
+            if (result == null) {
+                Drive hedgeDrive = getHedgeDrive(drives, drive);
+                if (hedgeDrive != null && tryAcquireHedge()) {
+                    this.hedges.increment();
+                    Attempt second = new Attempt(hedgeDrive, bucket.getId(), objectName, done);
+                    attempts.add(second);
+                    executor.execute(second);
+                }
+                result = done.take();
+            }
+
+            int pending = attempts.size();
+            while (true) {
+                pending--;
+                if (result.error == null) {
+                    winner = result;
+                    break;
+                }
+                if (error == null)
+                    error = result.error;
+                if (pending == 0)
+                    break;
+                result = done.take();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new InterruptedIOException("interrupted reading -> b:" + bucket.getId().toString() + " o:" + objectName);
+        } finally {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner)
+                    attempt.abandon();
+            }
+        }
+
+        if (winner == null)
+            throw error;
+
+        if (winner != first)
+            this.hedgesWon.increment();
+
+        return winner.getInputStream();
+    }
+
+    public String toJSON() {
+        StringBuilder str = new StringBuilder();
+        str.append("\"enabled\":" + (this.enabled ? "true" : "false"));
+        str.append(", \"reads\":" + String.valueOf(this.reads.sum()));
+        str.append(", \"hedges\":" + String.valueOf(this.hedges.sum()));
+        str.append(", \"hedgesWon\":" + String.valueOf(this.hedgesWon.sum()));
+        str.append(", \"thresholdMicros\":" + String.valueOf(TimeUnit.NANOSECONDS.toMicros(this.thresholdNanos)));
+        return str.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(this.getClass().getSimpleName());
+        str.append("{" + toJSON() + "}");
+        return str.toString();
+    }
+
+    private void onFirstBytes(long nanos) {
+        this.firstBytesHistogram.update(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (this.samples.incrementAndGet() % RECALC_SAMPLES == 0) {
+            long value = (long) (this.firstBytesHistogram.getSnapshot().getValue(this.percentile) * 1000.0);
+            this.thresholdNanos = Math.max(this.minDelayNanos, value);
+        }
+    }
+
+    private void addCredit() {
+        if (this.creditPerRead <= 0)
+            return;
+        long prev;
+        do {
+            prev = this.budget.get();
+            if (prev >= MAX_BUDGET)
+                return;
+        } while (!this.budget.compareAndSet(prev, Math.min(MAX_BUDGET, prev + this.creditPerRead)));
+    }
+
+    private boolean tryAcquireHedge() {
+        long prev;
+        do {
+            prev = this.budget.get();
+            if (prev < HEDGE_COST)
+                return false;
+        } while (!this.budget.compareAndSet(prev, prev - HEDGE_COST));
+        return true;
+    }
+
+    private Drive getHedgeDrive(List<Drive> drives, Drive primary) {
+        Drive best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Drive candidate : drives) {
+            if (candidate.equals(primary))
+                continue;
+            double score = candidate.getReadStats().getLoadScore();
+            if (score < bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * <p>
+     * Opens the data file in one drive and reads the first bytes. The stream of
+     * an attempt that was not used is closed by whichever thread finishes last,
+     * the caller ({@link #abandon()}) or the reader.
+     * </p>
+     */
+    private class Attempt implements Runnable {
+
+        private final Drive drive;
+        private final Long bucketId;
+        private final String objectName;
+        private final BlockingQueue<Attempt> done;
+
+        private InputStream in;
+        private byte[] firstBytes;
+        private int length;
+        private IOException error;
+
+        private boolean completed = false;
+        private boolean abandoned = false;
+
+        Attempt(Drive drive, Long bucketId, String objectName, BlockingQueue<Attempt> done) {
+            this.drive = drive;
+            this.bucketId = bucketId;
+            this.objectName = objectName;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                this.in = driver.getInputStreamFromSelectedDrive(this.drive, this.bucketId, this.objectName);
+                this.firstBytes = new byte[FIRST_CHUNK_SIZE];
+                this.length = this.in.read(this.firstBytes, 0, FIRST_CHUNK_SIZE);
+                onFirstBytes(System.nanoTime() - start);
+            } catch (IOException e) {
+                this.error = e;
+            } catch (Exception e) {
+                this.error = new IOException(e);
+            }
+            synchronized (this) {
+                this.completed = true;
+                if (this.abandoned)
+                    close();
+            }
+            this.done.offer(this);
+        }
+
+        void abandon() {
+            synchronized (this) {
+                this.abandoned = true;
+                if (this.completed)
+                    close();
+            }
+        }
+
+        InputStream getInputStream() {
+            if (this.length <= 0)
+                return this.in;
+            return new SequenceInputStream(new ByteArrayInputStream(this.firstBytes, 0, this.length), this.in);
+        }
+
+        private void close() {
+            if (this.in == null)
+                return;
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                logger.error(e, "d:" + this.drive.getName() + " b:" + this.bucketId.toString() + " o:" + this.objectName,
+                        SharedConstant.NOT_THROWN);
+            }
+        }
+    }
+}
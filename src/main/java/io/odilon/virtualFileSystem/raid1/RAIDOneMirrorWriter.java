@@ -0,0 +1,302 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.odilon.service.BufferService;
+import io.odilon.service.BufferService.PooledBuffer;
+import io.odilon.util.Check;
+
+/**
+ * <p>
+ * Copies a stream to the data file of every mirror (RAID 1).
+ * </p>
+ * <p>
+ * There is one writer per drive that runs for the whole Object, fed by its own
+ * bounded queue. The reader fills a chunk of {@link #CHUNK_SIZE} bytes and
+ * hands the same chunk to every writer. It only blocks when the slowest writer
+ * is {@link #RING_DEPTH} chunks behind. Chunks are taken from the
+ * {@link BufferService}, a chunk is closed when the last writer is done with
+ * it.
+ * </p>
+ * <p>
+ * If a writer fails the copy is aborted and the first error is thrown by
+ * {@link #copy}. Closing the output streams is responsibility of the caller.
+ * </p>
+ * <p>
+ * The digest (SHA-256) is calculated by one more consumer of the chunks, in
+ * parallel with the writers. All the mirrors receive the same bytes so the data
+ * files do not have to be read again to calculate it
+ * </p>
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class RAIDOneMirrorWriter {
+
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    static final int RING_DEPTH = 8;
+
+    static private final long POLL_MILLISECS = 500;
+
+    static private final Chunk EOF = new Chunk(null, 0, 0);
+
+    private final ExecutorService executor;
+    private final BufferService bufferService;
+
+    private volatile boolean aborted = false;
+    private volatile Throwable error;
+
+    private RAIDOneMirrorWriter(ExecutorService executor, BufferService bufferService) {
+        this.executor = executor;
+        this.bufferService = bufferService;
+    }
+
+    /**
+     * @param digest updated with all the bytes copied
+     * @return bytes copied
+     */
+    static long copy(InputStream source, OutputStream[] out, ExecutorService executor, BufferService bufferService,
+            MessageDigest digest) throws IOException {
+
+        Check.requireNonNullArgument(source, "source is null");
+        Check.requireNonNullArgument(out, "out is null");
+        Check.requireNonNullArgument(bufferService, "bufferService is null");
+        Check.requireNonNullArgument(digest, "digest is null");
+
+        if (out.length == 1)
+            return copyDirect(source, out[0], bufferService, digest);
+
+        /** the digest is one more consumer of the chunks */
+        OutputStream[] targets = Arrays.copyOf(out, out.length + 1, OutputStream[].class);
+        targets[out.length] = new DigestOutputStream(OutputStream.nullOutputStream(), digest);
+
+        return new RAIDOneMirrorWriter(executor, bufferService).run(source, targets);
+    }
+
+    private long run(InputStream source, OutputStream[] out) throws IOException {
+
+        List<BlockingQueue<Chunk>> queues = new ArrayList<BlockingQueue<Chunk>>(out.length);
+        List<Future<?>> writers = new ArrayList<Future<?>>(out.length);
+
+        long total = 0;
+
+        try {
+            for (OutputStream stream : out) {
+                BlockingQueue<Chunk> queue = new ArrayBlockingQueue<Chunk>(RING_DEPTH);
+                queues.add(queue);
+                writers.add(this.executor.submit(() -> write(queue, stream)));
+            }
+
+            while (true) {
+                if (this.aborted)
+                    throw new IOException("mirror write aborted", this.error);
+                PooledBuffer buffer = this.bufferService.acquire(CHUNK_SIZE);
+                int length;
+                try {
+                    length = fill(source, buffer.array());
+                } catch (IOException | RuntimeException e) {
+                    buffer.close();
+                    throw e;
+                }
+                if (length == 0) {
+                    buffer.close();
+                    break;
+                }
+                fanOut(queues, new Chunk(buffer, length, out.length));
+                total += length;
+                if (length < CHUNK_SIZE)
+                    break;
+            }
+
+            for (BlockingQueue<Chunk> queue : queues)
+                put(queue, EOF);
+
+            for (Future<?> writer : writers)
+                writer.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.aborted = true;
+            throw new InterruptedIOException(e.getMessage());
+
+        } catch (ExecutionException e) {
+            this.aborted = true;
+            throw new IOException(e.getCause());
+
+        } catch (IOException | RuntimeException e) {
+            this.aborted = true;
+            throw e;
+
+        } finally {
+            if (this.aborted) {
+                /** writers exit by themselves, wait for them so that the caller can close the streams */
+                for (Future<?> writer : writers) {
+                    try {
+                        writer.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                    }
+                }
+                /** chunks queued after their writer exited */
+                for (BlockingQueue<Chunk> queue : queues)
+                    discard(queue);
+            }
+        }
+
+        if (this.error != null)
+            throw new IOException(this.error);
+
+        return total;
+    }
+
+    private Void write(BlockingQueue<Chunk> queue, OutputStream stream) throws IOException, InterruptedException {
+        try {
+            while (!this.aborted) {
+                Chunk chunk = queue.poll(POLL_MILLISECS, TimeUnit.MILLISECONDS);
+                if (chunk == null)
+                    continue;
+                if (chunk == EOF)
+                    break;
+                try {
+                    stream.write(chunk.buf, 0, chunk.length);
+                } finally {
+                    chunk.release();
+                }
+            }
+            stream.flush();
+            return null;
+
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            this.error = e;
+            this.aborted = true;
+            throw e;
+
+        } finally {
+            /** discard what was not written */
+            discard(queue);
+        }
+    }
+
+    private static void discard(BlockingQueue<Chunk> queue) {
+        Chunk chunk;
+        while ((chunk = queue.poll()) != null) {
+            if (chunk != EOF)
+                chunk.release();
+        }
+    }
+
+    /**
+     * <p>
+     * hands the chunk to every writer. If the copy is aborted before all the
+     * writers got it, it is released for the ones that did not
+     * </p>
+     */
+    private void fanOut(List<BlockingQueue<Chunk>> queues, Chunk chunk) throws IOException, InterruptedException {
+        int queued = 0;
+        try {
+            for (BlockingQueue<Chunk> queue : queues) {
+                put(queue, chunk);
+                queued++;
+            }
+        } finally {
+            for (int n = queued; n < queues.size(); n++)
+                chunk.release();
+        }
+    }
+
+    /**
+     * reader side, blocks while the queue is full unless the copy was aborted
+     */
+    private void put(BlockingQueue<Chunk> queue, Chunk chunk) throws IOException, InterruptedException {
+        while (!queue.offer(chunk, POLL_MILLISECS, TimeUnit.MILLISECONDS)) {
+            if (this.aborted)
+                throw new IOException("mirror write aborted", this.error);
+        }
+    }
+
+    /**
+     * @return bytes read, less than {@link #CHUNK_SIZE} only at the end of the
+     *         stream
+     */
+    private static int fill(InputStream source, byte[] buf) throws IOException {
+        int length = 0;
+        while (length < CHUNK_SIZE) {
+            int n = source.read(buf, length, CHUNK_SIZE - length);
+            if (n < 0)
+                break;
+            length += n;
+        }
+        return length;
+    }
+
+    private static long copyDirect(InputStream source, OutputStream out, BufferService bufferService, MessageDigest digest)
+            throws IOException {
+        try (PooledBuffer buffer = bufferService.acquire(CHUNK_SIZE)) {
+            byte[] buf = buffer.array();
+            long total = 0;
+            int n;
+            while ((n = source.read(buf, 0, CHUNK_SIZE)) >= 0) {
+                out.write(buf, 0, n);
+                digest.update(buf, 0, n);
+                total += n;
+            }
+            out.flush();
+            return total;
+        }
+    }
+
+    /**
+     * buffer shared by all the writers, closed by the last one
+     */
+    private static class Chunk {
+
+        private final PooledBuffer buffer;
+        private final byte[] buf;
+        private final int length;
+        private final AtomicInteger pending;
+
+        Chunk(PooledBuffer buffer, int length, int writers) {
+            this.buffer = buffer;
+            this.buf = (buffer == null) ? null : buffer.array();
+            this.length = length;
+            this.pending = new AtomicInteger(writers);
+        }
+
+        void release() {
+            if (this.pending.decrementAndGet() == 0)
+                this.buffer.close();
+        }
+    }
+}
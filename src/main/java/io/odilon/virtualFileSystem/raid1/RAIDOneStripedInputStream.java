@@ -0,0 +1,333 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import io.odilon.log.Logger;
+import io.odilon.model.SharedConstant;
+import io.odilon.util.Check;
+import io.odilon.virtualFileSystem.ObjectPath;
+import io.odilon.virtualFileSystem.model.Drive;
+import io.odilon.virtualFileSystem.model.ServerBucket;
+
+/**
+ * <p>
+ * RAID 1 striped read of a large Object. All mirrors have the same data file,
+ * the file is read in stripes of {@code raid1.stripedReads.stripeKB} and
+ * stripe {@code i} is read from mirror {@code i % mirrors}, so that the read
+ * bandwidth is the sum of the bandwidth of the drives.
+ * </p>
+ * <p>
+ * Up to {@link #STRIPES_PER_DRIVE} stripes per drive are read ahead in
+ * parallel using the executor of the
+ * {@link io.odilon.virtualFileSystem.model.VirtualFileSystemService}, the
+ * stripes are returned in order. If a stripe can not be read from its mirror
+ * it is read from the next one.
+ * </p>
+ * <p>
+ * Mirrors whose data file can not be opened, or has a different size, are not
+ * used. If less than 2 mirrors remain the object is not read striped.
+ * </p>
+ * <b>IMPORTANT</b> -> caller must close the stream
+ * 
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+class RAIDOneStripedInputStream extends InputStream {
+
+    static private Logger logger = Logger.getLogger(RAIDOneStripedInputStream.class.getName());
+
+    static final int STRIPES_PER_DRIVE = 2;
+
+    static private final int MAX_STRIPES_IN_FLIGHT = 16;
+
+    private final Drive[] drives;
+    private final FileChannel[] channels;
+    private final ExecutorService executor;
+
+    private final long size;
+    private final int stripeSize;
+    private final long totalStripes;
+
+    private final Stripe[] window;
+
+    private long nextToSchedule = 0;
+    private long nextToRead = 0;
+
+    private Stripe current;
+    private int position;
+
+    private volatile boolean closed = false;
+
+    /**
+     * <p>
+     * Opens the data file of the object in the {@code drives}. A mirror whose file
+     * can not be opened, or whose size is not the size of most of the mirrors, is
+     * skipped
+     * </p>
+     * 
+     * @return null if less than 2 mirrors can be used, the caller must read the
+     *         object from one drive
+     */
+    static RAIDOneStripedInputStream open(List<Drive> drives, ServerBucket bucket, String objectName, int stripeSize,
+            ExecutorService executor) throws IOException {
+
+        Check.requireTrue(drives.size() > 0, "there are no drives");
+
+        FileChannel[] channels = new FileChannel[drives.size()];
+        long[] sizes = new long[drives.size()];
+        for (int n = 0; n < channels.length; n++) {
+            try {
+                channels[n] = FileChannel.open(new ObjectPath(drives.get(n), bucket, objectName).dataFilePath(),
+                        StandardOpenOption.READ);
+                sizes[n] = channels[n].size();
+            } catch (IOException e) {
+                logger.error(e, "d:" + drives.get(n).getName() + " b:" + bucket.getId().toString() + " o:" + objectName,
+                        SharedConstant.NOT_THROWN);
+                closeQuietly(channels[n]);
+                channels[n] = null;
+            }
+        }
+
+        long size = getMostCommonSize(channels, sizes);
+
+        List<Drive> usedDrives = new ArrayList<Drive>(drives.size());
+        List<FileChannel> usedChannels = new ArrayList<FileChannel>(drives.size());
+        for (int n = 0; n < channels.length; n++) {
+            if (channels[n] == null)
+                continue;
+            if (sizes[n] != size) {
+                logger.error("size mismatch -> d:" + drives.get(n).getName() + " b:" + bucket.getId().toString() + " o:"
+                        + objectName + " | size: " + String.valueOf(sizes[n]) + " expected: " + String.valueOf(size),
+                        SharedConstant.NOT_THROWN);
+                closeQuietly(channels[n]);
+                continue;
+            }
+            usedDrives.add(drives.get(n));
+            usedChannels.add(channels[n]);
+        }
+
+        if (usedChannels.size() < 2) {
+            for (FileChannel channel : usedChannels)
+                closeQuietly(channel);
+            return null;
+        }
+        return new RAIDOneStripedInputStream(usedDrives.toArray(new Drive[0]), usedChannels.toArray(new FileChannel[0]),
+                stripeSize, executor);
+    }
+
+    /**
+     * @return size of most of the open files, -1 if none is open
+     */
+    private static long getMostCommonSize(FileChannel[] channels, long[] sizes) {
+        long size = -1;
+        int count = 0;
+        for (int n = 0; n < channels.length; n++) {
+            if (channels[n] == null)
+                continue;
+            int same = 0;
+            for (int m = 0; m < channels.length; m++) {
+                if (channels[m] != null && sizes[m] == sizes[n])
+                    same++;
+            }
+            if (same > count) {
+                size = sizes[n];
+                count = same;
+            }
+        }
+        return size;
+    }
+
+    private RAIDOneStripedInputStream(Drive[] drives, FileChannel[] channels, int stripeSize, ExecutorService executor)
+            throws IOException {
+        this.drives = drives;
+        this.channels = channels;
+        this.executor = executor;
+        this.stripeSize = stripeSize;
+        this.size = channels[0].size();
+        this.totalStripes = (this.size + stripeSize - 1) / stripeSize;
+        this.window = new Stripe[Math.min(MAX_STRIPES_IN_FLIGHT, STRIPES_PER_DRIVE * drives.length)];
+
+        for (Drive drive : drives)
+            drive.getReadStats().onOpen();
+
+        for (int n = 0; n < this.window.length && this.nextToSchedule < this.totalStripes; n++) {
+            this.window[n] = new Stripe(new byte[stripeSize]);
+            schedule(this.window[n]);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData())
+            return -1;
+        return this.current.buffer[this.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Check.requireNonNullArgument(b, "b is null");
+        if (len == 0)
+            return 0;
+        if (!ensureData())
+            return -1;
+        int count = Math.min(len, this.current.length - this.position);
+        System.arraycopy(this.current.buffer, this.position, b, off, count);
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (this.current == null) ? 0 : (this.current.length - this.position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        for (Stripe stripe : this.window) {
+            if (stripe != null && stripe.future != null)
+                stripe.future.cancel(false);
+        }
+        for (int n = 0; n < this.channels.length; n++) {
+            closeQuietly(this.channels[n]);
+            this.drives[n].getReadStats().onClose();
+        }
+    }
+
+    /**
+     * <p>
+     * Makes {@link #current} point to a stripe with bytes pending to be read. The
+     * slot of the stripe that was consumed is used to read ahead the next one.
+     * </p>
+     * 
+     * @return false at end of stream
+     */
+    private boolean ensureData() throws IOException {
+
+        if (this.closed)
+            throw new IOException("stream closed");
+
+        if (this.current != null && this.position < this.current.length)
+            return true;
+
+        if (this.current != null) {
+            if (this.nextToSchedule < this.totalStripes)
+                schedule(this.current);
+            this.current = null;
+        }
+
+        if (this.nextToRead >= this.totalStripes)
+            return false;
+
+        Stripe stripe = this.window[(int) (this.nextToRead % this.window.length)];
+        try {
+            stripe.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted reading stripe " + String.valueOf(this.nextToRead));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        this.nextToRead++;
+        this.current = stripe;
+        this.position = 0;
+        return true;
+    }
+
+    private void schedule(Stripe stripe) {
+        final long index = this.nextToSchedule++;
+        final long offset = index * this.stripeSize;
+        stripe.length = (int) Math.min(this.stripeSize, this.size - offset);
+        stripe.future = this.executor.submit(() -> {
+            readStripe(stripe, index, offset);
+            return null;
+        });
+    }
+
+    /**
+     * <p>
+     * Reads the stripe from its mirror, or from the next ones if it fails
+     * </p>
+     */
+    private void readStripe(Stripe stripe, long index, long offset) throws IOException {
+        int mirrors = this.channels.length;
+        int first = (int) (index % mirrors);
+        IOException error = null;
+        for (int n = 0; n < mirrors; n++) {
+            int mirror = (first + n) % mirrors;
+            if (this.closed)
+                throw new IOException("stream closed");
+            try {
+                long start = System.nanoTime();
+                readFully(this.channels[mirror], stripe.buffer, stripe.length, offset);
+                this.drives[mirror].getReadStats().onRead(System.nanoTime() - start);
+                return;
+            } catch (IOException e) {
+                if (error == null)
+                    error = e;
+                if (!this.closed)
+                    logger.error(e, "d:" + this.drives[mirror].getName() + " stripe:" + String.valueOf(index),
+                            SharedConstant.NOT_THROWN);
+            }
+        }
+        throw error;
+    }
+
+    private static void readFully(FileChannel channel, byte[] buffer, int length, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buffer, 0, length);
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, offset + bb.position());
+            if (n < 0)
+                throw new IOException("unexpected end of file at " + String.valueOf(offset + bb.position()));
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error(e, SharedConstant.NOT_THROWN);
+        }
+    }
+
+    private static class Stripe {
+        final byte[] buffer;
+        int length;
+        Future<?> future;
+
+        Stripe(byte[] buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -16,22 +16,17 @@
  */
 package io.odilon.virtualFileSystem.raid1;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -40,13 +35,12 @@ import org.apache.commons.io.FileUtils;
 import io.odilon.OdilonVersion;
 import io.odilon.error.OdilonObjectNotFoundException;
 import io.odilon.errors.InternalCriticalException;
+import io.odilon.file.SHA256Digest;
 import io.odilon.log.Logger;
 import io.odilon.model.ObjectMetadata;
 import io.odilon.model.ObjectStatus;
-import io.odilon.model.ServerConstant;
 import io.odilon.model.SharedConstant;
 import io.odilon.util.Check;
-import io.odilon.util.OdilonFileUtils;
 import io.odilon.virtualFileSystem.ObjectPath;
 import io.odilon.virtualFileSystem.model.Drive;
 import io.odilon.virtualFileSystem.model.ServerBucket;
@@ -121,8 +115,8 @@ public class RAIDOneUpdateObjectHandler extends RAIDOneTransactionHandler {
                 operation = updateObject(bucket, objectName, beforeHeadVersion);
 
                 /** copy new version as head version */
-                saveObjectDataFile(bucket, objectName, stream, srcFileName, afterHeadVersion);
-                saveObjectMetadata(bucket, objectName, srcFileName, contentType, afterHeadVersion, customTags);
+                String sha256 = saveObjectDataFile(bucket, objectName, stream, srcFileName, afterHeadVersion);
+                saveObjectMetadata(bucket, objectName, srcFileName, contentType, afterHeadVersion, customTags, sha256);
 
                 /** commit */
                 commitOK = operation.commit();
@@ -389,13 +383,13 @@ public class RAIDOneUpdateObjectHandler extends RAIDOneTransactionHandler {
         }
     }
 
-    private void saveObjectDataFile(ServerBucket bucket, String objectName, InputStream stream, String srcFileName,
+    private String saveObjectDataFile(ServerBucket bucket, String objectName, InputStream stream, String srcFileName,
             int newVersion) {
 
         int total_drives = getDriver().getDrivesAll().size();
-        byte[] buf = new byte[ServerConstant.BUFFER_SIZE];
+        MessageDigest digest = SHA256Digest.newInstance();
 
-        BufferedOutputStream out[] = new BufferedOutputStream[total_drives];
+        OutputStream out[] = new OutputStream[total_drives];
         InputStream sourceStream = null;
 
         boolean isMainException = false;
@@ -409,56 +403,12 @@ public class RAIDOneUpdateObjectHandler extends RAIDOneTransactionHandler {
 
                 ObjectPath path = new ObjectPath(drive, bucket.getId(), objectName);
                 String sPath = path.dataFilePath().toString();
-                out[n_d++] = new BufferedOutputStream(new FileOutputStream(sPath), ServerConstant.BUFFER_SIZE);
+                out[n_d++] = new FileOutputStream(sPath);
             }
-            int bytes_read = 0;
 
-            if (getDriver().getDrivesAll().size() < 2) {
-
-                while ((bytes_read = sourceStream.read(buf, 0, buf.length)) >= 0)
-                    for (int bytes = 0; bytes < total_drives; bytes++) {
-                        out[bytes].write(buf, 0, bytes_read);
-                    }
-            } else {
-
-                final int size = getDriver().getDrivesAll().size();
-                //ExecutorService executor = Executors.newFixedThreadPool(size);
-                ExecutorService executor = getVirtualFileSystemService().getExecutorService();
-
-                while ((bytes_read = sourceStream.read(buf, 0, buf.length)) >= 0) {
-
-                    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(size);
-
-                    for (int index = 0; index < total_drives; index++) {
-
-                        final int t_index = index;
-                        final int t_bytes_read = bytes_read;
-
-                        tasks.add(() -> {
-                            try {
-                                out[t_index].write(buf, 0, t_bytes_read);
-                                return Boolean.valueOf(true);
-                            } catch (Exception e) {
-                                logger.error(e, SharedConstant.NOT_THROWN);
-                                return Boolean.valueOf(false);
-                            }
-                        });
-                    }
-
-                    try {
-                        List<Future<Boolean>> future = executor.invokeAll(tasks, 5, TimeUnit.MINUTES);
-                        Iterator<Future<Boolean>> it = future.iterator();
-                        while (it.hasNext()) {
-                            if (!it.next().get())
-                                throw new InternalCriticalException(getDriver().objectInfo(bucket, objectName, srcFileName));
-                        }
-                    } catch (InterruptedException | ExecutionException e) {
-                        throw new InternalCriticalException(e);
-                    }
-
-                }
-
-            } // else
+            /** one writer per drive, see {@link RAIDOneMirrorWriter} */
+            RAIDOneMirrorWriter.copy(sourceStream, out, getVirtualFileSystemService().getExecutorService(),
+                    getVirtualFileSystemService().getBufferService(), digest);
 
         } catch (Exception e) {
             isMainException = true;
@@ -491,6 +441,7 @@ public class RAIDOneUpdateObjectHandler extends RAIDOneTransactionHandler {
             if (!isMainException && (secEx != null))
                 throw new InternalCriticalException(secEx);
         }
+        return SHA256Digest.toString(digest);
     }
 
     private void saveObjectMetadata(ObjectMetadata meta) {
@@ -507,13 +458,11 @@ public class RAIDOneUpdateObjectHandler extends RAIDOneTransactionHandler {
      * @param srcFileName
      */
     private void saveObjectMetadata(ServerBucket bucket, String objectName, String srcFileName, String contentType, int version,
-            Optional<List<String>> customTags) {
+            Optional<List<String>> customTags, String sha256) {
 
         Check.requireNonNullArgument(bucket, "bucket is null");
 
         OffsetDateTime now = OffsetDateTime.now();
-        String sha = null;
-        String basedrive = null;
 
         final List<ObjectMetadata> list = new ArrayList<ObjectMetadata>();
 
@@ -524,17 +473,6 @@ public class RAIDOneUpdateObjectHandler extends RAIDOneTransactionHandler {
             File file = path.dataFilePath().toFile();
 
             try {
-                String sha256 = OdilonFileUtils.calculateSHA256String(file);
-
-                if (sha == null) {
-                    sha = sha256;
-                    basedrive = drive.getName();
-                } else {
-                    if (!sha256.equals(sha))
-                        throw new InternalCriticalException("SHA 256 are not equal for drives -> " + basedrive + ":" + sha + " vs "
-                                + drive.getName() + ":" + sha256);
-                }
-
                 ObjectMetadata meta = new ObjectMetadata(bucket.getId(), objectName);
                 meta.fileName = srcFileName;
                 meta.appVersion = OdilonVersion.VERSION;
@@ -125,6 +125,14 @@ public final class Galois {
             122, -12, -11, -9, -13, -5, -21, -53, -117, 11, 22, 44, 88, -80, 125, -6, -23, -49, -125, 27, 54, 108, -40,
             -83, 71, -114 };
 
+    /**
+     * Products of all pairs of elements of the field,
+     * {@code MULTIPLICATION_TABLE[a][b] == multiply(a, b)}. A row is the product
+     * of one coefficient by every byte, the coding loop of {@link ReedSolomon}
+     * uses one row per coefficient instead of the log and exp tables (64 KB).
+     */
+    static final byte[][] MULTIPLICATION_TABLE = generateMultiplicationTable();
+
     /**
      * Adds two elements of the field. If you're in an inner loop, you should inline
      * this function: it's just XOR.
@@ -233,6 +241,19 @@ public final class Galois {
         return result;
     }
 
+    /**
+     * Generates the multiplication table.
+     */
+    public static byte[][] generateMultiplicationTable() {
+        byte[][] result = new byte[FIELD_SIZE][FIELD_SIZE];
+        for (int a = 0; a < FIELD_SIZE; a++) {
+            for (int b = 0; b < FIELD_SIZE; b++) {
+                result[a][b] = multiply((byte) a, (byte) b);
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns a list of all polynomials that can be used to generate the field.
      *
@@ -38,6 +38,9 @@ public class RAIDSixBlocks extends BaseObject {
     @JsonIgnore
     private List<File> encodedBlocks = new ArrayList<File>();
 
+    /** SHA-256 of each encoded block, same order as encodedBlocks */
+    @JsonIgnore
+    private List<String> sha256Blocks = new ArrayList<String>();
 
     @JsonProperty("fileSize")
     private long fileSize;
@@ -61,6 +64,14 @@ public class RAIDSixBlocks extends BaseObject {
         this.encodedBlocks = encodedBlocks;
     }
 
+    public List<String> getSha256Blocks() {
+        return sha256Blocks;
+    }
+
+    public void setSha256Blocks(List<String> sha256Blocks) {
+        this.sha256Blocks = sha256Blocks;
+    }
+
     @Override
     public String toJSON() {
         StringBuilder str = new StringBuilder();
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.odilon.cache.FileCacheService;
 import io.odilon.model.BaseObject;
 import io.odilon.model.ObjectMetadata;
+import io.odilon.service.BufferService;
 import io.odilon.util.Check;
 import io.odilon.virtualFileSystem.model.ServerBucket;
 import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
@@ -54,6 +55,10 @@ public class RAIDSixCoder extends BaseObject {
     protected FileCacheService getFileCacheService() {
         return getVirtualFileSystemService().getFileCacheService();
     }
+
+    protected BufferService getBufferService() {
+        return getVirtualFileSystemService().getBufferService();
+    }
     
     public String objectInfo(ServerBucket bucket, String objectName, String fileName) {
         return getDriver().objectInfo(bucket, objectName, fileName);
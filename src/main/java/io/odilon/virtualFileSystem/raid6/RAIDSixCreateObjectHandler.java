@@ -142,17 +142,10 @@ public class RAIDSixCreateObjectHandler extends RAIDSixTransactionObjectHandler
      */
     private void saveMetadata(RAIDSixBlocks ei, String srcFileName, String contentType, Optional<List<String>> customTags) {
 
-        List<String> shaBlocks = new ArrayList<String>();
+        /** calculated by the encoder while saving the blocks */
+        List<String> shaBlocks = new ArrayList<String>(ei.getSha256Blocks());
         StringBuilder etag_b = new StringBuilder();
 
-        ei.getEncodedBlocks().forEach(item -> {
-            try {
-                shaBlocks.add(OdilonFileUtils.calculateSHA256String(item));
-            } catch (Exception e) {
-                throw new InternalCriticalException(e,info());
-            }
-        });
-
         shaBlocks.forEach(item -> etag_b.append(item));
 
         String etag = null;
@@ -17,8 +17,9 @@
  */
 package io.odilon.virtualFileSystem.raid6;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -26,16 +27,36 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 import io.odilon.cache.FileCacheService;
 import io.odilon.errors.InternalCriticalException;
+import io.odilon.file.SHA256Digest;
 import io.odilon.log.Logger;
 import io.odilon.model.ObjectMetadata;
 import io.odilon.model.ServerConstant;
 import io.odilon.model.SharedConstant;
+import io.odilon.service.BufferService;
+import io.odilon.service.BufferService.PooledBuffer;
+import io.odilon.service.BufferService.PooledBuffers;
 import io.odilon.virtualFileSystem.model.Drive;
 import io.odilon.virtualFileSystem.model.LockService;
 import io.odilon.virtualFileSystem.model.ServerBucket;
@@ -85,23 +106,74 @@ public class RAIDSixDecoder extends RAIDSixCoder {
         return decode(meta, bucket, false);
     }
 
-    private File decode(ObjectMetadata meta, ServerBucket bucket, boolean isHead) {
+    /**
+     * <p>
+     * Returns the head version as a stream.<br/>
+     * If the decoded file is in the {@link FileCacheService} the stream reads it.
+     * Otherwise the chunks are decoded by a background task, which writes them to
+     * the file of the {@link FileCacheService} and adds it to the cache when it
+     * is complete. The stream returns the bytes as soon as they are written, the
+     * caller does not wait for the whole object to be decoded.
+     * </p>
+     * <p>
+     * MUST BE CALLED INSIDE THE CRITICAL ZONE (Object and Bucket read locks). The
+     * task holds its own read locks until the object is decoded, or until the
+     * stream is closed
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     */
+    public InputStream decodeHeadStream(ObjectMetadata meta, ServerBucket bucket) throws IOException {
 
-        String bucketName = meta.getBucketName();
-        String objectName = meta.getObjectName();
+        File file = getFileCacheService().get(bucket.getId(), meta.getObjectName(), Optional.empty());
 
-        int totalChunks = meta.getTotalBlocks() / this.getTotalShards();
+        if (file != null) {
+            getDriver().getVirtualFileSystemService().getSystemMonitorService().getCacheFileHitCounter().inc();
+            return Files.newInputStream(file.toPath());
+        }
+
+        getDriver().getVirtualFileSystemService().getSystemMonitorService().getCacheFileMissCounter().inc();
+
+        DecodeTask task = new DecodeTask(meta, bucket);
+        getVirtualFileSystemService().getExecutorService().execute(task);
+
+        if (!task.awaitLocked()) {
+            /** the task could not take the locks, decode in this thread (the miss is already counted) */
+            return Files.newInputStream(decodeToFileCache(meta, bucket, true).toPath());
+        }
+        return new DecodeTaskInputStream(task);
+    }
+
+    private File decode(ObjectMetadata meta, ServerBucket bucket, boolean isHead) {
 
         Optional<Integer> ver = isHead ? Optional.empty() : Optional.of(Integer.valueOf(meta.getVersion()));
-        int chunk = 0;
 
-        File file = getFileCacheService().get(bucket.getId(), objectName, ver);
+        File file = getFileCacheService().get(bucket.getId(), meta.getObjectName(), ver);
 
         if (file != null) {
             getDriver().getVirtualFileSystemService().getSystemMonitorService().getCacheFileHitCounter().inc();
             return file;
         }
         getDriver().getVirtualFileSystemService().getSystemMonitorService().getCacheFileMissCounter().inc();
+        return decodeToFileCache(meta, bucket, isHead);
+    }
+
+    /**
+     * <p>
+     * Decodes all the chunks to the file of the {@link FileCacheService} and adds
+     * it to the cache. Does not look up the cache nor update the hit/miss counters,
+     * the caller does
+     * </p>
+     */
+    private File decodeToFileCache(ObjectMetadata meta, ServerBucket bucket, boolean isHead) {
+
+        String bucketName = meta.getBucketName();
+        String objectName = meta.getObjectName();
+
+        int totalChunks = meta.getTotalBlocks() / this.getTotalShards();
+
+        Optional<Integer> ver = isHead ? Optional.empty() : Optional.of(Integer.valueOf(meta.getVersion()));
+        int chunk = 0;
+
         getFileCacheService().getLockService().getFileCacheLock(bucket.getId(), objectName, ver).writeLock().lock();
 
         try {
@@ -125,6 +197,119 @@ public class RAIDSixDecoder extends RAIDSixCoder {
         }
     }
 
+    /**
+     * <p>
+     * Returns the bytes [offset, offset + length) of the head version.<br/>
+     * If the decoded file is in the {@link FileCacheService} the range is read
+     * from the cached file, otherwise only the chunks that overlap the range are
+     * decoded. The range is not added to the {@link FileCacheService}.
+     * </p>
+     * <p>
+     * MUST BE CALLED INSIDE THE CRITICAL ZONE (Object and Bucket read locks). All
+     * the chunks of the range are decoded before returning, the stream does not
+     * read shards after the caller releases the locks
+     * </p>
+     * <p>
+     * Offsets refer to the stored data, ranges over encrypted objects must be
+     * resolved on the decrypted stream of the whole file
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     */
+    public InputStream decodeHeadRange(ObjectMetadata meta, ServerBucket bucket, long offset, long length) throws IOException {
+        return decodeRange(meta, bucket, true, offset, length);
+    }
+
+    /**
+     * <p>
+     * {@link ObjectMetadata} must be the one of the version to decode
+     * </p>
+     */
+    public InputStream decodeVersionRange(ObjectMetadata meta, ServerBucket bucket, long offset, long length) throws IOException {
+        return decodeRange(meta, bucket, false, offset, length);
+    }
+
+    private InputStream decodeRange(ObjectMetadata meta, ServerBucket bucket, boolean isHead, long offset, long length)
+            throws IOException {
+
+        Optional<Integer> ver = isHead ? Optional.empty() : Optional.of(Integer.valueOf(meta.getVersion()));
+
+        File file = getFileCacheService().get(bucket.getId(), meta.getObjectName(), ver);
+
+        if (file != null) {
+            getDriver().getVirtualFileSystemService().getSystemMonitorService().getCacheFileHitCounter().inc();
+            InputStream in = Files.newInputStream(file.toPath());
+            try {
+                in.skipNBytes(offset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return new BoundedInputStream(in, length);
+        }
+        getDriver().getVirtualFileSystemService().getSystemMonitorService().getCacheFileMissCounter().inc();
+        return decodeChunkRange(meta, bucket, isHead, offset, length);
+    }
+
+    /**
+     * <p>
+     * Decodes the chunks that overlap the range. A range within one chunk is served
+     * from the chunk buffer, a range over several chunks is written to a temporary
+     * file that is deleted when the stream is closed
+     * </p>
+     */
+    private InputStream decodeChunkRange(ObjectMetadata meta, ServerBucket bucket, boolean isHead, long offset, long length)
+            throws IOException {
+
+        int totalChunks = meta.getTotalBlocks() / getTotalShards();
+
+        if ((length <= 0) || (totalChunks == 0))
+            return InputStream.nullInputStream();
+
+        long chunkCapacity = (totalChunks > 1) ? getChunkCapacity(meta, bucket, isHead) : Long.MAX_VALUE;
+
+        int firstChunk = (int) (offset / chunkCapacity);
+        int lastChunk = (int) Math.min((offset + length - 1) / chunkCapacity, totalChunks - 1);
+
+        if (firstChunk > lastChunk)
+            return InputStream.nullInputStream();
+
+        if (firstChunk == lastChunk) {
+            PooledBuffer chunkBuffer = decodeChunkBytes(meta, bucket, firstChunk, isHead);
+            int chunkDataSize = ByteBuffer.wrap(chunkBuffer.array()).getInt();
+            long chunkStart = firstChunk * chunkCapacity;
+            int from = (int) (offset - chunkStart);
+            int to = (int) Math.min(chunkDataSize, offset + length - chunkStart);
+            if (from >= to) {
+                chunkBuffer.close();
+                return InputStream.nullInputStream();
+            }
+            return new ChunkInputStream(chunkBuffer, ServerConstant.BYTES_IN_INT + from, to - from);
+        }
+
+        File rangeFile = createRangeFile();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(rangeFile))) {
+            for (int chunk = firstChunk; chunk <= lastChunk; chunk++) {
+                try (PooledBuffer chunkBuffer = decodeChunkBytes(meta, bucket, chunk, isHead)) {
+                    int chunkDataSize = ByteBuffer.wrap(chunkBuffer.array()).getInt();
+                    long chunkStart = chunk * chunkCapacity;
+                    int from = (int) Math.max(0, offset - chunkStart);
+                    int to = (int) Math.min(chunkDataSize, offset + length - chunkStart);
+                    if (from < to)
+                        out.write(chunkBuffer.array(), ServerConstant.BYTES_IN_INT + from, to - from);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(rangeFile);
+            throw e;
+        }
+        return new RangeFileInputStream(rangeFile);
+    }
+
+    private File createRangeFile() throws IOException {
+        Drive drive = getMapDrivesRSDecode().values().iterator().next();
+        return File.createTempFile("range-", ".tmp", new File(drive.getTempDirPath()));
+    }
+
     private String objectInfo(String bucketName, String objectName, String tempPath) {
         return getDriver().objectInfo(bucketName, objectName, tempPath);
     }
@@ -135,89 +320,332 @@ public class RAIDSixDecoder extends RAIDSixCoder {
 
     private boolean decodeChunk(ObjectMetadata meta, ServerBucket bucket, int chunk, OutputStream out, boolean isHead) {
 
-        // Read in any of the shards that are present.
-        // (There should be checking here to make sure the input
-        // shards are the same size, but there isn't.)
+        try (PooledBuffer chunkBuffer = decodeChunkBytes(meta, bucket, chunk, isHead)) {
 
-        final byte[][] shards = new byte[this.total_shards][]; // BUFFER 3
-        final boolean[] shardPresent = new boolean[this.total_shards];
+            byte[] allBytes = chunkBuffer.array();
 
-        int shardSize = 0;
-        int shardCount = 0;
+            /** Extract the file length */
+            int fileSize = ByteBuffer.wrap(allBytes).getInt();
 
-        for (int disk = 0; disk < this.total_shards; disk++) {
+            out.write(allBytes, ServerConstant.BYTES_IN_INT, fileSize);
+        } catch (IOException e) {
+            throw new InternalCriticalException(e, objectInfo(meta));
+        }
+        return true;
+    }
 
-            /**
-             * encode -> DrivesAll, decode -> DrivesEnabled
-             */
+    /**
+     * <p>
+     * Returns the data shards of the chunk combined in one buffer. The first
+     * {@link ServerConstant#BYTES_IN_INT} bytes contain the length of the data of
+     * the chunk
+     * </p>
+     * <p>
+     * The buffer is taken from the {@link BufferService} and may be larger than the
+     * data shards, the caller must close it when the bytes are no longer used
+     * </p>
+     * <p>
+     * If all the data shards are present and have the same size, they are read
+     * directly into the buffer and the parity shards are not read. Parity is only
+     * read, and the missing shards reconstructed, when a data shard is missing,
+     * has a different size, can not be read or does not match its SHA-256
+     * </p>
+     */
+    private PooledBuffer decodeChunkBytes(ObjectMetadata meta, ServerBucket bucket, int chunk, boolean isHead) {
 
-            File shardFile = null;
-            Drive drive = this.getMapDrivesRSDecode().get(Integer.valueOf(disk));
-
-            if (drive != null) {
-                shardFile = (isHead)
-                        ? (new File(drive.getBucketObjectDataDirPath(bucket),
-                                meta.getObjectName() + "." + String.valueOf(chunk) + "." + String.valueOf(disk)))
-                        : (new File(
-                                drive.getBucketObjectDataDirPath(bucket) + File.separator + VirtualFileSystemService.VERSION_DIR,
-                                meta.getObjectName() + "." + String.valueOf(chunk) + "." + String.valueOf(disk) + ".v"
-                                        + String.valueOf(meta.getVersion())));
-            }
-
-            if ((shardFile != null) && (shardFile.exists())) {
-                shardSize = (int) shardFile.length();
-                shards[disk] = new byte[shardSize]; // BUFFER 4
-                shardPresent[disk] = true;
-                shardCount += 1;
-                try (InputStream in = new BufferedInputStream(new FileInputStream(shardFile))) {
-                    in.read(shards[disk], 0, shardSize);
-                } catch (FileNotFoundException e) {
-                    logger.error(getDriver().objectInfo(meta) + " | f:" + shardFile.getName()
-                            + (isHead ? "" : (" v:" + String.valueOf(meta.getVersion()))), SharedConstant.NOT_THROWN);
-                    shardPresent[disk] = false;
-                } catch (IOException e) {
-                    logger.error(objectInfo(meta) + " | f:" + shardFile.getName()
-                            + (isHead ? "" : (" v:" + String.valueOf(meta.getVersion()))), SharedConstant.NOT_THROWN);
-                    shardPresent[disk] = false;
-                }
+        final File[] shardFiles = new File[this.total_shards];
+        for (int disk = 0; disk < this.total_shards; disk++)
+            shardFiles[disk] = getShardFile(meta, bucket, chunk, disk, isHead);
+
+        final String[] sha256 = getShardSha256(meta, chunk);
+
+        PooledBuffer chunkBuffer = readDataShards(meta, shardFiles, sha256, isHead);
+        if (chunkBuffer != null)
+            return chunkBuffer;
+
+        return reconstructChunkBytes(meta, shardFiles, sha256, isHead);
+    }
+
+    /**
+     * <p>
+     * SHA-256 of each shard of the chunk, from {@link ObjectMetadata#getSha256Blocks()}
+     * (one per shard file, chunk after chunk, in disk order)
+     * </p>
+     * 
+     * @return null if {@code raid6.verifyShards} is off or the metadata does not
+     *         have the SHA-256 of all the shards
+     */
+    private String[] getShardSha256(ObjectMetadata meta, int chunk) {
+        if (!getVirtualFileSystemService().getServerSettings().isRAID6VerifyShards())
+            return null;
+        List<String> blocks = meta.getSha256Blocks();
+        if ((blocks == null) || (blocks.size() != meta.getTotalBlocks()) || (blocks.size() < (chunk + 1) * this.total_shards))
+            return null;
+        String[] sha256 = new String[this.total_shards];
+        for (int disk = 0; disk < this.total_shards; disk++)
+            sha256[disk] = blocks.get(chunk * this.total_shards + disk);
+        return sha256;
+    }
+
+    /**
+     * <p>
+     * Fast path, all the data shards are healthy.
+     * </p>
+     * 
+     * @return the data shards combined in one buffer or null if a data shard is
+     *         missing, short, can not be read or does not match its SHA-256
+     */
+    private PooledBuffer readDataShards(ObjectMetadata meta, File[] shardFiles, String[] sha256, boolean isHead) {
+
+        long shardSize = -1;
+        for (int disk = 0; disk < this.data_shards; disk++) {
+            File shardFile = shardFiles[disk];
+            if ((shardFile == null) || (!shardFile.exists()))
+                return null;
+            long length = shardFile.length();
+            if (shardSize == -1)
+                shardSize = length;
+            else if (length != shardSize)
+                return null;
+        }
+
+        if (shardSize <= 0)
+            return null;
+
+        final int size = (int) shardSize;
+        PooledBuffer chunkBuffer = getBufferService().acquire(size * this.data_shards);
+        byte[] allBytes = chunkBuffer.array();
+
+        File[] files = new File[this.data_shards];
+        byte[][] buffers = new byte[this.data_shards][];
+        int[] offsets = new int[this.data_shards];
+        for (int disk = 0; disk < this.data_shards; disk++) {
+            files[disk] = shardFiles[disk];
+            buffers[disk] = allBytes;
+            offsets[disk] = size * disk;
+        }
+
+        boolean[] read = readShards(meta, files, buffers, offsets, size, sha256, isHead);
+        for (int disk = 0; disk < this.data_shards; disk++) {
+            if (!read[disk]) {
+                chunkBuffer.close();
+                return null;
+            }
+        }
+        return chunkBuffer;
+    }
+
+    /**
+     * <p>
+     * Reads all the shards that are present, including parity, and uses
+     * Reed-Solomon to reconstruct the missing ones. A shard that does not match
+     * its SHA-256 is treated as missing
+     * </p>
+     */
+    private PooledBuffer reconstructChunkBytes(ObjectMetadata meta, File[] shardFiles, String[] sha256, boolean isHead) {
+
+        final boolean[] shardPresent = new boolean[this.total_shards];
+
+        /** all the shards of a chunk have the same size, the first one present decides */
+        int shardSize = -1;
+        for (int disk = 0; disk < this.total_shards; disk++) {
+            if ((shardFiles[disk] != null) && (shardFiles[disk].exists())) {
+                shardSize = (int) shardFiles[disk].length();
+                break;
             }
         }
 
-        /** We need at least DATA_SHARDS to be able to reconstruct the file */
-        if (shardCount < this.data_shards) {
+        if (shardSize <= 0) {
             throw new InternalCriticalException("We need at least " + String.valueOf(this.data_shards)
                     + " shards to be able to reconstruct the data file | " + objectInfo(meta) + " | f:"
-                    + (isHead ? "" : (" v:" + String.valueOf(meta.version))) + " | shardCount: " + String.valueOf(shardCount));
+                    + (isHead ? "" : (" v:" + String.valueOf(meta.version))) + " | shardCount: 0");
+        }
+
+        int shardCount = 0;
+
+        /**
+         * all the shards, including the missing ones that are filled in by
+         * Reed-Solomon, use the first shardSize bytes of a pooled buffer
+         */
+        try (PooledBuffers shardBuffers = getBufferService().acquire(this.total_shards, shardSize)) {
+
+            final byte[][] shards = shardBuffers.arrays();
+
+            File[] files = new File[this.total_shards];
+            int[] offsets = new int[this.total_shards];
+            for (int disk = 0; disk < this.total_shards; disk++) {
+                File shardFile = shardFiles[disk];
+                if ((shardFile == null) || (!shardFile.exists()))
+                    continue;
+                if (shardFile.length() != shardSize) {
+                    logger.error("shard size mismatch -> " + objectInfo(meta) + " | f:" + shardFile.getName() + " | size: "
+                            + String.valueOf(shardFile.length()) + " expected: " + String.valueOf(shardSize),
+                            SharedConstant.NOT_THROWN);
+                    continue;
+                }
+                files[disk] = shardFile;
+            }
+            boolean[] read = readShards(meta, files, shards, offsets, shardSize, sha256, isHead);
+            for (int disk = 0; disk < this.total_shards; disk++) {
+                if (read[disk]) {
+                    shardPresent[disk] = true;
+                    shardCount += 1;
+                }
+            }
+
+            /** We need at least DATA_SHARDS to be able to reconstruct the file */
+            if (shardCount < this.data_shards) {
+                throw new InternalCriticalException("We need at least " + String.valueOf(this.data_shards)
+                        + " shards to be able to reconstruct the data file | " + objectInfo(meta) + " | f:"
+                        + (isHead ? "" : (" v:" + String.valueOf(meta.version))) + " | shardCount: " + String.valueOf(shardCount));
+            }
+
+            /** Use Reed-Solomon to fill in the missing shards */
+            ReedSolomon reedSolomon = ReedSolomon.getInstance(this.data_shards, this.parity_shards);
+            reedSolomon.decodeMissing(shards, shardPresent, 0, shardSize);
+
+            /**
+             * Combine the data shards into one buffer for convenience.
+             */
+            PooledBuffer chunkBuffer = getBufferService().acquire(shardSize * this.data_shards);
+            byte[] allBytes = chunkBuffer.array();
+            for (int i = 0; i < this.data_shards; i++)
+                System.arraycopy(shards[i], 0, allBytes, shardSize * i, shardSize);
+
+            return chunkBuffer;
         }
+    }
+
+    /**
+     * <p>
+     * Bytes of data stored in each chunk of the object. The chunk size can be
+     * changed in the server settings, objects keep the size they were encoded with,
+     * which is the length of the data of the first chunk (the first chunk of an
+     * object with more than one chunk is full).<br/>
+     * The length is read from the header of the first data shard, if it can not be
+     * read the first chunk is decoded
+     * </p>
+     */
+    private long getChunkCapacity(ObjectMetadata meta, ServerBucket bucket, boolean isHead) {
+
+        File shardFile = getShardFile(meta, bucket, 0, 0, isHead);
 
-        /** Make empty buffers for the missing shards */
-        for (int i = 0; i < this.total_shards; i++) {
-            if (!shardPresent[i]) {
-                shards[i] = new byte[shardSize]; // BUFFER 5
+        if ((shardFile != null) && (shardFile.exists())) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(shardFile))) {
+                int dataSize = in.readInt();
+                if (dataSize > 0)
+                    return dataSize;
+            } catch (IOException e) {
+                logger.error(e, objectInfo(meta) + " | f:" + shardFile.getName(), SharedConstant.NOT_THROWN);
             }
         }
 
-        /** Use Reed-Solomon to fill in the missing shards */
-        ReedSolomon reedSolomon = new ReedSolomon(this.data_shards, this.parity_shards);
-        reedSolomon.decodeMissing(shards, shardPresent, 0, shardSize);
+        try (PooledBuffer chunkBuffer = decodeChunkBytes(meta, bucket, 0, isHead)) {
+            return ByteBuffer.wrap(chunkBuffer.array()).getInt();
+        }
+    }
 
-        /**
-         * Combine the data shards into one buffer for convenience. TBA: we have to
-         * change this to improve performance
-         */
-        byte[] allBytes = new byte[shardSize * this.data_shards]; // BUFFER 6
-        for (int i = 0; i < this.data_shards; i++)
-            System.arraycopy(shards[i], 0, allBytes, shardSize * i, shardSize);
+    /**
+     * <p>
+     * encode -> DrivesAll, decode -> DrivesEnabled
+     * </p>
+     * 
+     * @return null if the drive of the shard is not enabled
+     */
+    private File getShardFile(ObjectMetadata meta, ServerBucket bucket, int chunk, int disk, boolean isHead) {
 
-        /** Extract the file length */
-        int fileSize = ByteBuffer.wrap(allBytes).getInt();
+        Drive drive = this.getMapDrivesRSDecode().get(Integer.valueOf(disk));
 
-        try {
-            out.write(allBytes, ServerConstant.BYTES_IN_INT, fileSize);
+        if (drive == null)
+            return null;
+
+        return (isHead)
+                ? (new File(drive.getBucketObjectDataDirPath(bucket),
+                        meta.getObjectName() + "." + String.valueOf(chunk) + "." + String.valueOf(disk)))
+                : (new File(drive.getBucketObjectDataDirPath(bucket) + File.separator + VirtualFileSystemService.VERSION_DIR,
+                        meta.getObjectName() + "." + String.valueOf(chunk) + "." + String.valueOf(disk) + ".v"
+                                + String.valueOf(meta.getVersion())));
+    }
+
+    /**
+     * <p>
+     * Reads the shards in parallel, one task per drive. The first shard is read by
+     * the calling thread. Null files are skipped
+     * </p>
+     * 
+     * @param sha256 expected SHA-256 of each shard, or null if they are not
+     *               verified
+     * @return for each shard, true if it was read completely (and matches its
+     *         SHA-256)
+     */
+    private boolean[] readShards(ObjectMetadata meta, File[] files, byte[][] buffers, int[] offsets, int length,
+            String[] sha256, boolean isHead) {
+
+        boolean[] read = new boolean[files.length];
+        @SuppressWarnings("unchecked")
+        Future<Boolean>[] futures = new Future[files.length];
+
+        int first = -1;
+        ExecutorService executor = getVirtualFileSystemService().getExecutorService();
+
+        for (int n = 0; n < files.length; n++) {
+            if (files[n] == null)
+                continue;
+            if (first == -1) {
+                first = n;
+                continue;
+            }
+            final int shard = n;
+            futures[n] = executor.submit(() -> Boolean.valueOf(readShard(meta, files[shard], buffers[shard], offsets[shard],
+                    length, (sha256 == null) ? null : sha256[shard], isHead)));
+        }
+
+        if (first != -1)
+            read[first] = readShard(meta, files[first], buffers[first], offsets[first], length,
+                    (sha256 == null) ? null : sha256[first], isHead);
+
+        for (int n = 0; n < files.length; n++) {
+            if (futures[n] == null)
+                continue;
+            try {
+                read[n] = futures[n].get().booleanValue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalCriticalException(e, objectInfo(meta));
+            } catch (ExecutionException e) {
+                logger.error(e.getCause(), objectInfo(meta) + " | f:" + files[n].getName(), SharedConstant.NOT_THROWN);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * @param sha256 expected SHA-256 of the shard, or null if it is not verified
+     * @return false if the shard can not be read, it is shorter than
+     *         {@code length} or it does not match its SHA-256
+     */
+    private boolean readShard(ObjectMetadata meta, File shardFile, byte[] buffer, int offset, int length, String sha256,
+            boolean isHead) {
+        try (InputStream in = new FileInputStream(shardFile)) {
+            int read = in.readNBytes(buffer, offset, length);
+            if (read == length) {
+                if ((sha256 == null) || sha256.equals(SHA256Digest.toString(buffer, offset, length)))
+                    return true;
+                logger.error("shard SHA-256 mismatch -> " + objectInfo(meta) + " | f:" + shardFile.getName()
+                        + (isHead ? "" : (" v:" + String.valueOf(meta.getVersion()))), SharedConstant.NOT_THROWN);
+                return false;
+            }
+            logger.error("short shard -> " + objectInfo(meta) + " | f:" + shardFile.getName()
+                    + (isHead ? "" : (" v:" + String.valueOf(meta.getVersion()))) + " | read: " + String.valueOf(read),
+                    SharedConstant.NOT_THROWN);
+        } catch (FileNotFoundException e) {
+            logger.error(getDriver().objectInfo(meta) + " | f:" + shardFile.getName()
+                    + (isHead ? "" : (" v:" + String.valueOf(meta.getVersion()))), SharedConstant.NOT_THROWN);
         } catch (IOException e) {
-            throw new InternalCriticalException(e, objectInfo(meta));
+            logger.error(e, objectInfo(meta) + " | f:" + shardFile.getName()
+                    + (isHead ? "" : (" v:" + String.valueOf(meta.getVersion()))), SharedConstant.NOT_THROWN);
         }
-        return true;
+        return false;
     }
 
     private final Map<Integer, Drive> getMapDrivesRSDecode() {
@@ -227,4 +655,330 @@ public class RAIDSixDecoder extends RAIDSixCoder {
     private int getTotalShards() {
         return this.total_shards;
     }
+
+    /**
+     * <p>
+     * Range of a decoded chunk, the chunk buffer is returned to the
+     * {@link BufferService} when the stream is closed
+     * </p>
+     */
+    private static class ChunkInputStream extends ByteArrayInputStream {
+
+        private final PooledBuffer chunkBuffer;
+
+        ChunkInputStream(PooledBuffer chunkBuffer, int offset, int length) {
+            super(chunkBuffer.array(), offset, length);
+            this.chunkBuffer = chunkBuffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.chunkBuffer.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Temporary file with a decoded range, deleted when the stream is closed
+     * </p>
+     */
+    private static class RangeFileInputStream extends FileInputStream {
+
+        private final File file;
+
+        RangeFileInputStream(File file) throws FileNotFoundException {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                FileUtils.deleteQuietly(this.file);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Decodes the head version into the {@link FileCacheService}, publishing the
+     * number of bytes written after each chunk. The shards of the next chunk are
+     * read while the current one is written.
+     * </p>
+     * <p>
+     * The Object and Bucket read locks are taken with a timed {@code tryLock} of
+     * 0, that honours the queued writers (a plain {@code tryLock} would acquire
+     * the read lock ahead of them). If there is a writer waiting the task does not
+     * decode, the caller decodes the object in its own thread.
+     * </p>
+     * <p>
+     * The locks are released by this task when the object is decoded. If the
+     * stream is closed before that, the task is cancelled: it stops after the
+     * current chunk, deletes the partial file and releases the locks.
+     * </p>
+     */
+    private class DecodeTask implements Runnable {
+
+        private final ObjectMetadata meta;
+        private final ServerBucket bucket;
+
+        private final CountDownLatch lockedLatch = new CountDownLatch(1);
+        private volatile boolean locked = false;
+        private volatile boolean cancelled = false;
+
+        /** guarded by this */
+        private File file;
+        private long written = 0;
+        private boolean done = false;
+        private Throwable error;
+
+        DecodeTask(ObjectMetadata meta, ServerBucket bucket) {
+            this.meta = meta;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public void run() {
+
+            ReadWriteLock objectLock = getVirtualFileSystemService().getLockService().getObjectLock(this.bucket,
+                    this.meta.getObjectName());
+            ReadWriteLock bucketLock = getVirtualFileSystemService().getLockService().getBucketLock(this.bucket);
+
+            if (!tryReadLock(objectLock)) {
+                this.lockedLatch.countDown();
+                return;
+            }
+            if (!tryReadLock(bucketLock)) {
+                objectLock.readLock().unlock();
+                this.lockedLatch.countDown();
+                return;
+            }
+            this.locked = true;
+            this.lockedLatch.countDown();
+
+            try {
+                decodeHead();
+            } catch (CancellationException e) {
+                fail(e);
+            } catch (Throwable e) {
+                logger.error(e, objectInfo(this.meta), SharedConstant.NOT_THROWN);
+                fail(e);
+            } finally {
+                bucketLock.readLock().unlock();
+                objectLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * timed tryLock honours the fairness of the lock and the writers waiting
+         */
+        private boolean tryReadLock(ReadWriteLock lock) {
+            try {
+                return lock.readLock().tryLock(0, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * the reader closed the stream, the rest of the object is not needed
+         */
+        void cancel() {
+            this.cancelled = true;
+        }
+
+        private void decodeHead() throws IOException, InterruptedException, ExecutionException {
+
+            Long bucketId = this.bucket.getId();
+            String objectName = this.meta.getObjectName();
+            Optional<Integer> ver = Optional.empty();
+
+            ReadWriteLock fileCacheLock = getLockService().getFileCacheLock(bucketId, objectName, ver);
+            fileCacheLock.writeLock().lock();
+            try {
+                /** it may have been decoded by another thread while waiting */
+                File cached = getFileCacheService().get(bucketId, objectName, ver);
+                if (cached != null) {
+                    complete(cached, cached.length());
+                    return;
+                }
+
+                String tempPath = getFileCacheService().getFileCachePath(bucketId, objectName, ver);
+                File tempFile = new File(tempPath);
+                int totalChunks = this.meta.getTotalBlocks() / getTotalShards();
+                ExecutorService executor = getVirtualFileSystemService().getExecutorService();
+
+                Future<PooledBuffer> next = null;
+                try (OutputStream out = new FileOutputStream(tempFile)) {
+                    start(tempFile);
+                    next = (totalChunks > 0) ? executor.submit(chunkReader(0)) : null;
+                    for (int chunk = 0; chunk < totalChunks; chunk++) {
+                        if (this.cancelled)
+                            throw new CancellationException("stream closed -> " + objectInfo(this.meta));
+                        try (PooledBuffer chunkBuffer = next.get()) {
+                            next = (chunk + 1 < totalChunks) ? executor.submit(chunkReader(chunk + 1)) : null;
+                            byte[] allBytes = chunkBuffer.array();
+                            int fileSize = ByteBuffer.wrap(allBytes).getInt();
+                            out.write(allBytes, ServerConstant.BYTES_IN_INT, fileSize);
+                            publish(fileSize);
+                        }
+                    }
+                } catch (IOException | InterruptedException | ExecutionException | RuntimeException e) {
+                    releasePending(next);
+                    /** a partial file must not stay in the cache directory */
+                    FileUtils.deleteQuietly(tempFile);
+                    throw e;
+                }
+                getFileCacheService().put(bucketId, objectName, ver, tempFile, false);
+                complete(tempFile, tempFile.length());
+            } finally {
+                fileCacheLock.writeLock().unlock();
+            }
+        }
+
+        private Callable<PooledBuffer> chunkReader(final int chunk) {
+            return () -> decodeChunkBytes(this.meta, this.bucket, chunk, true);
+        }
+
+        /**
+         * <p>
+         * Returns the buffer of the chunk that was being read ahead when the decoding
+         * failed
+         * </p>
+         */
+        private void releasePending(Future<PooledBuffer> next) {
+            if ((next == null) || (next.isCancelled()))
+                return;
+            try {
+                next.get().close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                /** the chunk reader failed, there is no buffer to release */
+            }
+        }
+
+        boolean awaitLocked() throws IOException {
+            try {
+                this.lockedLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(objectInfo(this.meta));
+            }
+            return this.locked;
+        }
+
+        private synchronized void start(File file) {
+            this.file = file;
+            notifyAll();
+        }
+
+        private synchronized void publish(long bytes) {
+            this.written += bytes;
+            notifyAll();
+        }
+
+        private synchronized void complete(File file, long length) {
+            this.file = file;
+            this.written = length;
+            this.done = true;
+            notifyAll();
+        }
+
+        private synchronized void fail(Throwable e) {
+            this.error = e;
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * <p>
+         * Waits until there are bytes after {@code position} or the decoding ended
+         * </p>
+         * 
+         * @return number of bytes of the file that can be read
+         */
+        synchronized long awaitAvailable(long position) throws IOException {
+            while ((this.written <= position) && (!this.done)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(objectInfo(this.meta));
+                }
+            }
+            if (this.error != null)
+                throw new IOException("error decoding -> " + objectInfo(this.meta), this.error);
+            return this.written;
+        }
+
+        synchronized File getFile() {
+            return this.file;
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the file written by a {@link DecodeTask}, waiting for the bytes that
+     * have not been decoded yet
+     * </p>
+     */
+    private class DecodeTaskInputStream extends InputStream {
+
+        private final DecodeTask task;
+
+        private FileChannel channel;
+        private long position = 0;
+        private boolean closed = false;
+
+        DecodeTaskInputStream(DecodeTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return (n == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.closed)
+                throw new IOException("stream closed");
+            if (len == 0)
+                return 0;
+
+            long available = this.task.awaitAvailable(this.position);
+            if (this.position >= available)
+                return -1;
+
+            if (this.channel == null)
+                this.channel = FileChannel.open(this.task.getFile().toPath(), StandardOpenOption.READ);
+
+            int n = this.channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available - this.position)), this.position);
+            if (n > 0)
+                this.position += n;
+            return n;
+        }
+
+        /**
+         * <p>
+         * If the object is still being decoded the task is cancelled, so that it
+         * releases the Object and Bucket locks
+         * </p>
+         */
+        @Override
+        public void close() throws IOException {
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.task.cancel();
+            if (this.channel != null)
+                this.channel.close();
+        }
+    }
 }
@@ -97,9 +97,10 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * <ul>
  * <li><b>chunk#</b><br/>
  * 0..total_chunks, depending of the size of the file to encode
- * ({@link ServerConstant.MAX_CHUNK_SIZE} is 32 MB) this means that for files
- * smaller or equal to 32 MB there will be only one chunk (chunk=0), for files
- * up to 64 MB there will be 2 chunks and so on. <br/>
+ * ({@code raid6.chunkSizeMB}, by default 32 MB, at most
+ * {@link ServerConstant.MAX_CHUNK_SIZE}) this means that for files smaller or
+ * equal to 32 MB there will be only one chunk (chunk=0), for files up to 64 MB
+ * there will be 2 chunks and so on. <br/>
  * <br/>
  * </li>
  * <li><b>block#</b><br/>
@@ -114,7 +115,7 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * <p>
  * The total number of files once the src file is encoded are: <br/>
  * <br/>
- * (data+parity) * (file_size / MAX_CHUNK_SIZE ) rounded to the following
+ * (data+parity) * (file_size / chunk_size ) rounded to the following
  * integer. Examples:
  * </p>
  * <p>
@@ -163,8 +164,13 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
     @JsonIgnore
     private ApplicationContext applicationContext;
 
+    /** stateless, shared by all the update operations */
+    @JsonIgnore
+    private final RAIDSixUpdateObjectHandler updateHandler;
+
     public RAIDSixDriver(VirtualFileSystemService vfs, LockService vfsLockService) {
         super(vfs, vfsLockService);
+        this.updateHandler = new RAIDSixUpdateObjectHandler(this);
     }
 
     @Override
@@ -174,6 +180,20 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
         handler.sync(meta);
     }
 
+    /**
+     * <p>
+     * RAID 6: the head version is decoded into the {@link io.odilon.cache.FileCacheService} (if it
+     * is not there already). The stream returns the chunks as they are decoded
+     * (see {@link RAIDSixDecoder#decodeHeadStream})
+     * </p>
+     */
+    @Override
+    protected InputStream openInputStream(ServerBucket bucket, String objectName, ObjectMetadata meta) throws IOException {
+        RAIDSixDecoder decoder = new RAIDSixDecoder(this);
+        InputStream stream = decoder.decodeHeadStream(meta, bucket);
+        return (meta.isEncrypt()) ? getVirtualFileSystemService().getEncryptionService().decryptStream(stream) : stream;
+    }
+
     @Override
     public InputStream getInputStream(ServerBucket bucket, String objectName) throws IOException {
         Check.requireNonNullArgument(bucket, "bucket is null");
@@ -190,13 +210,8 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
                 checkIsAccesible(bucket);
                 ObjectMetadata meta = getDriverObjectMetadataInternal(bucket, objectName, true);
 
-                if ((meta != null) && meta.isAccesible()) {
-                    RAIDSixDecoder decoder = new RAIDSixDecoder(this);
-                    return (meta.isEncrypt())
-                            ? getVirtualFileSystemService().getEncryptionService()
-                                    .decryptStream(Files.newInputStream(decoder.decodeHead(meta, bucket).toPath()))
-                            : Files.newInputStream(decoder.decodeHead(meta, bucket).toPath());
-                }
+                if ((meta != null) && meta.isAccesible())
+                    return openInputStream(bucket, objectName, meta);
                 throw new OdilonObjectNotFoundException(objectInfo(bucket, objectName));
             } catch (OdilonObjectNotFoundException e) {
                 throw e;
@@ -250,6 +265,83 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
         }
     }
 
+    /**
+     * <p>
+     * RAID 6. If the object is not encrypted only the chunks that overlap the range
+     * are decoded (see {@link RAIDSixDecoder#decodeHeadRange}). Encrypted objects
+     * are decoded entirely and the range is read from the decrypted stream
+     * </p>
+     * <b>IMPORTANT</b> -> caller must close the {@link InputStream} returned
+     */
+    @Override
+    public InputStream getInputStream(ServerBucket bucket, String objectName, long offset, long length) throws IOException {
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireNonNullArgument(objectName, "objectName is null or empty | b:" + bucket.getName());
+
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                checkExistBucket(bucket);
+                checkIsAccesible(bucket);
+                ObjectMetadata meta = getDriverObjectMetadataInternal(bucket, objectName, true);
+
+                if ((meta != null) && meta.isAccesible()) {
+                    RAIDSixDecoder decoder = new RAIDSixDecoder(this);
+                    return (meta.isEncrypt()) ? getRangeInputStream(decoder.decodeHead(meta, bucket).toPath(), true, offset, length)
+                            : decoder.decodeHeadRange(meta, bucket, offset, length);
+                }
+                throw new OdilonObjectNotFoundException(objectInfo(bucket, objectName));
+            } catch (OdilonObjectNotFoundException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
+    @Override
+    public InputStream getObjectVersionInputStream(ServerBucket bucket, String objectName, int version, long offset,
+            long length) {
+
+        Check.requireNonNullArgument(bucket, "bucket is null");
+        Check.requireNonNullArgument(objectName, "objectName is null or empty | b:" + bucket.getName());
+        objectReadLock(bucket, objectName);
+        try {
+            bucketReadLock(bucket);
+            try {
+                /** must be executed inside the critical zone */
+                checkExistBucket(bucket);
+                checkIsAccesible(bucket);
+
+                /** RAID 6: read is from any of the drives */
+                Drive readDrive = getObjectMetadataReadDrive(bucket, objectName);
+                ObjectMetadata meta = readDrive.getObjectMetadataVersion(bucket, objectName, version);
+                if ((meta == null) || (!meta.isAccesible()))
+                    throw new OdilonObjectNotFoundException("object version does not exists for -> b:"
+                            + objectInfo(bucket, objectName) + " | v:" + String.valueOf(version));
+
+                RAIDSixDecoder decoder = new RAIDSixDecoder(this);
+                return (meta.isEncrypt())
+                        ? getRangeInputStream(decoder.decodeVersion(meta, bucket).toPath(), true, offset, length)
+                        : decoder.decodeVersionRange(meta, bucket, offset, length);
+
+            } catch (OdilonObjectNotFoundException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new InternalCriticalException(e, objectInfo(bucket, objectName) + " | v:" + String.valueOf(version));
+            } finally {
+                bucketReadUnLock(bucket);
+            }
+        } finally {
+            objectReadUnLock(bucket, objectName);
+        }
+    }
+
     /**
      * <p>
      * falta completar
@@ -513,8 +605,7 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
         Check.requireNonNullStringArgument(fileName, "fileName is null | b: " + bucket.getName() + " o:" + objectName);
         Check.requireNonNullArgument(stream, "InpuStream can not null -> b:" + bucket.getName() + " | o:" + objectName);
         if (exists(bucket, objectName)) {
-            RAIDSixUpdateObjectHandler updateAgent = new RAIDSixUpdateObjectHandler(this);
-            updateAgent.update(bucket, objectName, stream, fileName, contentType, customTags);
+            getUpdateHandler().update(bucket, objectName, stream, fileName, contentType, customTags);
             getVirtualFileSystemService().getSystemMonitorService().getUpdateObjectCounter().inc();
         } else {
             RAIDSixCreateObjectHandler createAgent = new RAIDSixCreateObjectHandler(this, bucket, objectName);
@@ -526,8 +617,7 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
     @Override
     public void putObjectMetadata(ObjectMetadata meta) {
         Check.requireNonNullArgument(meta, "meta is null");
-        RAIDSixUpdateObjectHandler updateAgent = new RAIDSixUpdateObjectHandler(this);
-        updateAgent.updateObjectMetadataHeadVersion(meta);
+        getUpdateHandler().updateObjectMetadataHeadVersion(meta);
         getVirtualFileSystemService().getSystemMonitorService().getUpdateObjectCounter().inc();
     }
 
@@ -689,8 +779,7 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
     @Override
     public ObjectMetadata restorePreviousVersion(ServerBucket bucket, String objectName) {
         Check.requireNonNullArgument(bucket, "bucket is null");
-        RAIDSixUpdateObjectHandler agent = new RAIDSixUpdateObjectHandler(this);
-        return agent.restorePreviousVersion(bucket, objectName);
+        return getUpdateHandler().restorePreviousVersion(bucket, objectName);
     }
 
     @Override
@@ -921,4 +1010,8 @@ public class RAIDSixDriver extends BaseIODriver implements ApplicationContextAwa
         }
         return files;
     }
+
+    private RAIDSixUpdateObjectHandler getUpdateHandler() {
+        return this.updateHandler;
+    }
 }
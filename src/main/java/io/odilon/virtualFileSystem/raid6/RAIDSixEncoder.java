@@ -21,8 +21,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -32,6 +37,8 @@ import io.odilon.file.ParallelFileCoypAgent;
 import io.odilon.log.Logger;
 import io.odilon.model.ObjectMetadata;
 import io.odilon.model.ServerConstant;
+import io.odilon.service.BufferService.PooledBuffer;
+import io.odilon.service.BufferService.PooledBuffers;
 import io.odilon.util.Check;
 import io.odilon.virtualFileSystem.model.Drive;
 import io.odilon.virtualFileSystem.model.ServerBucket;
@@ -45,6 +52,11 @@ import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
  * Encodes {@link InputStream} into multiple block files in the File System
  * using {@link https://en.wikipedia.org/wiki/Erasure_code}.
  * </p>
+ * <p>
+ * Chunks are processed in a pipeline: while chunk N is read from the
+ * {@link InputStream}, chunk N-1 is encoded and chunk N-2 is written to the
+ * drives, each stage in a thread of the VirtualFileSystem's ExecutorService.
+ * </p>
  * 
  * @author atolomei@novamens.com (Alejandro Tolomei)
  */
@@ -68,6 +80,10 @@ public class RAIDSixEncoder extends RAIDSixCoder {
     @JsonIgnore
     private final int total_shards;
 
+    /** bytes of each chunk, including the header with the length of the data */
+    @JsonIgnore
+    private final int chunkSize;
+
     @JsonIgnore
     private RAIDSixBlocks encodedInfo;
 
@@ -103,6 +119,7 @@ public class RAIDSixEncoder extends RAIDSixCoder {
         this.data_shards = getVirtualFileSystemService().getServerSettings().getRAID6DataDrives();
         this.partiy_shards = getVirtualFileSystemService().getServerSettings().getRAID6ParityDrives();
         this.total_shards = data_shards + partiy_shards;
+        this.chunkSize = getVirtualFileSystemService().getServerSettings().getRAID6ChunkSize();
     }
 
     /**
@@ -160,12 +177,44 @@ public class RAIDSixEncoder extends RAIDSixCoder {
         this.chunk = 0;
         this.encodedInfo = new RAIDSixBlocks();
 
-        boolean done = false;
+        ExecutorService executor = getVirtualFileSystemService().getExecutorService();
+
+        EncodedChunk next = null;
+        Future<EncodedChunk> encoding = null;
+        Future<EncodedChunk> writing = null;
 
         try (is) {
-            while (!done)
-                done = encodeChunk(is, bucket, objectName, chunk++, version);
+            boolean eof = false;
+            while ((!eof) || (encoding != null) || (writing != null)) {
+
+                /** read chunk N while chunk N-1 is encoded and chunk N-2 is written */
+                if (!eof) {
+                    next = readChunk(is, bucket, objectName, this.chunk++);
+                    eof = (next == null) || next.eof;
+                }
+
+                if (writing != null) {
+                    Future<EncodedChunk> written = writing;
+                    writing = null;
+                    completeWrite(written.get(), bucket, objectName);
+                }
+
+                if (encoding != null) {
+                    Future<EncodedChunk> encoded = encoding;
+                    encoding = null;
+                    writing = executor.submit(writer(encoded.get(), bucket, objectName, version));
+                }
+
+                if (next != null) {
+                    encoding = executor.submit(encoder(next));
+                    next = null;
+                }
+            }
         } catch (Exception e) {
+            if (next != null)
+                next.close();
+            release(encoding);
+            release(writing);
             throw new InternalCriticalException(e, "o:" + objectName);
         }
         this.encodedInfo.setFileSize(this.fileSize);
@@ -173,17 +222,24 @@ public class RAIDSixEncoder extends RAIDSixCoder {
     }
 
     /**
+     * <p>
+     * Reads the next chunk from the {@link InputStream}. The first
+     * {@link ServerConstant#BYTES_IN_INT} bytes of the buffer contain the length of
+     * the data of the chunk
+     * </p>
      * 
-     * @param is
+     * @return null if there are no more bytes to read
      */
-    public boolean encodeChunk(InputStream is, ServerBucket bucket, String objectName, int chunk, Optional<Integer> o_version) {
+    private EncodedChunk readChunk(InputStream is, ServerBucket bucket, String objectName, int chunk) {
 
         // BUFFER 1
-        final byte[] allBytes = new byte[ServerConstant.MAX_CHUNK_SIZE];
+        PooledBuffer chunkBuffer = getBufferService().acquire(this.chunkSize);
+
+        final byte[] allBytes = chunkBuffer.array();
         int totalBytesRead = 0;
         boolean eof = false;
         try {
-            final int maxBytesToRead = ServerConstant.MAX_CHUNK_SIZE - ServerConstant.BYTES_IN_INT;
+            final int maxBytesToRead = this.chunkSize - ServerConstant.BYTES_IN_INT;
             boolean done = false;
             int bytesRead = 0;
             while (!done) {
@@ -195,11 +251,14 @@ public class RAIDSixEncoder extends RAIDSixCoder {
                 done = eof || (totalBytesRead == maxBytesToRead);
             }
         } catch (IOException e) {
+            chunkBuffer.close();
             throw new InternalCriticalException(e, " reading inputStream | " + getDriver().objectInfo(bucket, objectName));
         }
 
-        if (totalBytesRead == 0)
-            return true;
+        if (totalBytesRead == 0) {
+            chunkBuffer.close();
+            return null;
+        }
 
         this.fileSize += totalBytesRead;
 
@@ -208,58 +267,129 @@ public class RAIDSixEncoder extends RAIDSixCoder {
         final int storedSize = totalBytesRead + ServerConstant.BYTES_IN_INT;
         final int shardSize = (storedSize + data_shards - 1) / data_shards;
 
-        // BUFFER 2
-        byte[][] shards = new byte[total_shards][shardSize];
+        /**
+         * the buffer is reused, the padding of the last shard must not contain data of
+         * a previous chunk
+         */
+        Arrays.fill(allBytes, storedSize, shardSize * data_shards, (byte) 0);
+
+        return new EncodedChunk(chunk, chunkBuffer, shardSize, eof);
+    }
+
+    /**
+     * <p>
+     * Splits the chunk in data shards and uses Reed-Solomon to calculate the
+     * parity. The chunk buffer is released as soon as the data shards are filled
+     * </p>
+     */
+    private Callable<EncodedChunk> encoder(final EncodedChunk encodedChunk) {
+        return () -> {
+            try {
+                // BUFFER 2
+                encodedChunk.shardBuffers = getBufferService().acquire(total_shards, encodedChunk.shardSize);
 
-        /** Fill in the data shards */
-        for (int i = 0; i < data_shards; i++)
-            System.arraycopy(allBytes, i * shardSize, shards[i], 0, shardSize);
+                byte[][] shards = encodedChunk.shardBuffers.arrays();
+                byte[] allBytes = encodedChunk.chunkBuffer.array();
 
-        /** Use Reed-Solomon to calculate the parity. */
-        ReedSolomon reedSolomon = new ReedSolomon(data_shards, partiy_shards);
-        reedSolomon.encodeParity(shards, 0, shardSize);
+                /** Fill in the data shards */
+                for (int i = 0; i < data_shards; i++)
+                    System.arraycopy(allBytes, i * encodedChunk.shardSize, shards[i], 0, encodedChunk.shardSize);
 
-        /**
-         * Write out the resulting files. zDrives is DrivesEnabled normally, or
-         * DrivesAll when it is called from an RaidSixDriveImporter (in the process to
-         * become "enabled")
-         */
+                encodedChunk.chunkBuffer.close();
 
-        /**
-         * Parallel copy
-         */
-        List<File> destination = new ArrayList<File>();
-        for (int disk = 0; disk < total_shards; disk++) {
-            if (isWrite(disk)) {
-                String dirPath = getDrives().get(disk).getBucketObjectDataDirPath(bucket)
-                        + ((o_version.isEmpty()) ? "" : (File.separator + VirtualFileSystemService.VERSION_DIR));
-                String name = objectName + "." + String.valueOf(chunk) + "." + String.valueOf(disk)
-                        + (o_version.isEmpty() ? "" : "v." + String.valueOf(o_version.get().intValue()));
-                destination.add(new File(dirPath, name));
+                /** Use Reed-Solomon to calculate the parity. */
+                ReedSolomon reedSolomon = ReedSolomon.getInstance(data_shards, partiy_shards);
+                reedSolomon.encodeParity(shards, 0, encodedChunk.shardSize);
+                return encodedChunk;
+
+            } catch (RuntimeException e) {
+                encodedChunk.close();
+                throw e;
             }
-        }
+        };
+    }
+
+    /**
+     * <p>
+     * Write out the resulting files. zDrives is DrivesEnabled normally, or
+     * DrivesAll when it is called from an RaidSixDriveImporter (in the process to
+     * become "enabled")
+     * </p>
+     */
+    private Callable<EncodedChunk> writer(final EncodedChunk encodedChunk, ServerBucket bucket, String objectName,
+            Optional<Integer> o_version) {
+        return () -> {
+            try {
+                byte[][] shards = encodedChunk.shardBuffers.arrays();
+
+                /**
+                 * Parallel copy
+                 */
+                List<File> destination = new ArrayList<File>();
+                List<byte[]> source = new ArrayList<byte[]>();
+                for (int disk = 0; disk < total_shards; disk++) {
+                    if (isWrite(disk)) {
+                        String dirPath = getDrives().get(disk).getBucketObjectDataDirPath(bucket)
+                                + ((o_version.isEmpty()) ? "" : (File.separator + VirtualFileSystemService.VERSION_DIR));
+                        String name = objectName + "." + String.valueOf(encodedChunk.chunk) + "." + String.valueOf(disk)
+                                + (o_version.isEmpty() ? "" : "v." + String.valueOf(o_version.get().intValue()));
+                        destination.add(new File(dirPath, name));
+                        source.add(shards[disk]);
+                    }
+                }
+
+                /**
+                 * save in parallel (using the VirtualFileSystem 's ExecutorService). Only
+                 * shardSize bytes of each buffer are written
+                 */
+                ParallelFileCoypAgent agent = new ParallelFileCoypAgent(source.toArray(new byte[0][]), encodedChunk.shardSize,
+                        destination);
+                agent.setExecutor(getVirtualFileSystemService().getExecutorService());
+
+                encodedChunk.isOk = agent.execute();
+                encodedChunk.destination = destination;
+                encodedChunk.sha256 = agent.getSha256();
+                return encodedChunk;
+
+            } finally {
+                encodedChunk.close();
+            }
+        };
+    }
 
-        /** save in parallel (using the VirtualFileSystem 's ExecutorService) */
-        ParallelFileCoypAgent agent = new ParallelFileCoypAgent(shards, destination);
-        agent.setExecutor(getVirtualFileSystemService().getExecutorService());
-        
-        boolean isOk = agent.execute();
+    /**
+     * <p>
+     * Called by the encoding thread in chunk order, the blocks are added to the
+     * {@link RAIDSixBlocks} in the same order they were before the pipeline
+     * </p>
+     */
+    private void completeWrite(EncodedChunk encodedChunk, ServerBucket bucket, String objectName) {
 
-        destination.forEach(file -> this.encodedInfo.getEncodedBlocks().add(file));
+        encodedChunk.destination.forEach(file -> this.encodedInfo.getEncodedBlocks().add(file));
 
-        if (!isOk)
+        if (!encodedChunk.isOk)
             throw new InternalCriticalException(objectInfo(bucket, objectName));
-        
-        /**
-        if (logger.isDebugEnabled()) {
-            if (getVirtualFileSystemService().getExecutorService() instanceof ThreadPoolExecutor) {
-                logger.debug("Pool active count -> " + ((ThreadPoolExecutor) getVirtualFileSystemService().getExecutorService()).getActiveCount());
-                logger.debug("Pool size -> " + ((ThreadPoolExecutor) getVirtualFileSystemService().getExecutorService()).getPoolSize());
-            } 
+
+        /** calculated by the agent while saving, the blocks do not have to be read again */
+        this.encodedInfo.getSha256Blocks().addAll(encodedChunk.sha256);
+    }
+
+    /**
+     * <p>
+     * Waits for a stage that is still running after an error and returns its
+     * buffers, the shard files must not be written after the encoder returns
+     * </p>
+     */
+    private void release(Future<EncodedChunk> stage) {
+        if (stage == null)
+            return;
+        try {
+            stage.get().close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            /** the stage failed and released its buffers */
         }
-        **/
-        
-        return eof;
     }
 
     protected boolean isWrite(int disk) {
@@ -269,4 +399,37 @@ public class RAIDSixEncoder extends RAIDSixCoder {
     protected List<Drive> getDrives() {
         return zDrives;
     }
+
+    /**
+     * <p>
+     * A chunk moving through the encoding pipeline (read -> encode -> write). Only
+     * one stage uses it at a time
+     * </p>
+     */
+    private static class EncodedChunk {
+
+        final int chunk;
+        final int shardSize;
+        final boolean eof;
+        final PooledBuffer chunkBuffer;
+
+        PooledBuffers shardBuffers;
+
+        boolean isOk = false;
+        List<File> destination;
+        List<String> sha256;
+
+        EncodedChunk(int chunk, PooledBuffer chunkBuffer, int shardSize, boolean eof) {
+            this.chunk = chunk;
+            this.chunkBuffer = chunkBuffer;
+            this.shardSize = shardSize;
+            this.eof = eof;
+        }
+
+        void close() {
+            this.chunkBuffer.close();
+            if (this.shardBuffers != null)
+                this.shardBuffers.close();
+        }
+    }
 }
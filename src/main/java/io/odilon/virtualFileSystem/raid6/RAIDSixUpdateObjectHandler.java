@@ -444,18 +444,11 @@ public class RAIDSixUpdateObjectHandler extends RAIDSixTransactionHandler {
 
         Check.requireNonNullArgument(bucket, "bucket is null");
 
-        List<String> shaBlocks = new ArrayList<String>();
+        /** calculated by the encoder while saving the blocks */
+        List<String> shaBlocks = new ArrayList<String>(ei.getSha256Blocks());
         StringBuilder etag_b = new StringBuilder();
         final String bucketName = bucket.getName();
 
-        ei.getEncodedBlocks().forEach(item -> {
-            try {
-                shaBlocks.add(OdilonFileUtils.calculateSHA256String(item));
-            } catch (Exception e) {
-                throw new InternalCriticalException(e, objectInfo(bucketName, objectName, item.getName()));
-            }
-        });
-
         shaBlocks.forEach(item -> etag_b.append(item));
         String etag = null;
 
@@ -32,13 +32,46 @@
 
 package io.odilon.virtualFileSystem.raid6;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Reed-Solomon Coding over 8-bit values.
  * 
  * Copyright (c) 2015 Backblaze
+ * 
+ * <p>
+ * Instances are thread safe, use {@link #getInstance(int, int)} to share one
+ * coder per configuration. The inverted decode matrix of each pattern of
+ * missing shards is kept in a small LRU cache, so that degraded reads do not
+ * invert the matrix for every chunk.
+ * </p>
  */
 public class ReedSolomon {
 
+    /**
+     * Inverted decode matrices kept per coder (one per pattern of missing shards)
+     */
+    static final int DECODE_CACHE_SIZE = 64;
+
+    private static final Map<Integer, ReedSolomon> instances = new ConcurrentHashMap<Integer, ReedSolomon>();
+
+    /**
+     * Returns the shared coder for the configuration
+     */
+    public static ReedSolomon getInstance(int dataShardCount, int parityShardCount) {
+        return instances.computeIfAbsent(Integer.valueOf((dataShardCount << 16) | parityShardCount),
+                key -> new ReedSolomon(dataShardCount, parityShardCount));
+    }
+
+    /**
+     * Bytes of each shard processed at a time by {@link #codeSomeShards}
+     */
+    static final int CODING_BLOCK_SIZE = 8 * 1024;
+
     private final int dataShardCount;
     private final int parityShardCount;
     private final int totalShardCount;
@@ -50,6 +83,19 @@ public class ReedSolomon {
      */
     private final byte[][] parityRows;
 
+    /**
+     * Rows of the inverted sub-matrix, keyed by the bitmap of present shards.
+     * Access ordered, the least recently used pattern is removed.
+     */
+    @SuppressWarnings("serial")
+    private final Map<Long, byte[][]> decodeRowsCache = Collections
+            .synchronizedMap(new LinkedHashMap<Long, byte[][]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, byte[][]> eldest) {
+                    return size() > DECODE_CACHE_SIZE;
+                }
+            });
+
     /**
      * Initializes a new encoder/decoder.
      */
@@ -164,36 +210,25 @@ public class ReedSolomon {
             throw new IllegalArgumentException("Not enough shards present");
         }
 
-        // Pull out the rows of the matrix that correspond to the
-        // shards that we have and build a square matrix. This
-        // matrix could be used to generate the shards that we have
-        // from the original data.
-        //
-        // Also, pull out an array holding just the shards that
-        // correspond to the rows of the submatrix. These shards
-        // will be the input to the decoding process that re-creates
-        // the missing data shards.
-        Matrix subMatrix = new Matrix(dataShardCount, dataShardCount);
+        // Pull out an array holding just the shards that correspond
+        // to the rows of the submatrix (the first dataShardCount
+        // shards present). These shards will be the input to the
+        // decoding process that re-creates the missing data shards.
         byte[][] subShards = new byte[dataShardCount][];
         {
             int subMatrixRow = 0;
             for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
                 if (shardPresent[matrixRow]) {
-                    for (int c = 0; c < dataShardCount; c++) {
-                        subMatrix.set(subMatrixRow, c, matrix.get(matrixRow, c));
-                    }
                     subShards[subMatrixRow] = shards[matrixRow];
                     subMatrixRow += 1;
                 }
             }
         }
 
-        // Invert the matrix, so we can go from the encoded shards
-        // back to the original data. Then pull out the row that
-        // generates the shard that we want to decode. Note that
-        // since this matrix maps back to the orginal data, it can
-        // be used to create a data shard, but not a parity shard.
-        Matrix dataDecodeMatrix = subMatrix.invert();
+        // Rows of the inverted submatrix, they map the shards that
+        // we have back to the original data. The inversion only
+        // depends on which shards are present, it is cached.
+        byte[][] dataDecodeRows = getDecodeRows(shardPresent);
 
         // Re-create any data shards that were missing.
         //
@@ -206,7 +241,7 @@ public class ReedSolomon {
         for (int iShard = 0; iShard < dataShardCount; iShard++) {
             if (!shardPresent[iShard]) {
                 outputs[outputCount] = shards[iShard];
-                matrixRows[outputCount] = dataDecodeMatrix.getRow(iShard);
+                matrixRows[outputCount] = dataDecodeRows[iShard];
                 outputCount += 1;
             }
         }
@@ -229,6 +264,63 @@ public class ReedSolomon {
         codeSomeShards(matrixRows, shards, outputs, outputCount, offset, byteCount);
     }
 
+    /**
+     * Returns the rows of the inverse of the square matrix made of the rows of
+     * the first {@code dataShardCount} shards present.
+     *
+     * The result is cached by pattern of present shards, the arrays returned must
+     * not be modified.
+     */
+    private byte[][] getDecodeRows(boolean[] shardPresent) {
+
+        // The bitmap only fits in a long with up to 64 shards.
+        Long key = null;
+        if (totalShardCount <= Long.SIZE) {
+            long bitmap = 0;
+            for (int i = 0; i < totalShardCount; i++) {
+                if (shardPresent[i]) {
+                    bitmap |= (1L << i);
+                }
+            }
+            key = Long.valueOf(bitmap);
+            byte[][] cached = decodeRowsCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // Pull out the rows of the matrix that correspond to the
+        // shards that we have and build a square matrix. This
+        // matrix could be used to generate the shards that we have
+        // from the original data.
+        Matrix subMatrix = new Matrix(dataShardCount, dataShardCount);
+        int subMatrixRow = 0;
+        for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
+            if (shardPresent[matrixRow]) {
+                for (int c = 0; c < dataShardCount; c++) {
+                    subMatrix.set(subMatrixRow, c, matrix.get(matrixRow, c));
+                }
+                subMatrixRow += 1;
+            }
+        }
+
+        // Invert the matrix, so we can go from the encoded shards
+        // back to the original data. Note that since this matrix
+        // maps back to the orginal data, it can be used to create a
+        // data shard, but not a parity shard.
+        Matrix dataDecodeMatrix = subMatrix.invert();
+
+        byte[][] rows = new byte[dataShardCount][];
+        for (int i = 0; i < dataShardCount; i++) {
+            rows[i] = dataDecodeMatrix.getRow(i);
+        }
+
+        if (key != null) {
+            decodeRowsCache.put(key, rows);
+        }
+        return rows;
+    }
+
     /**
      * Checks the consistency of arguments passed to public methods.
      */
@@ -283,25 +375,64 @@ public class ReedSolomon {
         // This is the inner loop. It needs to be fast. Be careful
         // if you change it.
         //
-        // Note that dataShardCount is final in the class, so the
-        // compiler can load it just once, before the loop. Explicitly
-        // adding a local variable does not make it faster.
+        // The loop goes output by output and input by input, and
+        // the inner loop runs over the bytes of one block. For each
+        // coefficient of the matrix the row of the multiplication
+        // table is looked up once, so the inner loop is a table
+        // lookup and an XOR on sequential memory. Coefficients 0 and
+        // 1 are frequent (the decode matrix is mostly identity), they
+        // are skipped or done with a plain XOR that the JIT compiler
+        // vectorizes.
         //
-        // I have tried inlining Galois.multiply(), but it doesn't
-        // make things any faster. The JIT compiler is known to inline
-        // methods, so it's probably already doing so.
+        // The bytes are processed in blocks of CODING_BLOCK_SIZE so
+        // that the output block stays in the L1 cache while all the
+        // inputs are added to it.
         //
-        // This method has been timed and compared with a C implementation.
-        // This Java version is only about 10% slower than C.
+        // The result is the same as the original byte-at-a-time
+        // loop, which is still used by checkSomeShards.
+
+        final byte[][] table = Galois.MULTIPLICATION_TABLE;
+        final int end = offset + byteCount;
+
+        for (int blockStart = offset; blockStart < end; blockStart += CODING_BLOCK_SIZE) {
+            final int blockEnd = Math.min(end, blockStart + CODING_BLOCK_SIZE);
 
-        for (int iByte = offset; iByte < offset + byteCount; iByte++) {
             for (int iRow = 0; iRow < outputCount; iRow++) {
-                byte[] matrixRow = matrixRows[iRow];
-                int value = 0;
-                for (int c = 0; c < dataShardCount; c++) {
-                    value ^= Galois.multiply(matrixRow[c], inputs[c][iByte]);
+                final byte[] matrixRow = matrixRows[iRow];
+                final byte[] output = outputs[iRow];
+
+                // The first input initializes the output
+                {
+                    final byte[] input = inputs[0];
+                    final int coefficient = matrixRow[0] & 0xFF;
+                    if (coefficient == 0) {
+                        Arrays.fill(output, blockStart, blockEnd, (byte) 0);
+                    } else if (coefficient == 1) {
+                        System.arraycopy(input, blockStart, output, blockStart, blockEnd - blockStart);
+                    } else {
+                        final byte[] multTableRow = table[coefficient];
+                        for (int iByte = blockStart; iByte < blockEnd; iByte++) {
+                            output[iByte] = multTableRow[input[iByte] & 0xFF];
+                        }
+                    }
+                }
+
+                for (int c = 1; c < dataShardCount; c++) {
+                    final byte[] input = inputs[c];
+                    final int coefficient = matrixRow[c] & 0xFF;
+                    if (coefficient == 0) {
+                        continue;
+                    } else if (coefficient == 1) {
+                        for (int iByte = blockStart; iByte < blockEnd; iByte++) {
+                            output[iByte] ^= input[iByte];
+                        }
+                    } else {
+                        final byte[] multTableRow = table[coefficient];
+                        for (int iByte = blockStart; iByte < blockEnd; iByte++) {
+                            output[iByte] ^= multTableRow[input[iByte] & 0xFF];
+                        }
+                    }
                 }
-                outputs[iRow][iByte] = (byte) value;
             }
         }
     }
@@ -0,0 +1,126 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.odilon.virtualFileSystem.LockMetrics;
+import io.odilon.virtualFileSystem.StripedLockTable;
+
+/**
+ * <p>
+ * Contention benchmark of the Object lock table. Compares the
+ * {@link StripedLockTable} used by the LockService with the previous approach
+ * (ConcurrentHashMap of locks keyed by {@code bucketId + separator + objectName})
+ * and the overhead of the lock metrics.
+ * </p>
+ * <p>
+ * It is not a unit test, run it with {@code main}:
+ * {@code java -cp target/classes:target/test-classes io.odilon.test.LockTableBenchmark [threads] [objects] [seconds]}
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class LockTableBenchmark {
+
+    private interface LockTable {
+        ReadWriteLock get(long bucketId, String objectName);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int objects = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        String[] names = new String[objects];
+        for (int n = 0; n < objects; n++)
+            names[n] = "object-" + String.valueOf(n);
+
+        ConcurrentMap<String, ReentrantReadWriteLock> map = new ConcurrentHashMap<>(1000);
+        LockTable mapTable = (bucketId, objectName) -> map.computeIfAbsent(String.valueOf(bucketId) + "$" + objectName,
+                key -> new ReentrantReadWriteLock());
+
+        StripedLockTable striped = new StripedLockTable(4096);
+        LockTable stripedTable = (bucketId, objectName) -> striped.get(bucketId, objectName);
+
+        StripedLockTable monitored = new StripedLockTable(4096, new LockMetrics("object", true));
+        LockTable monitoredTable = (bucketId, objectName) -> monitored.get(bucketId, objectName);
+
+        /** warm up */
+        run("map", mapTable, names, threads, 1);
+        run("striped", stripedTable, names, threads, 1);
+        run("striped+metrics", monitoredTable, names, threads, 1);
+
+        System.out.println("threads: " + threads + " | objects: " + objects + " | seconds: " + seconds);
+        run("map", mapTable, names, threads, seconds);
+        System.out.println("map entries: " + map.size());
+        run("striped", stripedTable, names, threads, seconds);
+        run("striped+metrics", monitoredTable, names, threads, seconds);
+        System.out.println(monitored.toMap(5));
+    }
+
+    private static void run(String name, LockTable table, String[] names, int threads, int seconds) throws InterruptedException {
+
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(threads);
+        long deadline[] = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    int n = seed * 7919;
+                    long count = 0;
+                    while (System.nanoTime() < deadline[0]) {
+                        n = (n * 1103515245 + 12345) & 0x7fffffff;
+                        ReadWriteLock lock = table.get(n & 3, names[n % names.length]);
+                        /** 1 write every 10 operations */
+                        Lock l = (n % 10 == 0) ? lock.writeLock() : lock.readLock();
+                        l.lock();
+                        try {
+                            count++;
+                        } finally {
+                            l.unlock();
+                        }
+                    }
+                    ops.add(count);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    end.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        deadline[0] = System.nanoTime() + seconds * 1000000000L;
+        start.countDown();
+        end.await();
+
+        System.out.println(name + " -> " + String.format("%,d", ops.sum() / seconds) + " lock/unlock per sec");
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import io.odilon.api.ObjectRange;
+import io.odilon.model.ObjectMetadata;
+
+/**
+ * <p>
+ * Parsing of the HTTP {@code Range} and {@code If-Range} headers by
+ * {@link ObjectRange}
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class ObjectRangeTest {
+
+    private static final long LENGTH = 1000;
+
+    private static ObjectMetadata meta(long length) {
+        ObjectMetadata meta = new ObjectMetadata(Long.valueOf(1), "object");
+        meta.length = length;
+        meta.etag = "abc123";
+        meta.lastModified = OffsetDateTime.of(2024, 5, 10, 12, 30, 0, 0, ZoneOffset.UTC);
+        return meta;
+    }
+
+    private static ObjectRange resolve(String range) {
+        return ObjectRange.resolve(Optional.of(range), Optional.empty(), meta(LENGTH));
+    }
+
+    private static void assertRange(ObjectRange range, long offset, long length) {
+        assertNotNull(range);
+        assertTrue(range.isSatisfiable());
+        assertEquals(offset, range.getOffset());
+        assertEquals(length, range.getLength());
+        assertEquals("bytes " + offset + "-" + (offset + length - 1) + "/" + LENGTH, range.getContentRange());
+    }
+
+    private static void assertNotSatisfiable(ObjectRange range) {
+        assertNotNull(range);
+        assertFalse(range.isSatisfiable());
+        assertEquals("bytes */" + LENGTH, range.getContentRange());
+    }
+
+    @Test
+    public void noRangeServesWholeObject() {
+        assertNull(ObjectRange.resolve(Optional.empty(), Optional.empty(), meta(LENGTH)));
+        assertNull(resolve(""));
+        assertNull(resolve("   "));
+    }
+
+    @Test
+    public void closedRange() {
+        assertRange(resolve("bytes=0-99"), 0, 100);
+        assertRange(resolve("bytes=500-500"), 500, 1);
+        assertRange(resolve("bytes=999-999"), 999, 1);
+    }
+
+    @Test
+    public void openRange() {
+        assertRange(resolve("bytes=0-"), 0, LENGTH);
+        assertRange(resolve("bytes=900-"), 900, 100);
+    }
+
+    @Test
+    public void suffixRange() {
+        assertRange(resolve("bytes=-100"), 900, 100);
+        assertRange(resolve("bytes=-1"), 999, 1);
+        /** a suffix longer than the object is the whole object */
+        assertRange(resolve("bytes=-5000"), 0, LENGTH);
+    }
+
+    @Test
+    public void rangePastEndIsTruncated() {
+        assertRange(resolve("bytes=900-5000"), 900, 100);
+        assertRange(resolve("bytes=0-1000"), 0, LENGTH);
+    }
+
+    @Test
+    public void rangeStartingPastEndIsNotSatisfiable() {
+        assertNotSatisfiable(resolve("bytes=1000-"));
+        assertNotSatisfiable(resolve("bytes=1000-1100"));
+        assertNotSatisfiable(resolve("bytes=5000-6000"));
+    }
+
+    @Test
+    public void emptyObjectIsNotSatisfiable() {
+        ObjectRange range = ObjectRange.resolve(Optional.of("bytes=0-"), Optional.empty(), meta(0));
+        assertNotNull(range);
+        assertFalse(range.isSatisfiable());
+        assertEquals("bytes */0", range.getContentRange());
+    }
+
+    @Test
+    public void malformedRangeServesWholeObject() {
+        assertNull(resolve("bytes=abc"));
+        assertNull(resolve("items=0-10"));
+        assertNull(resolve("bytes=10-5"));
+    }
+
+    @Test
+    public void multipleRangesServeWholeObject() {
+        assertNull(resolve("bytes=0-9,20-29"));
+    }
+
+    @Test
+    public void encryptedObjectServesWholeObject() {
+        ObjectMetadata meta = meta(LENGTH);
+        meta.setEncrypt(true);
+        assertNull(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.empty(), meta));
+    }
+
+    @Test
+    public void ifRangeWithEntityTag() {
+        assertRange(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.of("\"abc123\""), meta(LENGTH)), 0, 100);
+        assertNull(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.of("\"other\""), meta(LENGTH)));
+        /** If-Range requires a strong comparison */
+        assertNull(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.of("W/\"abc123\""), meta(LENGTH)));
+    }
+
+    @Test
+    public void ifRangeWithDate() {
+        ObjectMetadata meta = meta(LENGTH);
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(meta.lastModified);
+        String before = DateTimeFormatter.RFC_1123_DATE_TIME.format(meta.lastModified.minusDays(1));
+        assertRange(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.of(lastModified), meta), 0, 100);
+        assertNull(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.of(before), meta));
+        assertNull(ObjectRange.resolve(Optional.of("bytes=0-99"), Optional.of("not a date"), meta));
+    }
+}
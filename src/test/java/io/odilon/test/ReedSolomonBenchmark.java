@@ -0,0 +1,141 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import io.odilon.virtualFileSystem.raid6.ReedSolomon;
+
+/**
+ * <p>
+ * Checks and times the RAID 6 Reed Solomon coding loop.
+ * </p>
+ * <p>
+ * The parity calculated by {@code encodeParity} is verified byte by byte with
+ * {@code isParityCorrect}, which still uses the original byte-at-a-time loop
+ * with {@code Galois.multiply}, and {@code decodeMissing} is verified by
+ * removing shards and comparing the result with the original data. The time of
+ * {@code isParityCorrect} is the reference for the previous implementation.
+ * </p>
+ * <p>
+ * The equivalence with the reference implementation is checked by
+ * {@code io.odilon.virtualFileSystem.raid6.ReedSolomonTest}, this class only
+ * reports the throughput.
+ * </p>
+ * <p>
+ * It is not a unit test, run it with {@code main}:
+ * {@code java -cp target/classes:target/test-classes io.odilon.test.ReedSolomonBenchmark [shardSize] [iterations]}
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class ReedSolomonBenchmark {
+
+    /** data shards, parity shards, as supported by RAID 6 */
+    private static final int[][] CONFIGURATIONS = { { 2, 1 }, { 4, 2 }, { 8, 4 }, { 16, 8 } };
+
+    public static void main(String[] args) throws Exception {
+
+        int shardSize = (args.length > 0) ? Integer.parseInt(args[0]) : 1024 * 1024;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        Random random = new Random(42);
+
+        for (int[] conf : CONFIGURATIONS) {
+
+            int dataShards = conf[0];
+            int parityShards = conf[1];
+            int totalShards = dataShards + parityShards;
+
+            ReedSolomon reedSolomon = new ReedSolomon(dataShards, parityShards);
+
+            byte[][] shards = new byte[totalShards][shardSize];
+            for (int n = 0; n < dataShards; n++)
+                random.nextBytes(shards[n]);
+
+            /** verify, including offsets that are not aligned to the coding block */
+            reedSolomon.encodeParity(shards, 0, shardSize);
+            check(reedSolomon.isParityCorrect(shards, 0, shardSize), "parity " + dataShards + "+" + parityShards);
+            byte[][] partial = copy(shards);
+            for (int n = dataShards; n < totalShards; n++)
+                Arrays.fill(partial[n], (byte) 0);
+            reedSolomon.encodeParity(partial, 13, shardSize - 100);
+            check(reedSolomon.isParityCorrect(partial, 13, shardSize - 100), "parity offset " + dataShards + "+" + parityShards);
+
+            for (int missing = 1; missing <= parityShards; missing++) {
+                byte[][] damaged = copy(shards);
+                boolean[] present = new boolean[totalShards];
+                Arrays.fill(present, true);
+                for (int n = 0; n < missing; n++) {
+                    int shard = (n * 3 + missing) % totalShards;
+                    present[shard] = false;
+                    Arrays.fill(damaged[shard], (byte) 0);
+                }
+                reedSolomon.decodeMissing(damaged, present, 0, shardSize);
+                for (int n = 0; n < totalShards; n++)
+                    check(Arrays.equals(shards[n], damaged[n]), "decode " + dataShards + "+" + parityShards + " missing:" + missing);
+            }
+
+            /** time */
+            long bytes = (long) dataShards * shardSize * iterations;
+
+            for (int n = 0; n < iterations; n++) {
+                reedSolomon.encodeParity(shards, 0, shardSize);
+                reedSolomon.isParityCorrect(shards, 0, shardSize);
+            }
+
+            long start = System.nanoTime();
+            for (int n = 0; n < iterations; n++)
+                reedSolomon.encodeParity(shards, 0, shardSize);
+            long encode = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int n = 0; n < iterations; n++)
+                reedSolomon.isParityCorrect(shards, 0, shardSize);
+            long reference = System.nanoTime() - start;
+
+            boolean[] present = new boolean[totalShards];
+            Arrays.fill(present, true);
+            for (int n = 0; n < parityShards; n++)
+                present[n] = false;
+            start = System.nanoTime();
+            for (int n = 0; n < iterations; n++)
+                reedSolomon.decodeMissing(shards, present, 0, shardSize);
+            long decode = System.nanoTime() - start;
+
+            System.out.println(String.format("%2d+%-2d encode: %8.1f MB/s   byte-at-a-time: %8.1f MB/s   decode (%d missing): %8.1f MB/s",
+                    dataShards, parityShards, mbs(bytes, encode), mbs(bytes, reference), parityShards, mbs(bytes, decode)));
+        }
+    }
+
+    private static double mbs(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1_000_000_000.0);
+    }
+
+    private static byte[][] copy(byte[][] shards) {
+        byte[][] result = new byte[shards.length][];
+        for (int n = 0; n < shards.length; n++)
+            result[n] = shards[n].clone();
+        return result;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new IllegalStateException("FAILED -> " + message);
+    }
+}
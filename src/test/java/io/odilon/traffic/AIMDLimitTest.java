@@ -0,0 +1,143 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * <p>
+ * Windows of {@link AIMDLimit}. Every window is closed by
+ * {@link AIMDLimit#WINDOW_MAX_SAMPLES} samples, the tests do not depend on the
+ * clock
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class AIMDLimitTest {
+
+    private static final long MILLISEC = 1000000L;
+
+    /**
+     * sends a full window of samples, the last {@code slow} samples have latency
+     * {@code slowLatency}
+     */
+    private static int window(AIMDLimit limit, long latency, int inflight, int slow, long slowLatency, long bytes) {
+        int result = limit.getLimit();
+        for (int n = 0; n < AIMDLimit.WINDOW_MAX_SAMPLES; n++)
+            result = limit.onSample((n < AIMDLimit.WINDOW_MAX_SAMPLES - slow) ? latency : slowLatency, bytes, inflight);
+        return result;
+    }
+
+    private static int window(AIMDLimit limit, long latency, int inflight) {
+        return window(limit, latency, inflight, 0, latency, -1);
+    }
+
+    @Test
+    public void limitIsNotChangedBeforeTheWindowCloses() {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        for (int n = 0; n < AIMDLimit.WINDOW_MAX_SAMPLES - 1; n++)
+            assertEquals(10, limit.onSample(MILLISEC, -1, 10));
+        assertEquals(-1, limit.getBaseline());
+    }
+
+    @Test
+    public void decreaseOnP99Spike() {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        assertEquals(11, window(limit, MILLISEC, 10));
+
+        /** 1% of the window is slow, it is the p99 */
+        assertEquals(9, window(limit, MILLISEC, 10, 3, 10 * MILLISEC, -1));
+        assertEquals(8, window(limit, MILLISEC, 10, 3, 10 * MILLISEC, -1));
+    }
+
+    @Test
+    public void spikeBelowP99IsIgnored() {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        window(limit, MILLISEC, 10);
+        assertEquals(12, window(limit, MILLISEC, 10, 2, 10 * MILLISEC, -1));
+    }
+
+    @Test
+    public void decreaseStopsAtMinLimit() {
+        AIMDLimit limit = new AIMDLimit(3, 2, 20, 2.0);
+        window(limit, MILLISEC, 3);
+        for (int n = 0; n < 5; n++)
+            window(limit, MILLISEC, 3, 10, 100 * MILLISEC, -1);
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void increaseOnlyWhenHalfTheLimitIsInUse() {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        assertEquals(10, window(limit, MILLISEC, 4));
+        assertEquals(10, window(limit, MILLISEC, 1));
+        assertEquals(11, window(limit, MILLISEC, 5));
+        assertEquals(12, window(limit, MILLISEC, 11));
+    }
+
+    @Test
+    public void increaseStopsAtMaxLimit() {
+        AIMDLimit limit = new AIMDLimit(19, 2, 20, 2.0);
+        assertEquals(20, window(limit, MILLISEC, 19));
+        assertEquals(20, window(limit, MILLISEC, 20));
+    }
+
+    @Test
+    public void baselineDrift() {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        window(limit, MILLISEC, 10);
+        assertEquals(MILLISEC, limit.getBaseline(), 1);
+
+        /** higher p99, within the tolerance: the baseline drifts upwards slowly */
+        window(limit, 3 * MILLISEC / 2, 10);
+        assertEquals(MILLISEC + (MILLISEC / 2) * AIMDLimit.BASELINE_DRIFT, limit.getBaseline(), 1);
+
+        /** a sustained change is eventually accepted */
+        for (int n = 0; n < 500; n++)
+            window(limit, 3 * MILLISEC / 2, 10);
+        assertEquals(3 * MILLISEC / 2, limit.getBaseline(), MILLISEC / 100);
+
+        /** a lower p99 is the new baseline */
+        window(limit, MILLISEC / 2, 10);
+        assertEquals(MILLISEC / 2, limit.getBaseline(), 1);
+    }
+
+    @Test
+    public void largeRequestsAreSampledApart() {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        window(limit, MILLISEC, 10);
+
+        /** 64 MB in 80 ms, normalised to 10 ms per LARGE_REQUEST_BYTES */
+        long bytes = 8 * AIMDLimit.LARGE_REQUEST_BYTES;
+        assertEquals(12, window(limit, 80 * MILLISEC, 10, 0, 0, bytes));
+        assertEquals(MILLISEC, limit.getBaseline(), 1);
+        assertEquals(10 * MILLISEC, limit.getLargeBaseline(), 1);
+
+        /** same throughput with a larger object is not a spike */
+        assertEquals(13, window(limit, 160 * MILLISEC, 10, 0, 0, 2 * bytes));
+
+        /** lower throughput of the large requests */
+        assertEquals(11, window(limit, 80 * MILLISEC, 10, 0, 0, bytes / 4));
+
+        /** the small requests were not affected */
+        assertEquals(12, window(limit, MILLISEC, 10));
+        assertTrue(limit.getBaseline() < 2 * MILLISEC);
+    }
+}
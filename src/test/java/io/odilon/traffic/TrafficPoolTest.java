@@ -0,0 +1,154 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.traffic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.odilon.monitor.SystemMonitorService;
+
+/**
+ * <p>
+ * Permits of {@link TrafficPool} when the limit changes with passes in use
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class TrafficPoolTest {
+
+    private static final long MILLISEC = 1000000L;
+
+    private SystemMonitorService monitor = mock(SystemMonitorService.class);
+
+    private TrafficPool pool(int tokens, AIMDLimit limit) {
+        TrafficPool pool = new TrafficPool(TrafficType.READ, tokens, limit, this.monitor);
+        for (int n = 0; n < pool.getMaxPasses(); n++)
+            pool.add(new OdilonTrafficPass(n, TrafficType.READ));
+        return pool;
+    }
+
+    private static List<TrafficPass> acquire(TrafficPool pool, int passes) throws InterruptedException {
+        List<TrafficPass> list = new ArrayList<TrafficPass>();
+        for (int n = 0; n < passes; n++) {
+            TrafficPass pass = pool.acquire(0);
+            assertNotNull(pass);
+            list.add(pass);
+        }
+        return list;
+    }
+
+    @Test
+    public void reducePermitsBelowInflight() throws InterruptedException {
+        TrafficPool pool = pool(10, null);
+        List<TrafficPass> passes = acquire(pool, 10);
+
+        pool.resize(4);
+        assertEquals(4, pool.getLimit());
+        assertEquals(10, pool.getInflight());
+        assertEquals(-6, pool.getAvailable());
+        assertNull(pool.acquire(0));
+        verify(this.monitor).setTrafficLimit(TrafficType.READ, 4);
+
+        /** new requests wait until the passes in use are below the limit */
+        for (int n = 0; n < 6; n++) {
+            pool.release(passes.remove(0));
+            assertNull(pool.acquire(0));
+        }
+        assertEquals(4, pool.getInflight());
+
+        pool.release(passes.remove(0));
+        assertNotNull(pool.acquire(0));
+        assertNull(pool.acquire(0));
+    }
+
+    @Test
+    public void increasePermits() throws InterruptedException {
+        TrafficPool pool = pool(10, new AIMDLimit(10, 2, 20, 2.0));
+        acquire(pool, 10);
+        assertNull(pool.acquire(0));
+
+        pool.resize(12);
+        acquire(pool, 2);
+        assertNull(pool.acquire(0));
+        assertEquals(12, pool.getInflight());
+    }
+
+    @Test
+    public void adaptiveLimitDecreaseWithPassesInUse() throws InterruptedException {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        TrafficPool pool = pool(10, limit);
+        List<TrafficPass> held = acquire(pool, 9);
+
+        /** baseline of 1 ms, with 10 passes in use */
+        for (int n = 0; n < AIMDLimit.WINDOW_MAX_SAMPLES; n++)
+            release(pool, pool.acquire(0), MILLISEC);
+        assertEquals(11, pool.getLimit());
+
+        /** the p99 spike closes the window with 10 passes in use, the limit goes to 9 */
+        for (int n = 0; n < AIMDLimit.WINDOW_MAX_SAMPLES; n++)
+            release(pool, pool.acquire(0), 20 * MILLISEC);
+        assertEquals(9, pool.getLimit());
+        assertEquals(0, pool.getAvailable());
+
+        assertNull(pool.acquire(0));
+        pool.release(held.remove(0));
+        assertNotNull(pool.acquire(0));
+    }
+
+    /**
+     * the time after the storage is done (sending the response) is not sampled
+     */
+    @Test
+    public void streamingIsNotSampled() throws InterruptedException {
+        AIMDLimit limit = new AIMDLimit(10, 2, 20, 2.0);
+        TrafficPool pool = pool(10, limit);
+        acquire(pool, 9);
+
+        for (int n = 0; n < AIMDLimit.WINDOW_MAX_SAMPLES; n++)
+            release(pool, pool.acquire(0), MILLISEC);
+        assertEquals(11, pool.getLimit());
+
+        /** passes held 1 second, 1 ms of storage */
+        for (int n = 0; n < AIMDLimit.WINDOW_MAX_SAMPLES; n++) {
+            OdilonTrafficPass pass = (OdilonTrafficPass) pool.acquire(0);
+            pass.setAcquireNanos(System.nanoTime() - 1000 * MILLISEC);
+            pass.setStorageNanos(pass.getAcquireNanos() + MILLISEC);
+            pool.release(pass);
+        }
+        assertEquals(12, pool.getLimit());
+        assertEquals(MILLISEC, limit.getBaseline(), 1);
+    }
+
+    /**
+     * storage done {@code latency} nanos after the pass was acquired
+     */
+    private static void release(TrafficPool pool, TrafficPass pass, long latency) {
+        OdilonTrafficPass odilonPass = (OdilonTrafficPass) pass;
+        long now = System.nanoTime();
+        odilonPass.setAcquireNanos(now - latency);
+        odilonPass.setStorageNanos(now);
+        pool.release(odilonPass);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.odilon.errors.InternalCriticalException;
+import io.odilon.model.ServerConstant;
+
+/**
+ * <p>
+ * Recovery, segments and errors of the {@link DriveJournalLog}
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class DriveJournalLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<DriveJournalLog> logs = new ArrayList<DriveJournalLog>();
+
+    @AfterEach
+    public void tearDown() {
+        for (DriveJournalLog log : this.logs)
+            log.close();
+    }
+
+    private DriveJournalLog open() throws IOException {
+        DriveJournalLog log = new DriveJournalLog("drive0", this.tempDir.toString());
+        log.open();
+        this.logs.add(log);
+        return log;
+    }
+
+    /**
+     * closes the log and opens it again, as after a restart
+     */
+    private DriveJournalLog reopen(DriveJournalLog log) throws IOException {
+        log.close();
+        return open();
+    }
+
+    private List<File> segments() {
+        File[] files = this.tempDir.toFile().listFiles(
+                (d, name) -> name.startsWith(DriveJournalLog.SEGMENT_PREFIX) && name.endsWith(DriveJournalLog.SEGMENT_EXT));
+        List<File> list = new ArrayList<File>(Arrays.asList(files));
+        list.sort(null);
+        return list;
+    }
+
+    private File lastSegment() {
+        List<File> list = segments();
+        return list.get(list.size() - 1);
+    }
+
+    @Test
+    public void replayPendingOperations() throws IOException {
+        DriveJournalLog log = open();
+        log.begin("op1", "{\"op\":1}");
+        log.begin("op2", "{\"op\":2}");
+        log.begin("op3", "{\"op\":3}");
+        log.end("op2");
+
+        Map<String, String> pending = reopen(log).getPending();
+        assertEquals(2, pending.size());
+        assertEquals("{\"op\":1}", pending.get("op1"));
+        assertEquals("{\"op\":3}", pending.get("op3"));
+    }
+
+    @Test
+    public void endInLaterSegment() throws IOException {
+        DriveJournalLog log = open();
+        log.begin("op1", "{}");
+        log.begin("op2", "{}");
+        log = reopen(log);
+        log.end("op1");
+
+        Map<String, String> pending = reopen(log).getPending();
+        assertEquals(1, pending.size());
+        assertTrue(pending.containsKey("op2"));
+    }
+
+    @Test
+    public void tornTailIsIgnored() throws IOException {
+        DriveJournalLog log = open();
+        log.begin("op1", "{}");
+        log.begin("op2", "{}");
+        log.close();
+
+        /** crash in the middle of the header of the next record */
+        Files.write(lastSegment().toPath(), new byte[] { 0, 0, 0 }, StandardOpenOption.APPEND);
+
+        log = open();
+        assertEquals(2, log.getPending().size());
+
+        /** new records go to a new segment, after the torn one */
+        log.begin("op3", "{}");
+        log.end("op1");
+        Map<String, String> pending = reopen(log).getPending();
+        assertEquals(2, pending.size());
+        assertTrue(pending.containsKey("op2"));
+        assertTrue(pending.containsKey("op3"));
+    }
+
+    @Test
+    public void crcMismatchTruncatesSegment() throws IOException {
+        DriveJournalLog log = open();
+        log.begin("op1", "{\"a\":1}");
+        log.begin("op2", "{\"b\":2}");
+        log.close();
+
+        /** last byte of the payload of op2 */
+        try (RandomAccessFile file = new RandomAccessFile(lastSegment(), "rw")) {
+            file.seek(file.length() - 1);
+            file.write('x');
+        }
+
+        Map<String, String> pending = open().getPending();
+        assertEquals(1, pending.size());
+        assertEquals("{\"a\":1}", pending.get("op1"));
+    }
+
+    @Test
+    public void segmentRollover() throws IOException {
+        DriveJournalLog log = open();
+        String half = "x".repeat((int) DriveJournalLog.SEGMENT_MAX_SIZE / 2);
+        log.begin("op1", half);
+        log.begin("op2", half);
+        log.begin("op3", "{}");
+        log.close();
+
+        /** op3 went to a new segment */
+        List<File> list = segments();
+        assertEquals(2, list.size());
+        File first = list.get(0);
+
+        log = open();
+        assertEquals(3, log.getPending().size());
+        assertEquals(half, log.getPending().get("op1"));
+
+        /** the first segment is deleted when op1 and op2 end */
+        log.end("op1");
+        log.close();
+        assertTrue(first.exists());
+        log = open();
+        log.end("op2");
+        log.close();
+        assertFalse(first.exists());
+
+        Map<String, String> pending = open().getPending();
+        assertEquals(1, pending.size());
+        assertTrue(pending.containsKey("op3"));
+    }
+
+    @Test
+    public void recordLargerThanSegmentIsRejected() throws IOException {
+        DriveJournalLog log = open();
+        assertThrows(InternalCriticalException.class,
+                () -> log.begin("op1", "x".repeat((int) DriveJournalLog.SEGMENT_MAX_SIZE)));
+        log.begin("op2", "{}");
+        assertFalse(log.isFailed());
+        assertEquals(1, reopen(log).getPending().size());
+    }
+
+    @Test
+    public void migrationOfJsonFiles() throws IOException {
+        Files.writeString(this.tempDir.resolve("op1" + ServerConstant.JSON), "{\"op\":1}", StandardCharsets.UTF_8);
+        Files.writeString(this.tempDir.resolve("op2" + ServerConstant.JSON), "{\"op\":2}", StandardCharsets.UTF_8);
+
+        DriveJournalLog log = open();
+        assertEquals(2, log.getPending().size());
+        assertEquals("{\"op\":1}", log.getPending().get("op1"));
+        assertFalse(Files.exists(this.tempDir.resolve("op1" + ServerConstant.JSON)));
+        assertFalse(Files.exists(this.tempDir.resolve("op2" + ServerConstant.JSON)));
+
+        log.end("op1");
+        Map<String, String> pending = reopen(log).getPending();
+        assertEquals(1, pending.size());
+        assertEquals("{\"op\":2}", pending.get("op2"));
+    }
+
+    /**
+     * the segment is full and the next one can not be created, the log is not
+     * usable
+     */
+    @Test
+    public void failedSegmentRejectsRecords() throws IOException {
+        DriveJournalLog log = open();
+        log.begin("op1", "{}");
+
+        for (File file : this.tempDir.toFile().listFiles())
+            Files.delete(file.toPath());
+        Files.delete(this.tempDir);
+
+        /** written to the open segment, the rollover fails */
+        String half = "x".repeat((int) DriveJournalLog.SEGMENT_MAX_SIZE / 2);
+        log.begin("op2", half);
+        log.begin("op3", half);
+
+        assertThrows(InternalCriticalException.class, () -> log.begin("op4", "{}"));
+        assertTrue(log.isFailed());
+        assertThrows(InternalCriticalException.class, () -> log.end("op1"));
+        assertFalse(log.getPending().containsKey("op4"));
+        Files.createDirectories(this.tempDir);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <p>
+ * Stripe selection, reentrancy, exclusion and metrics of
+ * {@link StripedLockTable}
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class StripedLockTableTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return an object name of bucket 1 whose stripe is not the stripe of
+     *         {@code objectName}
+     */
+    private static String otherStripe(StripedLockTable table, String objectName) {
+        ReadWriteLock lock = table.get(1, objectName);
+        for (int n = 0;; n++) {
+            String name = objectName + "-" + String.valueOf(n);
+            if (table.get(1, name) != lock)
+                return name;
+        }
+    }
+
+    private boolean tryWriteLockFromOtherThread(ReadWriteLock lock) throws InterruptedException, ExecutionException {
+        Future<Boolean> future = this.executor.submit(() -> {
+            boolean acquired = lock.writeLock().tryLock(50, TimeUnit.MILLISECONDS);
+            if (acquired)
+                lock.writeLock().unlock();
+            return acquired;
+        });
+        return future.get().booleanValue();
+    }
+
+    @Test
+    public void sizeIsPowerOfTwo() {
+        assertEquals(1, new StripedLockTable(0).size());
+        assertEquals(1, new StripedLockTable(1).size());
+        assertEquals(64, new StripedLockTable(64).size());
+        assertEquals(128, new StripedLockTable(65).size());
+        assertEquals(4096, new StripedLockTable(3000).size());
+    }
+
+    @Test
+    public void sameKeySameStripe() {
+        StripedLockTable table = new StripedLockTable(4096);
+        assertSame(table.get("bucket"), table.get(new String("bucket")));
+        assertSame(table.get(1, "object"), table.get(1, new String("object")));
+        assertSame(table.get(1, "object", 3), table.get(1, "object", 3));
+    }
+
+    @Test
+    public void keysAreSpreadAcrossStripes() {
+        StripedLockTable table = new StripedLockTable(64);
+        Set<ReadWriteLock> used = Collections.newSetFromMap(new IdentityHashMap<ReadWriteLock, Boolean>());
+        for (int n = 0; n < 1000; n++)
+            used.add(table.get(1, "object-" + String.valueOf(n)));
+        /** consecutive names do not collide in a few stripes */
+        assertTrue(used.size() > 60, "stripes used: " + used.size());
+
+        /** the bucket and the version are part of the key */
+        int differentBucket = 0;
+        int differentVersion = 0;
+        for (int n = 0; n < 100; n++) {
+            String name = "object-" + String.valueOf(n);
+            if (table.get(1, name) != table.get(2, name))
+                differentBucket++;
+            if (table.get(1, name, 1) != table.get(1, name, 2))
+                differentVersion++;
+        }
+        assertTrue(differentBucket > 90);
+        assertTrue(differentVersion > 90);
+    }
+
+    @Test
+    public void reentrancy() {
+        StripedLockTable table = new StripedLockTable(64, new LockMetrics("object", true));
+        MonitoredReadWriteLock lock = (MonitoredReadWriteLock) table.get(1, "object");
+
+        lock.writeLock().lock();
+        table.get(1, "object").writeLock().lock();
+        /** the thread that holds the write lock can also get the read lock */
+        lock.readLock().lock();
+        lock.readLock().unlock();
+        lock.writeLock().unlock();
+        assertTrue(lock.isLocked());
+        lock.writeLock().unlock();
+        assertFalse(lock.isLocked());
+
+        lock.readLock().lock();
+        table.get(1, "object").readLock().lock();
+        lock.readLock().unlock();
+        assertTrue(lock.isLocked());
+        lock.readLock().unlock();
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void readExcludesWriteOfSameKey() throws Exception {
+        StripedLockTable table = new StripedLockTable(4096, new LockMetrics("object", true));
+        String other = otherStripe(table, "object");
+
+        ReadWriteLock lock = table.get(1, "object");
+        lock.readLock().lock();
+        try {
+            assertFalse(tryWriteLockFromOtherThread(table.get(1, "object")));
+            assertTrue(tryWriteLockFromOtherThread(table.get(1, other)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        assertTrue(tryWriteLockFromOtherThread(table.get(1, "object")));
+    }
+
+    @Test
+    public void writeExcludesReadOfSameKey() throws Exception {
+        StripedLockTable table = new StripedLockTable(4096, new LockMetrics("object", true));
+        String other = otherStripe(table, "object");
+
+        ReadWriteLock lock = table.get(1, "object");
+        lock.writeLock().lock();
+        try {
+            Future<Boolean> sameKey = this.executor.submit(() -> {
+                ReadWriteLock l = table.get(1, "object");
+                boolean acquired = l.readLock().tryLock(50, TimeUnit.MILLISECONDS);
+                if (acquired)
+                    l.readLock().unlock();
+                return acquired;
+            });
+            assertFalse(sameKey.get().booleanValue());
+
+            Future<Boolean> otherKey = this.executor.submit(() -> {
+                ReadWriteLock l = table.get(1, other);
+                boolean acquired = l.readLock().tryLock(50, TimeUnit.MILLISECONDS);
+                if (acquired)
+                    l.readLock().unlock();
+                return acquired;
+            });
+            assertTrue(otherKey.get().booleanValue());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Test
+    public void metricsCounters() throws Exception {
+        StripedLockTable table = new StripedLockTable(64, new LockMetrics("object", true));
+
+        for (int n = 0; n < 10; n++) {
+            ReadWriteLock lock = table.get(1, "object-" + String.valueOf(n));
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        }
+        Map<String, Object> map = table.toMap(5);
+        assertEquals("10", map.get("lock.object.acquired"));
+        assertEquals("0", map.get("lock.object.contended"));
+        assertEquals(List.of(), map.get("lock.object.topStripes"));
+
+        /** one contended acquisition of the write lock */
+        ReadWriteLock lock = table.get(1, "object");
+        CountDownLatch waiting = new CountDownLatch(1);
+        lock.writeLock().lock();
+        Future<?> future = this.executor.submit(() -> {
+            ReadWriteLock l = table.get(1, "object");
+            waiting.countDown();
+            l.writeLock().lock();
+            l.writeLock().unlock();
+        });
+        waiting.await();
+        Thread.sleep(50);
+        lock.writeLock().unlock();
+        future.get();
+
+        map = table.toMap(5);
+        assertEquals("12", map.get("lock.object.acquired"));
+        assertEquals("1", map.get("lock.object.contended"));
+        @SuppressWarnings("unchecked")
+        List<String> top = (List<String>) map.get("lock.object.topStripes");
+        assertEquals(1, top.size());
+        assertTrue(top.get(0).startsWith("stripe "), top.get(0));
+        assertTrue(top.get(0).contains("last key: 1"), top.get(0));
+        assertTrue(top.get(0).contains("-> 1 contended"), top.get(0));
+
+        /** disabled metrics are not reported */
+        StripedLockTable disabled = new StripedLockTable(64);
+        disabled.get(1, "object").writeLock().lock();
+        disabled.get(1, "object").writeLock().unlock();
+        assertEquals("0", disabled.toMap(5).get("lock.default.acquired"));
+        assertFalse(disabled.toMap(5).containsKey("lock.default.topStripes"));
+    }
+
+    /**
+     * <p>
+     * With metrics enabled, a reader must not overtake a writer that is waiting for
+     * the lock
+     * </p>
+     */
+    @Test
+    public void readerDoesNotOvertakeQueuedWriter() throws Exception {
+        StripedLockTable table = new StripedLockTable(64, new LockMetrics("object", true));
+
+        ReadWriteLock lock = table.get(1, "object");
+        lock.readLock().lock();
+        CountDownLatch waiting = new CountDownLatch(1);
+        Future<?> writer = this.executor.submit(() -> {
+            ReadWriteLock l = table.get(1, "object");
+            waiting.countDown();
+            l.writeLock().lock();
+            l.writeLock().unlock();
+        });
+        waiting.await();
+        Thread.sleep(50);
+
+        Future<Boolean> reader = this.executor.submit(() -> {
+            ReadWriteLock l = table.get(1, "object");
+            boolean acquired = l.readLock().tryLock(50, TimeUnit.MILLISECONDS);
+            if (acquired)
+                l.readLock().unlock();
+            return acquired;
+        });
+        assertFalse(reader.get().booleanValue());
+        assertFalse(writer.isDone());
+
+        lock.readLock().unlock();
+        writer.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * <p>
+     * Two threads lock two keys each. The keys are different but their stripes
+     * cross (A and D share a stripe, B and C share another one). Taken in the
+     * order of {@code getOrdered} they can not deadlock
+     * </p>
+     */
+    @Test
+    public void orderedLocksOfCrossingStripes() throws Exception {
+        StripedLockTable table = new StripedLockTable(4, new LockMetrics("bucket", true));
+        String a = "bucket-a";
+        String b = otherName(table, a, false, "bucket-b");
+        String c = otherName(table, b, true, "bucket-c");
+        String d = otherName(table, a, true, "bucket-d");
+
+        assertEquals(1, table.getOrdered(a, d).size());
+        assertSame(table.get(a), table.getOrdered(a, d).get(0));
+        assertEquals(2, table.getOrdered(a, b).size());
+        assertEquals(table.getOrdered(a, b), table.getOrdered(b, a));
+        assertEquals(table.getOrdered(a, b), table.getOrdered(c, d));
+
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> first = this.executor.submit(() -> lockUnlock(table, start, a, b));
+        Future<?> second = this.executor.submit(() -> lockUnlock(table, start, c, d));
+        start.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * <p>
+     * A thread holds two locks of the table, the hold time of each one is measured
+     * from its own acquisition
+     * </p>
+     */
+    @Test
+    public void nestedHoldsAreMeasured() throws Exception {
+        StripedLockTable table = new StripedLockTable(64, new LockMetrics("object", true, 1));
+        ReadWriteLock outer = table.get(1, "object");
+        ReadWriteLock inner = table.get(1, otherStripe(table, "object"));
+
+        outer.writeLock().lock();
+        inner.writeLock().lock();
+        inner.writeLock().unlock();
+        Thread.sleep(20);
+        outer.writeLock().unlock();
+
+        String[] hold = ((String) table.toMap(0).get("lock.object.holdMicros")).split(", ");
+        assertTrue(Long.parseLong(hold[3]) >= 20000, "max hold: " + hold[3]);
+    }
+
+    private static void lockUnlock(StripedLockTable table, CountDownLatch start, String... names) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            return;
+        }
+        for (int n = 0; n < 2000; n++) {
+            List<ReadWriteLock> locks = table.getOrdered(names);
+            for (ReadWriteLock lock : locks)
+                lock.writeLock().lock();
+            for (int i = locks.size() - 1; i >= 0; i--)
+                locks.get(i).writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return a name that is in the same stripe as {@code name} or in a different
+     *         one
+     */
+    private static String otherName(StripedLockTable table, String name, boolean sameStripe, String prefix) {
+        for (int n = 0;; n++) {
+            String other = prefix + "-" + String.valueOf(n);
+            if ((table.get(other) == table.get(name)) == sameStripe)
+                return other;
+        }
+    }
+
+    /**
+     * <p>
+     * The last key of a stripe is the key of the thread that waited for it, not
+     * the key used by the holder to get the lock again and release it
+     * </p>
+     */
+    @Test
+    public void lastKeyIsTheKeyThatWaited() throws Exception {
+        StripedLockTable table = new StripedLockTable(1, new LockMetrics("object", true));
+
+        table.get(1, "holder").writeLock().lock();
+        CountDownLatch waiting = new CountDownLatch(1);
+        Future<?> future = this.executor.submit(() -> {
+            ReadWriteLock l = table.get(1, "waiter", 3);
+            waiting.countDown();
+            l.writeLock().lock();
+            l.writeLock().unlock();
+        });
+        waiting.await();
+        Thread.sleep(50);
+        table.get(1, "holder").writeLock().unlock();
+        future.get(5, TimeUnit.SECONDS);
+
+        @SuppressWarnings("unchecked")
+        List<String> top = (List<String>) table.toMap(1).get("lock.object.topStripes");
+        assertEquals(1, top.size());
+        assertTrue(top.get(0).contains("(last key: 1$waiter$3)"), top.get(0));
+    }
+
+    @Test
+    public void differentKeysOfSameStripeShareTheLock() {
+        StripedLockTable table = new StripedLockTable(1);
+        assertSame(table.get(1, "a"), table.get(2, "b"));
+        assertNotSame(new StripedLockTable(1).get(1, "a"), table.get(1, "a"));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid1;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.odilon.service.ServerSettings;
+import io.odilon.virtualFileSystem.DriveReadStats;
+import io.odilon.virtualFileSystem.model.Drive;
+import io.odilon.virtualFileSystem.model.ServerBucket;
+import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
+
+/**
+ * <p>
+ * Hedged reads of {@link RAIDOneHedgedReader}. The stream of the attempt that
+ * is not used must be closed, whether it completes before or after the winner
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class RAIDOneHedgedReaderTest {
+
+    private static final String OBJECT_NAME = "object";
+
+    private ExecutorService executor;
+    private RAIDOneDriver driver;
+    private RAIDOneHedgedReader reader;
+    private ServerBucket bucket;
+    private Drive primary;
+    private Drive mirror;
+
+    /** different content in each drive, to know which one was used */
+    private final byte[] primaryData = randomData(100 * 1024, 1);
+    private final byte[] mirrorData = randomData(100 * 1024, 2);
+
+    private volatile TrackedStream primaryStream;
+    private volatile TrackedStream mirrorStream;
+
+    @BeforeEach
+    public void setUp() {
+        this.executor = Executors.newCachedThreadPool();
+
+        ServerSettings settings = mock(ServerSettings.class);
+        when(settings.isRAID1HedgedReadsEnabled()).thenReturn(true);
+        when(settings.getRAID1HedgedReadsPercentile()).thenReturn(95.0);
+        when(settings.getRAID1HedgedReadsMaxPercent()).thenReturn(100);
+        when(settings.getRAID1HedgedReadsMinDelayMillisecs()).thenReturn(0L);
+
+        this.primary = drive("primary");
+        this.mirror = drive("mirror");
+
+        VirtualFileSystemService vfs = mock(VirtualFileSystemService.class);
+        when(vfs.getExecutorService()).thenReturn(this.executor);
+
+        this.driver = mock(RAIDOneDriver.class);
+        when(this.driver.getDrivesEnabled()).thenReturn(List.of(this.primary, this.mirror));
+        when(this.driver.getVirtualFileSystemService()).thenReturn(vfs);
+
+        this.bucket = mock(ServerBucket.class);
+        when(this.bucket.getId()).thenReturn(Long.valueOf(1));
+
+        this.reader = new RAIDOneHedgedReader(this.driver, settings);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void fastPrimaryIsNotHedged() throws IOException {
+        respond(this.primary, 0, false);
+        respond(this.mirror, 0, false);
+
+        try (InputStream in = this.reader.open(this.bucket, OBJECT_NAME, this.primary)) {
+            assertArrayEquals(this.primaryData, in.readAllBytes());
+        }
+        verify(this.driver, never()).getInputStreamFromSelectedDrive(eq(this.mirror), any(), anyString());
+        assertTrue(this.primaryStream.closed);
+        assertTrue(this.reader.toJSON().contains("\"hedges\":0"), this.reader.toJSON());
+    }
+
+    /**
+     * <p>
+     * The primary is slow, the hedge wins. The primary stream is closed when its
+     * read completes
+     * </p>
+     */
+    @Test
+    public void hedgeWinsAndSlowPrimaryIsClosed() throws Exception {
+        respond(this.primary, 500, false);
+        respond(this.mirror, 0, false);
+
+        InputStream in = this.reader.open(this.bucket, OBJECT_NAME, this.primary);
+        try {
+            waitClosed(() -> this.primaryStream);
+            assertFalse(this.mirrorStream.closed);
+            assertArrayEquals(this.mirrorData, in.readAllBytes());
+        } finally {
+            in.close();
+        }
+        assertTrue(this.mirrorStream.closed);
+        assertTrue(this.reader.toJSON().contains("\"hedgesWon\":1"), this.reader.toJSON());
+    }
+
+    /**
+     * <p>
+     * The hedge is started but the primary responds first. The hedge stream is
+     * closed when its read completes
+     * </p>
+     */
+    @Test
+    public void primaryWinsAndHedgeIsClosed() throws Exception {
+        respond(this.primary, 200, false);
+        respond(this.mirror, 800, false);
+
+        try (InputStream in = this.reader.open(this.bucket, OBJECT_NAME, this.primary)) {
+            assertArrayEquals(this.primaryData, in.readAllBytes());
+        }
+        assertTrue(this.primaryStream.closed);
+        waitClosed(() -> this.mirrorStream);
+        assertTrue(this.reader.toJSON().contains("\"hedgesWon\":0"), this.reader.toJSON());
+    }
+
+    @Test
+    public void failedPrimaryUsesHedge() throws IOException {
+        respond(this.primary, 200, true);
+        respond(this.mirror, 300, false);
+
+        try (InputStream in = this.reader.open(this.bucket, OBJECT_NAME, this.primary)) {
+            assertArrayEquals(this.mirrorData, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void bothFail() throws IOException {
+        respond(this.primary, 200, true);
+        respond(this.mirror, 100, true);
+        assertThrows(IOException.class, () -> this.reader.open(this.bucket, OBJECT_NAME, this.primary));
+    }
+
+    /**
+     * @param delayMillis time to open the data file of the drive
+     * @param fail        the open fails after the delay
+     */
+    private void respond(Drive drive, long delayMillis, boolean fail) throws IOException {
+        when(this.driver.getInputStreamFromSelectedDrive(eq(drive), any(), anyString())).thenAnswer(i -> {
+            Thread.sleep(delayMillis);
+            if (fail)
+                throw new IOException("can not read -> " + drive.getName());
+            TrackedStream stream = new TrackedStream((drive == this.primary) ? this.primaryData : this.mirrorData);
+            if (drive == this.primary)
+                this.primaryStream = stream;
+            else
+                this.mirrorStream = stream;
+            return stream;
+        });
+    }
+
+    /**
+     * the stream of a slow attempt is created after the call returns
+     */
+    private static void waitClosed(Supplier<TrackedStream> stream) throws InterruptedException {
+        for (int n = 0; n < 100 && (stream.get() == null || !stream.get().closed); n++)
+            Thread.sleep(50);
+        assertTrue(stream.get() != null && stream.get().closed);
+    }
+
+    private static Drive drive(String name) {
+        Drive drive = mock(Drive.class);
+        when(drive.getName()).thenReturn(name);
+        DriveReadStats stats = new DriveReadStats();
+        when(drive.getReadStats()).thenReturn(stats);
+        return drive;
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static class TrackedStream extends ByteArrayInputStream {
+
+        volatile boolean closed = false;
+
+        TrackedStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.closed = true;
+            super.close();
+        }
+    }
+}
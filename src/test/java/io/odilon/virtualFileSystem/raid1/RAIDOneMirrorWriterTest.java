@@ -0,0 +1,193 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid1;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.odilon.service.BufferService;
+import io.odilon.service.ServerSettings;
+
+/**
+ * <p>
+ * Copies of {@link RAIDOneMirrorWriter}, all the chunk buffers must be back in
+ * the {@link BufferService} when the copy ends or fails
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class RAIDOneMirrorWriterTest {
+
+    private ExecutorService executor;
+    private BufferService bufferService;
+
+    @BeforeEach
+    public void setUp() {
+        this.executor = Executors.newCachedThreadPool();
+        this.bufferService = new BufferService(mock(ServerSettings.class));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    private long inUse() {
+        return ((Long) this.bufferService.getMetrics().get("buffers.inUse")).longValue();
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static MessageDigest sha256() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256");
+    }
+
+    @Test
+    public void copyToMirrors() throws Exception {
+        for (int size : new int[] { 0, 1, RAIDOneMirrorWriter.CHUNK_SIZE, 5 * RAIDOneMirrorWriter.CHUNK_SIZE + 1234 }) {
+            byte[] data = randomData(size);
+            ByteArrayOutputStream[] out = new ByteArrayOutputStream[] { new ByteArrayOutputStream(),
+                    new ByteArrayOutputStream(), new ByteArrayOutputStream() };
+            MessageDigest digest = sha256();
+
+            assertEquals(size, RAIDOneMirrorWriter.copy(new ByteArrayInputStream(data), out, this.executor,
+                    this.bufferService, digest));
+
+            for (ByteArrayOutputStream stream : out)
+                assertArrayEquals(data, stream.toByteArray());
+            assertArrayEquals(sha256().digest(data), digest.digest());
+            assertEquals(0, inUse());
+        }
+    }
+
+    @Test
+    public void copyToOneDrive() throws Exception {
+        byte[] data = randomData(3 * RAIDOneMirrorWriter.CHUNK_SIZE + 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageDigest digest = sha256();
+
+        RAIDOneMirrorWriter.copy(new ByteArrayInputStream(data), new OutputStream[] { out }, this.executor,
+                this.bufferService, digest);
+
+        assertArrayEquals(data, out.toByteArray());
+        assertArrayEquals(sha256().digest(data), digest.digest());
+        assertEquals(0, inUse());
+    }
+
+    /**
+     * one mirror fails while the reader is handing chunks to the others
+     */
+    @Test
+    public void failedWriterReleasesBuffers() throws Exception {
+        byte[] data = randomData(64 * RAIDOneMirrorWriter.CHUNK_SIZE);
+        OutputStream failing = new OutputStream() {
+            private int chunks = 0;
+
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk failure");
+            }
+
+            /**
+             * fails when the reader is blocked on the queue of the stalled mirror,
+             * with the next chunk handed only to the first mirror
+             */
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (++this.chunks < RAIDOneMirrorWriter.RING_DEPTH + 1)
+                    return;
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("disk failure");
+            }
+        };
+        /** stalled mirror, its queue fills up and the reader blocks on it */
+        OutputStream slow = new OutputStream() {
+            private boolean first = true;
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!this.first)
+                    return;
+                this.first = false;
+                try {
+                    Thread.sleep(1500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        OutputStream[] out = new OutputStream[] { new ByteArrayOutputStream(), slow, failing };
+
+        assertThrows(IOException.class, () -> RAIDOneMirrorWriter.copy(new ByteArrayInputStream(data), out, this.executor,
+                this.bufferService, sha256()));
+        assertEquals(0, inUse());
+    }
+
+    @Test
+    public void failedSourceReleasesBuffers() throws Exception {
+        InputStream source = new InputStream() {
+            private int read = 0;
+
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (this.read > 3 * RAIDOneMirrorWriter.CHUNK_SIZE)
+                    throw new IOException("connection reset");
+                this.read += len;
+                return len;
+            }
+        };
+        OutputStream[] out = new OutputStream[] { new ByteArrayOutputStream(), new ByteArrayOutputStream() };
+
+        assertThrows(IOException.class,
+                () -> RAIDOneMirrorWriter.copy(source, out, this.executor, this.bufferService, sha256()));
+        assertEquals(0, inUse());
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid1;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.odilon.virtualFileSystem.DriveReadStats;
+import io.odilon.virtualFileSystem.model.Drive;
+import io.odilon.virtualFileSystem.model.ServerBucket;
+
+/**
+ * <p>
+ * Stripe order, mirror selection and fallback of
+ * {@link RAIDOneStripedInputStream}
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class RAIDOneStripedInputStreamTest {
+
+    private static final int STRIPE_SIZE = 4096;
+    private static final int MIRRORS = 3;
+    private static final String OBJECT_NAME = "object";
+
+    @TempDir
+    Path tempDir;
+
+    private List<Drive> drives;
+    private ServerBucket bucket;
+
+    /** tasks wait until the gate is opened */
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private ThreadPoolExecutor executor;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    thread.interrupt();
+                }
+            }
+        };
+        this.bucket = mock(ServerBucket.class);
+        when(this.bucket.getId()).thenReturn(Long.valueOf(1));
+
+        this.drives = new ArrayList<Drive>();
+        for (int n = 0; n < MIRRORS; n++) {
+            Path root = Files.createDirectories(this.tempDir.resolve("drive" + String.valueOf(n)));
+            Files.createDirectories(root.resolve("1"));
+            Drive drive = mock(Drive.class);
+            when(drive.getRootDirPath()).thenReturn(root.toString());
+            when(drive.getName()).thenReturn("drive" + String.valueOf(n));
+            DriveReadStats stats = new DriveReadStats();
+            when(drive.getReadStats()).thenReturn(stats);
+            this.drives.add(drive);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.gate.countDown();
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void stripesAreReadInOrder() throws IOException {
+        /** 11 stripes, the last one is short */
+        byte[] data = write(10 * STRIPE_SIZE + 1234);
+        this.gate.countDown();
+
+        try (InputStream in = open()) {
+            assertNotNull(in);
+            assertArrayEquals(data, readInSteps(in, 1000));
+            assertEquals(-1, in.read());
+        }
+        /** stripe i is read from mirror i % 3 */
+        assertEquals(4, reads(0));
+        assertEquals(4, reads(1));
+        assertEquals(3, reads(2));
+        for (Drive drive : this.drives)
+            assertEquals(0, drive.getReadStats().getInProgress());
+    }
+
+    @Test
+    public void sizeMultipleOfStripe() throws IOException {
+        byte[] data = write(8 * STRIPE_SIZE);
+        this.gate.countDown();
+
+        try (InputStream in = open()) {
+            assertArrayEquals(data, readInSteps(in, STRIPE_SIZE + 7));
+            assertEquals(-1, in.read());
+        }
+        assertEquals(8, reads(0) + reads(1) + reads(2));
+    }
+
+    @Test
+    public void mirrorThatCanNotBeOpenedIsSkipped() throws IOException {
+        byte[] data = write(10 * STRIPE_SIZE);
+        Files.delete(dataFile(1));
+        this.gate.countDown();
+
+        try (InputStream in = open()) {
+            assertNotNull(in);
+            assertArrayEquals(data, readInSteps(in, 1000));
+        }
+        assertEquals(0, reads(1));
+        assertEquals(10, reads(0) + reads(2));
+    }
+
+    @Test
+    public void mirrorWithDifferentSizeIsSkipped() throws IOException {
+        byte[] data = write(10 * STRIPE_SIZE);
+        truncate(2, 5 * STRIPE_SIZE);
+        this.gate.countDown();
+
+        try (InputStream in = open()) {
+            assertNotNull(in);
+            assertArrayEquals(data, readInSteps(in, 1000));
+        }
+        assertEquals(0, reads(2));
+    }
+
+    @Test
+    public void lessThanTwoMirrorsIsNotStriped() throws IOException {
+        write(10 * STRIPE_SIZE);
+        Files.delete(dataFile(0));
+        truncate(1, STRIPE_SIZE);
+        this.gate.countDown();
+
+        assertNull(open());
+        for (Drive drive : this.drives)
+            assertEquals(0, drive.getReadStats().getInProgress());
+    }
+
+    /**
+     * <p>
+     * The data file of a mirror becomes short after it was opened, its stripes
+     * are read from the next mirror
+     * </p>
+     */
+    @Test
+    public void stripeIsReadFromNextMirror() throws IOException {
+        byte[] data = write(10 * STRIPE_SIZE + 10);
+
+        InputStream in = open();
+        truncate(0, 0);
+        this.gate.countDown();
+        try {
+            assertArrayEquals(data, readInSteps(in, 1000));
+        } finally {
+            in.close();
+        }
+        assertEquals(0, reads(0));
+        assertEquals(11, reads(1) + reads(2));
+    }
+
+    @Test
+    public void closeDuringReadAhead() throws Exception {
+        write(20 * STRIPE_SIZE);
+
+        InputStream in = open();
+        in.close();
+        this.gate.countDown();
+
+        assertThrows(IOException.class, () -> in.read());
+        this.executor.shutdown();
+        assertTrue(this.executor.awaitTermination(5, TimeUnit.SECONDS));
+        for (Drive drive : this.drives)
+            assertEquals(0, drive.getReadStats().getInProgress());
+        assertEquals(0, reads(0) + reads(1) + reads(2));
+    }
+
+    private InputStream open() throws IOException {
+        return RAIDOneStripedInputStream.open(this.drives, this.bucket, OBJECT_NAME, STRIPE_SIZE, this.executor);
+    }
+
+    private long reads(int mirror) {
+        return this.drives.get(mirror).getReadStats().getReads();
+    }
+
+    private Path dataFile(int mirror) {
+        return this.tempDir.resolve("drive" + String.valueOf(mirror)).resolve("1").resolve(OBJECT_NAME);
+    }
+
+    private byte[] write(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        for (int n = 0; n < MIRRORS; n++)
+            Files.write(dataFile(n), data);
+        return data;
+    }
+
+    private void truncate(int mirror, long size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(dataFile(mirror).toFile(), "rw")) {
+            file.setLength(size);
+        }
+    }
+
+    private static byte[] readInSteps(InputStream in, int step) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[step];
+        int n;
+        while ((n = in.read(buffer, 0, step)) != -1)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+}
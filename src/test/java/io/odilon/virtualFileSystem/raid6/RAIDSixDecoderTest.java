@@ -0,0 +1,482 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid6;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.codahale.metrics.Counter;
+
+import io.odilon.cache.FileCacheService;
+import io.odilon.model.ObjectMetadata;
+import io.odilon.model.ServerConstant;
+import io.odilon.monitor.SystemMonitorService;
+import io.odilon.service.BufferService;
+import io.odilon.service.ServerSettings;
+import io.odilon.virtualFileSystem.LockMetrics;
+import io.odilon.virtualFileSystem.StripedLockTable;
+import io.odilon.virtualFileSystem.model.Drive;
+import io.odilon.virtualFileSystem.model.LockService;
+import io.odilon.virtualFileSystem.model.ServerBucket;
+import io.odilon.virtualFileSystem.model.VirtualFileSystemService;
+
+/**
+ * <p>
+ * Encodes objects with {@link RAIDSixEncoder} into temporary drive directories
+ * and reads them back with {@link RAIDSixDecoder}. The driver and the
+ * VirtualFileSystem are mocks, the coding and the shard files are real
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class RAIDSixDecoderTest {
+
+    private static final int DATA_SHARDS = 4;
+    private static final int PARITY_SHARDS = 2;
+
+    /** small chunks, the objects of the tests have several chunks */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNK_DATA_SIZE = CHUNK_SIZE - ServerConstant.BYTES_IN_INT;
+
+    @TempDir
+    Path tempDir;
+
+    private ServerSettings settings;
+    private ExecutorService executor;
+    /** delay before each task of the executor, to slow down decoding */
+    private volatile long taskDelayMillis = 0;
+    private List<Drive> drives;
+    private RAIDSixDriver driver;
+    private ServerBucket bucket;
+    private FileCacheService fileCache;
+    private Path cacheDir;
+    private final Counter cacheMisses = new Counter();
+
+    private final StripedLockTable objectLocks = new StripedLockTable(64, new LockMetrics("object", true));
+    private final StripedLockTable bucketLocks = new StripedLockTable(64, new LockMetrics("bucket", true));
+    private final StripedLockTable fileCacheLocks = new StripedLockTable(64, new LockMetrics("fileCache", true));
+
+    @BeforeEach
+    public void setUp() throws IOException {
+
+        this.settings = mock(ServerSettings.class);
+        when(this.settings.getRAID6DataDrives()).thenReturn(DATA_SHARDS);
+        when(this.settings.getRAID6ParityDrives()).thenReturn(PARITY_SHARDS);
+        when(this.settings.getRAID6ChunkSize()).thenReturn(CHUNK_SIZE);
+        when(this.settings.isRAID6VerifyShards()).thenReturn(true);
+
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                try {
+                    Thread.sleep(taskDelayMillis);
+                } catch (InterruptedException e) {
+                    thread.interrupt();
+                }
+            }
+        };
+
+        this.drives = new ArrayList<Drive>();
+        Map<Integer, Drive> drivesDecode = new HashMap<Integer, Drive>();
+        for (int n = 0; n < DATA_SHARDS + PARITY_SHARDS; n++) {
+            Path dataDir = Files.createDirectories(this.tempDir.resolve("drive" + n).resolve("bucket"));
+            Path tempDirPath = Files.createDirectories(this.tempDir.resolve("drive" + n).resolve("tmp"));
+            Drive drive = mock(Drive.class);
+            when(drive.getBucketObjectDataDirPath(any(ServerBucket.class))).thenReturn(dataDir.toString());
+            when(drive.getTempDirPath()).thenReturn(tempDirPath.toString());
+            this.drives.add(drive);
+            drivesDecode.put(Integer.valueOf(n), drive);
+        }
+
+        SystemMonitorService monitor = mock(SystemMonitorService.class);
+        when(monitor.getCacheFileHitCounter()).thenReturn(new Counter());
+        when(monitor.getCacheFileMissCounter()).thenReturn(this.cacheMisses);
+
+        LockService lockService = mock(LockService.class);
+        when(lockService.getObjectLock(any(ServerBucket.class), anyString()))
+                .thenAnswer(i -> this.objectLocks.get(1, i.getArgument(1, String.class)));
+        when(lockService.getBucketLock(any(ServerBucket.class))).thenAnswer(i -> this.bucketLocks.get("bucket"));
+        when(lockService.getFileCacheLock(anyLong(), anyString(), any()))
+                .thenAnswer(i -> this.fileCacheLocks.get(1, i.getArgument(1, String.class)));
+
+        /** files are decoded to the cache directory, the cache is always empty */
+        this.cacheDir = Files.createDirectories(this.tempDir.resolve("cache"));
+        FileCacheService fileCache = mock(FileCacheService.class);
+        when(fileCache.getLockService()).thenReturn(lockService);
+        when(fileCache.getFileCachePath(anyLong(), anyString(), any()))
+                .thenAnswer(i -> this.cacheDir.resolve(i.getArgument(1, String.class)).toString());
+        this.fileCache = fileCache;
+
+        VirtualFileSystemService vfs = mock(VirtualFileSystemService.class);
+        when(vfs.getServerSettings()).thenReturn(this.settings);
+        when(vfs.getExecutorService()).thenReturn(this.executor);
+        when(vfs.getBufferService()).thenReturn(new BufferService(this.settings));
+        when(vfs.getMapDrivesRSDecode()).thenReturn(drivesDecode);
+        when(vfs.getFileCacheService()).thenReturn(fileCache);
+        when(vfs.getSystemMonitorService()).thenReturn(monitor);
+        when(vfs.getLockService()).thenReturn(lockService);
+
+        this.driver = mock(RAIDSixDriver.class);
+        when(this.driver.getVirtualFileSystemService()).thenReturn(vfs);
+        when(this.driver.isConfigurationValid(DATA_SHARDS, PARITY_SHARDS)).thenReturn(true);
+        when(this.driver.getDrivesAll()).thenReturn(this.drives);
+
+        this.bucket = mock(ServerBucket.class);
+        when(this.bucket.getId()).thenReturn(Long.valueOf(1));
+        when(this.bucket.getName()).thenReturn("bucket");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void rangeWithinOneChunk() throws IOException {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE + CHUNK_DATA_SIZE / 2);
+        ObjectMetadata meta = encode("object", data);
+        assertEquals(4, meta.getTotalBlocks() / (DATA_SHARDS + PARITY_SHARDS));
+
+        assertRange(meta, data, 0, 1);
+        assertRange(meta, data, 100, 1000);
+        assertRange(meta, data, CHUNK_DATA_SIZE, 10);
+        assertRange(meta, data, 2L * CHUNK_DATA_SIZE - 10, 10);
+    }
+
+    @Test
+    public void rangeAcrossChunks() throws IOException {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE + CHUNK_DATA_SIZE / 2);
+        ObjectMetadata meta = encode("object", data);
+
+        assertRange(meta, data, CHUNK_DATA_SIZE - 10, 20);
+        assertRange(meta, data, CHUNK_DATA_SIZE / 2, 2L * CHUNK_DATA_SIZE);
+        assertRange(meta, data, 0, data.length);
+    }
+
+    @Test
+    public void rangeToEndOfObject() throws IOException {
+        byte[] data = randomData(2 * CHUNK_DATA_SIZE + 12345);
+        ObjectMetadata meta = encode("object", data);
+
+        assertRange(meta, data, data.length - 1, 1);
+        assertRange(meta, data, data.length - 12345, 12345);
+        assertRange(meta, data, CHUNK_DATA_SIZE + 1, data.length - CHUNK_DATA_SIZE - 1);
+    }
+
+    @Test
+    public void singleChunkObject() throws IOException {
+        byte[] data = randomData(5000);
+        ObjectMetadata meta = encode("small", data);
+
+        assertRange(meta, data, 0, data.length);
+        assertRange(meta, data, 4999, 1);
+    }
+
+    @Test
+    public void rangeWithMissingDataShard() throws IOException {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+
+        /** chunk 1 must be reconstructed from the parity */
+        Files.delete(shardFile("object", 1, 1).toPath());
+
+        assertRange(meta, data, CHUNK_DATA_SIZE - 100, 200);
+        assertRange(meta, data, 0, data.length);
+    }
+
+    /**
+     * <p>
+     * A data shard with the right size but the wrong content is detected by its
+     * SHA-256 and the chunk is reconstructed from the parity
+     * </p>
+     */
+    @Test
+    public void corruptDataShardIsReconstructed() throws Exception {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+        corruptShard(shardFile("object", 1, 0));
+
+        assertRange(meta, data, CHUNK_DATA_SIZE - 100, 200);
+        assertRange(meta, data, 0, data.length);
+        lockObject("object");
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(meta, this.bucket)) {
+            unlockObject("object");
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void corruptDataShardIsNotDetectedIfNotVerified() throws IOException {
+        when(this.settings.isRAID6VerifyShards()).thenReturn(false);
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+        corruptShard(shardFile("object", 1, 0));
+
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadRange(meta, this.bucket, 0, data.length)) {
+            assertFalse(Arrays.equals(data, in.readAllBytes()));
+        }
+    }
+
+    /**
+     * <p>
+     * The caller releases the Object and Bucket locks when the stream is returned,
+     * all the chunks must be decoded by then
+     * </p>
+     */
+    @Test
+    public void rangeIsDecodedBeforeStreamIsReturned() throws IOException {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+
+        long offset = CHUNK_DATA_SIZE / 2;
+        long length = 2L * CHUNK_DATA_SIZE;
+
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadRange(meta, this.bucket, offset, length)) {
+            deleteShards("object", 3);
+            assertArrayEquals(Arrays.copyOfRange(data, (int) offset, (int) (offset + length)), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void rangeTemporaryFileIsDeletedOnClose() throws IOException {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+
+        File tempDirFile = new File(this.drives.get(0).getTempDirPath());
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadRange(meta, this.bucket, 0, data.length)) {
+            assertEquals(data.length, in.readAllBytes().length);
+        }
+        assertEquals(0, tempDirFile.list().length);
+    }
+
+    @Test
+    public void streamIsDecoded() throws Exception {
+        byte[] data = randomData(5 * CHUNK_DATA_SIZE + 100);
+        ObjectMetadata meta = encode("object", data);
+
+        lockObject("object");
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(meta, this.bucket)) {
+            unlockObject("object");
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        assertTrue(this.objectLocks.get(1, "object").writeLock().tryLock(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * <p>
+     * The client stops reading. The decoding task must release the Object and
+     * Bucket locks, a writer can not wait until the whole object is decoded
+     * </p>
+     */
+    @Test
+    public void closeBeforeDecodedReleasesLocks() throws Exception {
+        byte[] data = randomData(16 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+
+        /** the whole object takes more than 1.6 secs to decode */
+        this.taskDelayMillis = 100;
+        lockObject("object");
+        InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(meta, this.bucket);
+        unlockObject("object");
+        assertEquals(data[0], (byte) in.read());
+        in.close();
+
+        ReadWriteLock lock = this.objectLocks.get(1, "object");
+        assertTrue(lock.writeLock().tryLock(600, TimeUnit.MILLISECONDS));
+        lock.writeLock().unlock();
+        assertTrue(this.bucketLocks.get("bucket").writeLock().tryLock(5, TimeUnit.SECONDS));
+
+        /** no partial file is left in the cache directory */
+        for (File file : this.cacheDir.toFile().listFiles())
+            assertEquals(data.length, file.length());
+    }
+
+    /**
+     * <p>
+     * A writer is waiting for the Object lock. The decoding task must not get a
+     * read lock ahead of it, the object is decoded by the caller
+     * </p>
+     */
+    @Test
+    public void queuedWriterIsNotOvertaken() throws Exception {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+
+        lockObject("object");
+        CountDownLatch writerStarted = new CountDownLatch(1);
+        Future<?> writer = this.executor.submit(() -> {
+            writerStarted.countDown();
+            ReadWriteLock lock = this.objectLocks.get(1, "object");
+            lock.writeLock().lock();
+            lock.writeLock().unlock();
+        });
+        writerStarted.await();
+        Thread.sleep(100);
+
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(meta, this.bucket)) {
+            assertFalse(in.getClass().getSimpleName().equals("DecodeTaskInputStream"));
+            assertFalse(writer.isDone());
+            unlockObject("object");
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        writer.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * <p>
+     * The decoding task can not take the Object read lock and the calling thread
+     * decodes the object. The miss is counted once
+     * </p>
+     */
+    @Test
+    public void fallbackDecodeCountsOneMiss() throws Exception {
+        byte[] data = randomData(3 * CHUNK_DATA_SIZE);
+        ObjectMetadata meta = encode("object", data);
+
+        this.objectLocks.get(1, "object").writeLock().lock();
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(meta, this.bucket)) {
+            assertArrayEquals(data, in.readAllBytes());
+        } finally {
+            this.objectLocks.get(1, "object").writeLock().unlock();
+        }
+        assertEquals(1, this.cacheMisses.getCount());
+    }
+
+    /**
+     * <p>
+     * Objects encoded with chunks of {@link ServerConstant#MAX_CHUNK_SIZE} are read
+     * back after {@code raid6.chunkSizeMB} is lowered. The chunk size of an object
+     * is taken from its first chunk, not from the setting
+     * </p>
+     */
+    @Test
+    public void readAfterChunkSizeIsLowered() throws Exception {
+        final int maxDataSize = ServerConstant.MAX_CHUNK_SIZE - ServerConstant.BYTES_IN_INT;
+        when(this.settings.getRAID6ChunkSize()).thenReturn(ServerConstant.MAX_CHUNK_SIZE);
+        byte[] data = randomData(maxDataSize + CHUNK_DATA_SIZE / 2);
+        ObjectMetadata meta = encode("large", data);
+        assertEquals(2 * (DATA_SHARDS + PARITY_SHARDS), meta.getTotalBlocks());
+        byte[] small = randomData(100 * 1024);
+        ObjectMetadata smallMeta = encode("small", small);
+        assertEquals(DATA_SHARDS + PARITY_SHARDS, smallMeta.getTotalBlocks());
+
+        when(this.settings.getRAID6ChunkSize()).thenReturn(CHUNK_SIZE);
+
+        lockObject("large");
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(meta, this.bucket)) {
+            unlockObject("large");
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        assertRange(meta, data, 10, CHUNK_SIZE);
+        assertRange(meta, data, maxDataSize - 100, 200);
+        assertRange(meta, data, maxDataSize + 1, 1000);
+        assertRange(meta, data, data.length - 10, 10);
+
+        lockObject("small");
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadStream(smallMeta, this.bucket)) {
+            unlockObject("small");
+            assertArrayEquals(small, in.readAllBytes());
+        }
+        assertRange(smallMeta, small, 1000, 5000);
+    }
+
+    /**
+     * Object and Bucket read locks, as the caller of {@code decodeHeadStream}
+     */
+    private void lockObject(String objectName) {
+        this.objectLocks.get(1, objectName).readLock().lock();
+        this.bucketLocks.get("bucket").readLock().lock();
+    }
+
+    private void unlockObject(String objectName) {
+        this.bucketLocks.get("bucket").readLock().unlock();
+        this.objectLocks.get(1, objectName).readLock().unlock();
+    }
+
+    private ObjectMetadata encode(String objectName, byte[] data) {
+        RAIDSixBlocks blocks = new RAIDSixEncoder(this.driver).encodeHead(new ByteArrayInputStream(data), this.bucket,
+                objectName);
+        ObjectMetadata meta = new ObjectMetadata(this.bucket.getId(), objectName);
+        meta.setTotalBlocks(blocks.getEncodedBlocks().size());
+        meta.setSha256Blocks(blocks.getSha256Blocks());
+        meta.length = blocks.getFileSize();
+        return meta;
+    }
+
+    private void assertRange(ObjectMetadata meta, byte[] data, long offset, long length) throws IOException {
+        try (InputStream in = new RAIDSixDecoder(this.driver).decodeHeadRange(meta, this.bucket, offset, length)) {
+            byte[] expected = Arrays.copyOfRange(data, (int) offset, (int) (offset + length));
+            assertArrayEquals(expected, in.readAllBytes(), "offset: " + offset + " length: " + length);
+        }
+    }
+
+    private File shardFile(String objectName, int chunk, int disk) {
+        return new File(this.drives.get(disk).getBucketObjectDataDirPath(this.bucket),
+                objectName + "." + String.valueOf(chunk) + "." + String.valueOf(disk));
+    }
+
+    private static void corruptShard(File shard) throws IOException {
+        byte[] bytes = Files.readAllBytes(shard.toPath());
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(shard.toPath(), bytes);
+    }
+
+    private void deleteShards(String objectName, int chunks) throws IOException {
+        for (int chunk = 0; chunk < chunks; chunk++)
+            for (int disk = 0; disk < DATA_SHARDS + PARITY_SHARDS; disk++)
+                Files.delete(shardFile(objectName, chunk, disk).toPath());
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
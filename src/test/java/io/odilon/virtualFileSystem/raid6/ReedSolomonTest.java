@@ -0,0 +1,282 @@
+/*
+ * Odilon Object Storage
+ * (C) Novamens
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.odilon.virtualFileSystem.raid6;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * <p>
+ * Compares {@link ReedSolomon} with a reference implementation that codes one
+ * byte at a time with {@link Galois#multiply} and inverts the decode matrix for
+ * every call (no coding blocks, no multiplication table rows, no decode
+ * cache), over random shard sizes, offsets and patterns of missing shards
+ * </p>
+ *
+ * @author atolomei@novamens.com (Alejandro Tolomei)
+ */
+public class ReedSolomonTest {
+
+    /** data shards, parity shards, as supported by RAID 6 */
+    private static final int[][] CONFIGURATIONS = { { 2, 1 }, { 4, 2 }, { 8, 4 }, { 16, 8 } };
+
+    private static final int BLOCK = ReedSolomon.CODING_BLOCK_SIZE;
+
+    private static final int[] SHARD_SIZES = { 1, 7, BLOCK - 1, BLOCK, BLOCK + 1, 3 * BLOCK + 5, 40000 };
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void encodeParityMatchesReference() {
+        for (int[] conf : CONFIGURATIONS) {
+            ReedSolomon reedSolomon = new ReedSolomon(conf[0], conf[1]);
+            Matrix matrix = referenceMatrix(conf[0], conf[0] + conf[1]);
+
+            for (int shardSize : shardSizes()) {
+                byte[][] shards = randomShards(conf[0], conf[1], shardSize);
+                int offset = (shardSize > 20) ? this.random.nextInt(shardSize / 4) : 0;
+                int byteCount = shardSize - offset - ((shardSize > 20) ? this.random.nextInt(shardSize / 4) : 0);
+
+                byte[][] expected = copy(shards);
+                referenceEncode(matrix, conf[0], conf[1], expected, offset, byteCount);
+                reedSolomon.encodeParity(shards, offset, byteCount);
+
+                for (int n = 0; n < shards.length; n++)
+                    assertArrayEquals(expected[n], shards[n], message(conf, shardSize, offset, byteCount) + " shard " + n);
+                assertTrue(reedSolomon.isParityCorrect(shards, offset, byteCount));
+            }
+        }
+    }
+
+    @Test
+    public void decodeMissingMatchesReference() {
+        for (int[] conf : CONFIGURATIONS) {
+            int dataShards = conf[0];
+            int parityShards = conf[1];
+            int totalShards = dataShards + parityShards;
+            ReedSolomon reedSolomon = new ReedSolomon(dataShards, parityShards);
+            Matrix matrix = referenceMatrix(dataShards, totalShards);
+
+            for (int shardSize : shardSizes()) {
+                byte[][] shards = randomShards(dataShards, parityShards, shardSize);
+                referenceEncode(matrix, dataShards, parityShards, shards, 0, shardSize);
+
+                for (boolean[] present : erasurePatterns(totalShards, parityShards)) {
+                    int offset = (shardSize > 20) ? this.random.nextInt(shardSize / 4) : 0;
+                    int byteCount = shardSize - offset;
+
+                    byte[][] damaged = copy(shards);
+                    for (int n = 0; n < totalShards; n++)
+                        if (!present[n])
+                            this.random.nextBytes(damaged[n]);
+                    byte[][] expected = copy(damaged);
+                    referenceDecode(matrix, dataShards, parityShards, expected, present, offset, byteCount);
+
+                    reedSolomon.decodeMissing(damaged, present, offset, byteCount);
+
+                    for (int n = 0; n < totalShards; n++) {
+                        assertArrayEquals(expected[n], damaged[n],
+                                message(conf, shardSize, offset, byteCount) + " present " + Arrays.toString(present));
+                        assertArrayEquals(Arrays.copyOfRange(shards[n], offset, offset + byteCount),
+                                Arrays.copyOfRange(damaged[n], offset, offset + byteCount));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * more patterns than {@link ReedSolomon#DECODE_CACHE_SIZE}, repeated: the
+     * patterns are decoded from the cache and after being evicted
+     */
+    @Test
+    public void decodeCacheReuseAndEviction() {
+        int dataShards = 8;
+        int parityShards = 4;
+        int totalShards = dataShards + parityShards;
+        int shardSize = 2 * BLOCK + 3;
+
+        ReedSolomon reedSolomon = ReedSolomon.getInstance(dataShards, parityShards);
+        assertSame(reedSolomon, ReedSolomon.getInstance(dataShards, parityShards));
+
+        byte[][] shards = randomShards(dataShards, parityShards, shardSize);
+        reedSolomon.encodeParity(shards, 0, shardSize);
+
+        boolean[][] patterns = new boolean[3 * ReedSolomon.DECODE_CACHE_SIZE][];
+        for (int n = 0; n < patterns.length; n++)
+            patterns[n] = randomPattern(totalShards, 1 + this.random.nextInt(parityShards));
+
+        for (int round = 0; round < 3; round++) {
+            for (boolean[] present : patterns) {
+                byte[][] damaged = copy(shards);
+                for (int n = 0; n < totalShards; n++)
+                    if (!present[n])
+                        Arrays.fill(damaged[n], (byte) 0);
+                reedSolomon.decodeMissing(damaged, present, 0, shardSize);
+                for (int n = 0; n < totalShards; n++)
+                    assertArrayEquals(shards[n], damaged[n], "round " + round + " present " + Arrays.toString(present));
+            }
+        }
+    }
+
+    @Test
+    public void corruptedParityIsDetected() {
+        ReedSolomon reedSolomon = new ReedSolomon(4, 2);
+        byte[][] shards = randomShards(4, 2, 3 * BLOCK);
+        reedSolomon.encodeParity(shards, 0, 3 * BLOCK);
+        shards[5][2 * BLOCK + 17] ^= 1;
+        assertFalse(reedSolomon.isParityCorrect(shards, 0, 3 * BLOCK));
+        assertTrue(reedSolomon.isParityCorrect(shards, 0, 2 * BLOCK));
+    }
+
+    @Test
+    public void notEnoughShards() {
+        ReedSolomon reedSolomon = new ReedSolomon(4, 2);
+        byte[][] shards = randomShards(4, 2, 100);
+        boolean[] present = { false, false, false, true, true, true };
+        assertThrows(IllegalArgumentException.class, () -> reedSolomon.decodeMissing(shards, present, 0, 100));
+    }
+
+    private int[] shardSizes() {
+        int[] sizes = Arrays.copyOf(SHARD_SIZES, SHARD_SIZES.length + 3);
+        for (int n = SHARD_SIZES.length; n < sizes.length; n++)
+            sizes[n] = 1 + this.random.nextInt(5 * BLOCK);
+        return sizes;
+    }
+
+    /**
+     * every pattern of up to {@code parityShards} missing shards if they are not
+     * too many, random patterns otherwise
+     */
+    private boolean[][] erasurePatterns(int totalShards, int parityShards) {
+        if (totalShards > 6) {
+            boolean[][] patterns = new boolean[40][];
+            for (int n = 0; n < patterns.length; n++)
+                patterns[n] = randomPattern(totalShards, 1 + this.random.nextInt(parityShards));
+            return patterns;
+        }
+        return IntStream.range(1, 1 << totalShards)
+                .filter(mask -> Integer.bitCount(mask) <= parityShards).mapToObj(mask -> {
+                    boolean[] present = new boolean[totalShards];
+                    for (int n = 0; n < totalShards; n++)
+                        present[n] = (mask & (1 << n)) == 0;
+                    return present;
+                }).toArray(boolean[][]::new);
+    }
+
+    private boolean[] randomPattern(int totalShards, int missing) {
+        boolean[] present = new boolean[totalShards];
+        Arrays.fill(present, true);
+        for (int n = 0; n < missing;) {
+            int shard = this.random.nextInt(totalShards);
+            if (present[shard]) {
+                present[shard] = false;
+                n++;
+            }
+        }
+        return present;
+    }
+
+    private byte[][] randomShards(int dataShards, int parityShards, int shardSize) {
+        byte[][] shards = new byte[dataShards + parityShards][shardSize];
+        for (byte[] shard : shards)
+            this.random.nextBytes(shard);
+        return shards;
+    }
+
+    private static String message(int[] conf, int shardSize, int offset, int byteCount) {
+        return conf[0] + "+" + conf[1] + " size " + shardSize + " offset " + offset + " count " + byteCount;
+    }
+
+    private static byte[][] copy(byte[][] shards) {
+        byte[][] result = new byte[shards.length][];
+        for (int n = 0; n < shards.length; n++)
+            result[n] = shards[n].clone();
+        return result;
+    }
+
+    /**
+     * Vandermonde matrix multiplied by the inverse of its top square, the data
+     * shards are not changed by the coding
+     */
+    private static Matrix referenceMatrix(int dataShards, int totalShards) {
+        Matrix vandermonde = new Matrix(totalShards, dataShards);
+        for (int r = 0; r < totalShards; r++)
+            for (int c = 0; c < dataShards; c++)
+                vandermonde.set(r, c, Galois.exp((byte) r, c));
+        return vandermonde.times(vandermonde.submatrix(0, 0, dataShards, dataShards).invert());
+    }
+
+    private static void referenceEncode(Matrix matrix, int dataShards, int parityShards, byte[][] shards, int offset,
+            int byteCount) {
+        for (int p = 0; p < parityShards; p++)
+            for (int i = offset; i < offset + byteCount; i++) {
+                byte value = 0;
+                for (int d = 0; d < dataShards; d++)
+                    value ^= Galois.multiply(matrix.get(dataShards + p, d), shards[d][i]);
+                shards[dataShards + p][i] = value;
+            }
+    }
+
+    private static void referenceDecode(Matrix matrix, int dataShards, int parityShards, byte[][] shards, boolean[] present,
+            int offset, int byteCount) {
+
+        int totalShards = dataShards + parityShards;
+
+        Matrix subMatrix = new Matrix(dataShards, dataShards);
+        byte[][] subShards = new byte[dataShards][];
+        int row = 0;
+        for (int r = 0; r < totalShards && row < dataShards; r++) {
+            if (present[r]) {
+                for (int c = 0; c < dataShards; c++)
+                    subMatrix.set(row, c, matrix.get(r, c));
+                subShards[row++] = shards[r];
+            }
+        }
+        Matrix decode = subMatrix.invert();
+
+        for (int d = 0; d < dataShards; d++) {
+            if (present[d])
+                continue;
+            for (int i = offset; i < offset + byteCount; i++) {
+                byte value = 0;
+                for (int c = 0; c < dataShards; c++)
+                    value ^= Galois.multiply(decode.get(d, c), subShards[c][i]);
+                shards[d][i] = value;
+            }
+        }
+        for (int p = dataShards; p < totalShards; p++) {
+            if (present[p])
+                continue;
+            for (int i = offset; i < offset + byteCount; i++) {
+                byte value = 0;
+                for (int d = 0; d < dataShards; d++)
+                    value ^= Galois.multiply(matrix.get(p, d), shards[d][i]);
+                shards[p][i] = value;
+            }
+        }
+    }
+}